@@ -3,23 +3,53 @@ package es.armoonys.origins.app;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
 import org.springframework.web.socket.config.annotation.EnableWebSocket;
 import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
 import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
 
 import es.armoonys.origins.chat.ChatService;
+import es.armoonys.origins.chat.ChatWriteBehind;
+import es.armoonys.origins.metrics.Metrics;
+import es.armoonys.origins.metrics.MetricsEndpoint;
+import es.armoonys.origins.net.IdleSessionReaper;
+import es.armoonys.origins.net.OutboundQueueManager;
+import es.armoonys.origins.net.RateLimiter;
+import es.armoonys.origins.persistence.DbExecutor;
+import es.armoonys.origins.persistence.PersistenceConfig;
+import es.armoonys.origins.rooms.ground.GroundBinaryCodec;
 import es.armoonys.origins.rooms.ground.GroundMService;
+import es.armoonys.origins.rooms.ground.GroundMatchManager;
 import es.armoonys.origins.rooms.ground.GroundRService;
+import es.armoonys.origins.rooms.ground.GroundRoomRegistry;
+import es.armoonys.origins.sched.GameScheduler;
+import es.armoonys.origins.sched.TimingWheel;
+import es.armoonys.origins.users.PresenceService;
+import es.armoonys.origins.users.SessionTickets;
+import es.armoonys.origins.users.UserDirectory;
 import es.armoonys.origins.users.UserService;
 
 @SpringBootApplication
 @EnableWebSocket
+@Import(PersistenceConfig.class)
 public class OriginsApplication implements WebSocketConfigurer{
 	//******************* Variables servicios ************************//
-	ChatService chatSrv = new ChatService();
-	UserService userSrv = new UserService();
-	GroundRService groundRSrv = new GroundRService();
-	GroundMService groundMSrv = new GroundMService(groundRSrv);
+	GameScheduler scheduler = new GameScheduler();
+	TimingWheel timeouts = new TimingWheel();
+	OutboundQueueManager outbound = new OutboundQueueManager(timeouts);
+	RateLimiter limits = new RateLimiter();
+	IdleSessionReaper idle = new IdleSessionReaper(timeouts);
+	DbExecutor dbExecutor = new DbExecutor();
+	ChatWriteBehind chatWriter = new ChatWriteBehind();
+	SessionTickets tickets = new SessionTickets(timeouts);
+	ChatService chatSrv = new ChatService(chatWriter, dbExecutor, tickets);
+	UserDirectory userDirectory = new UserDirectory();
+	PresenceService presence = new PresenceService(scheduler);
+	UserService userSrv = new UserService(userDirectory, presence, scheduler, dbExecutor, tickets);
+	GroundRoomRegistry groundRooms = new GroundRoomRegistry(timeouts);
+	GroundRService groundRSrv = new GroundRService(groundRooms);
+	GroundMatchManager groundMatches = new GroundMatchManager(groundRooms, scheduler, timeouts);
+	GroundMService groundMSrv = new GroundMService(groundMatches);
 
 	//******************* Método principal ************************//
 	public static void main(String[] args) {
@@ -29,20 +59,98 @@ public class OriginsApplication implements WebSocketConfigurer{
 	//******************* Métodos para WS ************************//
 	/**
 	 * Método para insertar el servicio en cuestión a un manejador del registro de WS
+	 * (cada sesión se envuelve con su cola de salida asíncrona, y cada punto de conexión con
+	 * el cierre por inactividad y sus límites de admisión y de mensajes por sesión)
 	 */
 	@Override
 	public void registerWebSocketHandlers(WebSocketHandlerRegistry reg) {
-		reg.addHandler(createChatService(), "/chat")
+		OutboundQueueManager out = createOutboundQueues();
+		IdleSessionReaper idl = createIdleReaper();
+		RateLimiter lim = createRateLimiter();
+		
+		reg.addHandler(out.decorate(idl.decorate(lim.decorate(createChatService(), "/chat"), "/chat")), "/chat")
 			.setAllowedOrigins("*");
-		reg.addHandler(createUserService(), "/user")
+		reg.addHandler(out.decorate(idl.decorate(lim.decorate(createUserService(), "/user"), "/user")), "/user")
 			.setAllowedOrigins("*");
-		reg.addHandler(createGroundRoom(), "/groundR")
+		reg.addHandler(out.decorate(idl.decorate(lim.decorate(createGroundRoom(), "/groundR"), "/groundR")), "/groundR")
 			.setAllowedOrigins("*");
-		reg.addHandler(createGroundMatch(), "/groundM")
+		reg.addHandler(out.decorate(idl.decorate(lim.decorate(createGroundMatch(), "/groundM", GroundBinaryCodec::codeOf), "/groundM")), "/groundM")
 			.setAllowedOrigins("*");
 	}
 	
 	// Creación servicios //
+	/**
+	 * Creación del planificador compartido de ticks y tareas periódicas
+	 * @return
+	 */
+	@Bean
+	public GameScheduler createScheduler() {
+		return scheduler;
+	}
+	
+	/**
+	 * Creación de la rueda de plazos compartida
+	 * @return
+	 */
+	@Bean
+	public TimingWheel createTimingWheel() {
+		return timeouts;
+	}
+	
+	/**
+	 * Creación del gestor de colas de salida de las sesiones
+	 * @return
+	 */
+	@Bean
+	public OutboundQueueManager createOutboundQueues() {
+		return outbound;
+	}
+	
+	/**
+	 * Creación de la configuración de límites de entrada
+	 * @return
+	 */
+	@Bean
+	public RateLimiter createRateLimiter() {
+		return limits;
+	}
+	
+	/**
+	 * Creación de la configuración del cierre de sesiones inactivas
+	 * @return
+	 */
+	@Bean
+	public IdleSessionReaper createIdleReaper() {
+		return idle;
+	}
+	
+	/**
+	 * Creación del ejecutor de tareas de BD (fuera de los hilos de WebSocket)
+	 * @return
+	 */
+	@Bean
+	public DbExecutor createDbExecutor() {
+		return dbExecutor;
+	}
+	
+	/**
+	 * Creación del escritor diferido de mensajes del chat
+	 * @return
+	 */
+	@Bean
+	public ChatWriteBehind createChatWriter() {
+		return chatWriter;
+	}
+	
+	/**
+	 * Creación de los tickets de sesión entre /user y el chat
+	 * @return
+	 */
+	@Bean
+	public SessionTickets createSessionTickets() {
+		return tickets;
+	}
+	
 	/**
 	 * Creación del servicio del chat
 	 * @return
@@ -52,6 +160,24 @@ public class OriginsApplication implements WebSocketConfigurer{
 		return chatSrv;
 	}
 	
+	/**
+	 * Creación del directorio de usuarios en memoria
+	 * @return
+	 */
+	@Bean
+	public UserDirectory createUserDirectory() {
+		return userDirectory;
+	}
+	
+	/**
+	 * Creación del registro de presencia de los usuarios
+	 * @return
+	 */
+	@Bean
+	public PresenceService createPresence() {
+		return presence;
+	}
+	
 	/**
 	 * Creación del servicio de usuarios
 	 * @return
@@ -70,6 +196,24 @@ public class OriginsApplication implements WebSocketConfigurer{
 		return groundRSrv;
 	}
 	
+	/**
+	 * Creación del registro de salas de tierra
+	 * @return
+	 */
+	@Bean
+	public GroundRoomRegistry createGroundRoomRegistry() {
+		return groundRooms;
+	}
+	
+	/**
+	 * Creación del gestor de partidas de tierra
+	 * @return
+	 */
+	@Bean
+	public GroundMatchManager createGroundMatchManager() {
+		return groundMatches;
+	}
+	
 	/**
 	 * Creación del servicio de la partida de tierra
 	 * @return
@@ -78,5 +222,55 @@ public class OriginsApplication implements WebSocketConfigurer{
 	public GroundMService createGroundMatch() {
 		return groundMSrv;
 	}
+	
+	/**
+	 * Creación del punto de exportación de métricas, registrando los indicadores de los servicios
+	 * @return
+	 */
+	@Bean
+	public MetricsEndpoint createMetricsEndpoint() {
+		// Sesiones por punto de conexión //
+		String sessions = "origins_sessions";
+		String sessionsHelp = "Sesiones activas por punto de conexión";
+		Metrics.gauge(sessions, sessionsHelp, chatSrv::getSessionCount, "endpoint", "/chat");
+		Metrics.gauge(sessions, sessionsHelp, userSrv::getSessionCount, "endpoint", "/user");
+		Metrics.gauge(sessions, sessionsHelp, groundRooms::getSessionCount, "endpoint", "/groundR");
+		Metrics.gauge(sessions, sessionsHelp, groundMatches::getSessionCount, "endpoint", "/groundM");
+		
+		// Chat //
+		Metrics.gauge("origins_chat_channels", "Canales del chat con suscriptores", chatSrv::getChannelCount);
+		
+		// Salas, partidas y presencia //
+		Metrics.gauge("origins_rooms_active", "Salas de tierra activas", groundRooms::getActiveRooms);
+		Metrics.gauge("origins_matches_active", "Partidas de tierra en curso", groundMatches::getActiveMatches);
+		Metrics.gauge("origins_users_online", "Usuarios con la sesión iniciada", presence::getOnlineUsers);
+		
+		// Colas de salida //
+		Metrics.gauge("origins_outbound_queued_messages", "Mensajes pendientes en las colas de salida", outbound::getQueuedMessages);
+		Metrics.gauge("origins_outbound_queued_bytes", "Bytes pendientes en las colas de salida", outbound::getQueuedBytes);
+		Metrics.gauge("origins_outbound_max_queue_depth", "Mayor profundidad alcanzada por una cola de salida", outbound::getMaxQueueDepth);
+		Metrics.counter("origins_outbound_dropped_total", "Mensajes descartados por colas llenas", outbound::getDroppedMessages);
+		Metrics.counter("origins_outbound_terminated_total", "Sesiones cerradas por no vaciar su cola", outbound::getTerminatedSessions);
+		
+		// Planificador //
+		Metrics.counter("origins_tick_overruns_total", "Ticks que duraron más que su periodo", scheduler::getTickOverruns);
+		Metrics.gauge("origins_timeouts_pending", "Plazos pendientes en la rueda de plazos", timeouts::getPending);
+		Metrics.counter("origins_timeouts_expired_total", "Plazos vencidos en la rueda de plazos", timeouts::getExpired);
+		
+		// BD y escritura diferida //
+		Metrics.counter("origins_db_tasks_total", "Tareas de BD ejecutadas", dbExecutor::getExecuted);
+		Metrics.counter("origins_db_task_failures_total", "Tareas de BD fallidas", dbExecutor::getFailed);
+		Metrics.gauge("origins_chat_write_pending", "Mensajes del chat pendientes de guardar", chatWriter::getPending);
+		Metrics.counter("origins_chat_written_total", "Mensajes del chat guardados", chatWriter::getWritten);
+		Metrics.counter("origins_chat_write_failures_total", "Mensajes del chat que no se pudieron guardar", chatWriter::getFailed);
+		Metrics.counter("origins_chat_write_shed_total", "Mensajes del chat sin guardar por cola llena", chatWriter::getShed);
+		
+		// Directorio de usuarios //
+		Metrics.gauge("origins_user_cache_size", "Entradas del directorio de usuarios", userDirectory::getSize);
+		Metrics.counter("origins_user_cache_hits_total", "Aciertos del directorio de usuarios", userDirectory::getHits);
+		Metrics.counter("origins_user_cache_misses_total", "Fallos del directorio de usuarios", userDirectory::getMisses);
+		
+		return new MetricsEndpoint();
+	}
 
 }
@@ -0,0 +1,82 @@
+package es.armoonys.origins.chat;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+/**
+ * Canal del chat: sus suscriptores y su historial reciente. Un mensaje del canal solo se envía
+ * a sus suscriptores, así que el coste de cada mensaje depende del tamaño del canal y no del
+ * total de usuarios conectados.
+ */
+public class ChatChannel {
+	//******************* Tipos ************************//
+	// Tramas ya codificadas de la página reciente del historial
+	private static final class RecentFrames {
+		final long newestId;				// Mensaje más reciente cuando se codificó
+		final int limit;					// Tamaño de la página
+		final List<TextMessage> frames;
+
+		RecentFrames(long newestId, int limit, List<TextMessage> frames) {
+			this.newestId = newestId;
+			this.limit = limit;
+			this.frames = frames;
+		}
+	}
+
+	//******************* Variables específicas ************************//
+	private final String name;						// Nombre del canal
+	private final boolean persistent;				// ¿Se guarda en la BD y sobrevive sin suscriptores?
+	private final ChatHistory history;				// Historial reciente del canal
+	private final Set<WebSocketSession> subscribers = ConcurrentHashMap.newKeySet();
+	private volatile RecentFrames recent;			// Última página reciente codificada (o null)
+
+	//******************* Constructor ************************//
+	public ChatChannel(String name, boolean persistent, ChatHistory history) {
+		this.name = name;
+		this.persistent = persistent;
+		this.history = history;
+	}
+
+	//******************* Métodos ************************//
+	/**
+	 * Método para obtener las tramas guardadas de la página reciente del historial
+	 * @param newestId -> Mensaje más reciente del historial ahora mismo
+	 * @param limit -> Tamaño de la página pedida
+	 * @return Tramas o null si no hay o quedaron obsoletas por un mensaje nuevo
+	 */
+	public List<TextMessage> getRecentFrames(long newestId, int limit) {
+		RecentFrames cached = recent;
+		return cached != null && cached.newestId == newestId && cached.limit == limit ? cached.frames : null;
+	}
+
+	/**
+	 * Método para guardar las tramas de la página reciente del historial
+	 * @param newestId -> Mensaje más reciente de la página
+	 * @param limit -> Tamaño de la página
+	 * @param frames -> Tramas codificadas (inmutables)
+	 */
+	public void setRecentFrames(long newestId, int limit, List<TextMessage> frames) {
+		recent = new RecentFrames(newestId, limit, frames);
+	}
+
+	//******************* Getters ************************//
+	public String getName() {
+		return name;
+	}
+
+	public boolean isPersistent() {
+		return persistent;
+	}
+
+	public ChatHistory getHistory() {
+		return history;
+	}
+
+	public Set<WebSocketSession> getSubscribers() {
+		return subscribers;
+	}
+}
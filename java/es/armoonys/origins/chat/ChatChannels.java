@@ -0,0 +1,167 @@
+package es.armoonys.origins.chat;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import org.springframework.web.socket.WebSocketSession;
+
+/**
+ * Índice de canales del chat (canal -> suscriptores, y sesión -> canales para la limpieza al cerrar).
+ * Tipos de canal:
+ *  - global: canal de siempre, guardado en la BD
+ *  - lobby:ID y match:ID: canal de una sala o de una partida de tierra
+ *  - whisper:NOMBRE: buzón de un usuario (solo lo suscribe él, identificado con su ticket de /user;
+ *    cualquiera puede escribir en él)
+ * Los canales distintos del global solo viven en memoria: se crean con su primer suscriptor y se
+ * eliminan, con su historial, al irse el último.
+ */
+public class ChatChannels {
+	//******************* Variables genéricas ************************//
+	// Nombre del canal global
+	public static final String GLOBAL = "global";
+	// Nombres de canal admitidos
+	private static final Pattern NAMES = Pattern.compile("global|(lobby|match):\\d{1,9}|whisper:[^\\s:]{1,32}");
+
+	//******************* Variables específicas ************************//
+	// Canales por nombre
+	private Map<String, ChatChannel> channels = new ConcurrentHashMap<>();
+	// Canales suscritos por cada sesión
+	private Map<String, Set<String>> sessionChannels = new ConcurrentHashMap<>();
+	// Tamaño del historial de los canales en memoria
+	private int historySize;
+	// Canales máximos por sesión
+	private int maxPerSession;
+
+	//******************* Constructor ************************//
+	/**
+	 * @param global -> Canal global (con el historial cargado de la BD)
+	 * @param historySize -> Tamaño del historial de los demás canales
+	 * @param maxPerSession -> Canales que puede suscribir una sesión
+	 */
+	public ChatChannels(ChatChannel global, int historySize, int maxPerSession) {
+		this.historySize = historySize;
+		this.maxPerSession = maxPerSession;
+		channels.put(GLOBAL, global);
+	}
+
+	//******************* Métodos ************************//
+	/**
+	 * Método para suscribir una sesión a un canal (creándolo si no existe)
+	 * @param session -> Sesión del cliente
+	 * @param name -> Nombre del canal (ya validado)
+	 * @return Falso si la sesión alcanzó el máximo de canales
+	 */
+	public boolean subscribe(WebSocketSession session, String name) {
+		Set<String> subscribed = sessionChannels.computeIfAbsent(session.getId(), k -> ConcurrentHashMap.newKeySet());
+		if(subscribed.contains(name)) {
+			return true;
+		}
+		if(subscribed.size() >= maxPerSession) {
+			return false;
+		}
+
+		// Alta atómica respecto a la eliminación del canal al quedarse vacío
+		channels.compute(name, (k, channel) -> {
+			if(channel == null) {
+				channel = new ChatChannel(name, false, new ChatHistory(historySize));
+			}
+			channel.getSubscribers().add(session);
+			return channel;
+		});
+		subscribed.add(name);
+		return true;
+	}
+
+	/**
+	 * Método para dar de baja una sesión de un canal (eliminándolo si se quedó vacío)
+	 * @param session -> Sesión del cliente
+	 * @param name -> Nombre del canal
+	 */
+	public void unsubscribe(WebSocketSession session, String name) {
+		Set<String> subscribed = sessionChannels.get(session.getId());
+		if(subscribed == null || !subscribed.remove(name)) {
+			return;
+		}
+		remove(session, name);
+	}
+
+	/**
+	 * Método para dar de baja una sesión cerrada de todos sus canales
+	 * @param session -> Sesión del cliente
+	 */
+	public void unsubscribeAll(WebSocketSession session) {
+		Set<String> subscribed = sessionChannels.remove(session.getId());
+		if(subscribed == null) {
+			return;
+		}
+		for(String name : subscribed) {
+			remove(session, name);
+		}
+	}
+
+	private void remove(WebSocketSession session, String name) {
+		channels.computeIfPresent(name, (k, channel) -> {
+			channel.getSubscribers().remove(session);
+			return channel.getSubscribers().isEmpty() && !channel.isPersistent() ? null : channel;
+		});
+	}
+
+	// Getters //
+	/**
+	 * Método para obtener un canal existente
+	 * @param name -> Nombre del canal
+	 * @return Canal o null si no tiene suscriptores
+	 */
+	public ChatChannel get(String name) {
+		return channels.get(name);
+	}
+
+	/**
+	 * Método para saber si una sesión está suscrita a un canal
+	 * @param session -> Sesión del cliente
+	 * @param name -> Nombre del canal
+	 * @return Verdadero si está suscrita
+	 */
+	public boolean isSubscribed(WebSocketSession session, String name) {
+		return sessionChannels.getOrDefault(session.getId(), Collections.emptySet()).contains(name);
+	}
+
+	/**
+	 * Método para obtener el número de canales con suscriptores (incluido el global)
+	 * @return Número de canales
+	 */
+	public int getChannelCount() {
+		return channels.size();
+	}
+
+	// Otros //
+	/**
+	 * Método para validar el nombre de un canal
+	 * @param name -> Nombre indicado por el cliente
+	 * @return Verdadero si es un nombre de canal admitido
+	 */
+	public static boolean isValid(String name) {
+		return name != null && NAMES.matcher(name).matches();
+	}
+
+	/**
+	 * Método para saber si un canal es un buzón de susurros (se puede escribir sin suscribirlo)
+	 * @param name -> Nombre del canal
+	 * @return Verdadero si es un buzón
+	 */
+	public static boolean isWhisper(String name) {
+		return name.startsWith("whisper:");
+	}
+
+	/**
+	 * Método para obtener el buzón de susurros de un usuario
+	 * @param username -> Nombre del usuario
+	 * @return Nombre del canal
+	 */
+	public static String whisperOf(String username) {
+		return "whisper:" + username;
+	}
+}
@@ -0,0 +1,31 @@
+package es.armoonys.origins.chat;
+
+/**
+ * Mensaje de chat guardado (inmutable)
+ */
+public class ChatEntry {
+	//******************* Variables ************************//
+	private final long id;			// ID del mensaje
+	private final String name;		// Nombre del usuario que lo mandó
+	private final String body;		// Cuerpo del mensaje
+	
+	//******************* Constructor ************************//
+	public ChatEntry(long id, String name, String body) {
+		this.id = id;
+		this.name = name;
+		this.body = body;
+	}
+	
+	//******************* Getters ************************//
+	public long getId() {
+		return id;
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+	public String getBody() {
+		return body;
+	}
+}
@@ -0,0 +1,134 @@
+package es.armoonys.origins.chat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Historial reciente del chat en memoria: buffer circular acotado con los últimos mensajes.
+ * Se carga una vez al arrancar y se actualiza con cada mensaje enviado, de forma que los
+ * usuarios que entran no necesitan consultar la BD.
+ */
+public class ChatHistory {
+	//******************* Variables específicas ************************//
+	// Buffer circular de mensajes
+	private ChatEntry[] ring;
+	private int head = 0;		// Próxima posición de escritura
+	private int size = 0;		// Mensajes guardados
+	// Cerrojo de lectura/escritura (muchas lecturas concurrentes, una escritura por mensaje)
+	private ReadWriteLock lock = new ReentrantReadWriteLock();
+	
+	//******************* Constructor ************************//
+	public ChatHistory(int capacity) {
+		ring = new ChatEntry[Math.max(1, capacity)];
+	}
+	
+	//******************* Métodos ************************//
+	/**
+	 * Método para añadir un mensaje al historial (sustituye al más antiguo si está lleno)
+	 * @param entry -> Mensaje a añadir
+	 */
+	public void append(ChatEntry entry) {
+		lock.writeLock().lock();
+		try {
+			ring[head] = entry;
+			head = (head + 1) % ring.length;
+			if(size < ring.length) {
+				size++;
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Método para cargar el historial inicial
+	 * @param entries -> Mensajes en orden de antigüedad (el más antiguo primero)
+	 */
+	public void load(List<ChatEntry> entries) {
+		for(ChatEntry entry : entries) {
+			append(entry);
+		}
+	}
+	
+	/**
+	 * Método para obtener los últimos mensajes
+	 * @param limit -> Número máximo de mensajes
+	 * @return Mensajes en orden de antigüedad (el más antiguo primero)
+	 */
+	public List<ChatEntry> recent(int limit) {
+		return olderThan(Long.MAX_VALUE, limit);
+	}
+	
+	/**
+	 * Método para paginar hacia atrás: los últimos mensajes con ID menor que el indicado
+	 * @param beforeId -> ID a partir del cual se buscan mensajes anteriores
+	 * @param limit -> Número máximo de mensajes
+	 * @return Mensajes en orden de antigüedad (el más antiguo primero)
+	 */
+	public List<ChatEntry> olderThan(long beforeId, int limit) {
+		List<ChatEntry> page = new ArrayList<>(Math.min(limit, ring.length));
+		
+		lock.readLock().lock();
+		try {
+			// Recorrido del más reciente al más antiguo
+			for(int i = 1; i <= size && page.size() < limit; i++) {
+				ChatEntry entry = ring[(head - i + ring.length) % ring.length];
+				if(entry.getId() < beforeId) {
+					page.add(entry);
+				}
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		
+		Collections.reverse(page);
+		return page;
+	}
+	
+	/**
+	 * Método para obtener el ID del mensaje más antiguo en memoria
+	 * @return ID del mensaje más antiguo o -1 si el historial está vacío
+	 */
+	public long oldestId() {
+		lock.readLock().lock();
+		try {
+			return size == 0 ? -1 : ring[(head - size + ring.length) % ring.length].getId();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Método para obtener el ID del mensaje más reciente en memoria
+	 * @return ID del mensaje más reciente o -1 si el historial está vacío
+	 */
+	public long newestId() {
+		lock.readLock().lock();
+		try {
+			return size == 0 ? -1 : ring[(head - 1 + ring.length) % ring.length].getId();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Método para saber si el historial en memoria contiene todo lo anterior a un ID
+	 * (si está lleno, puede haber mensajes más antiguos solo en la BD)
+	 * @return Verdadero si el historial aún no ha descartado ningún mensaje
+	 */
+	public boolean isComplete() {
+		lock.readLock().lock();
+		try {
+			return size < ring.length;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	public int capacity() {
+		return ring.length;
+	}
+}
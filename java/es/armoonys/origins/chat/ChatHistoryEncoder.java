@@ -0,0 +1,97 @@
+package es.armoonys.origins.chat;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.web.socket.TextMessage;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import es.armoonys.origins.codec.MessageCodec;
+
+/**
+ * Codificador de páginas de historial en tramas agrupadas:
+ *   {"code":"OK_GETMESSAGES","channel":"global","messages":[{...},{...}],"end":false}
+ * Cada trama lleva tantos mensajes como quepan en el tamaño máximo y la última lleva "end":true
+ * (una página vacía se envía como una sola trama vacía con "end":true). Un mensaje que por sí solo
+ * supera el máximo va solo en su trama: los mensajes nunca se parten.
+ * Las tramas son inmutables, así que se pueden guardar y enviar a varias sesiones.
+ */
+public class ChatHistoryEncoder {
+	//******************* Variables genéricas ************************//
+	private static final byte[] MESSAGES = ",\"messages\":[".getBytes();
+	private static final byte[] MORE = "],\"end\":false}".getBytes();
+	private static final byte[] END = "],\"end\":true}".getBytes();
+	private ObjectMapper mapper = MessageCodec.MAPPER;
+
+	//******************* Variables específicas ************************//
+	// Tamaño máximo de una trama en bytes
+	private int maxFrameBytes;
+
+	//******************* Constructor ************************//
+	public ChatHistoryEncoder(int maxFrameBytes) {
+		this.maxFrameBytes = maxFrameBytes;
+	}
+
+	//******************* Métodos ************************//
+	/**
+	 * Método para codificar una página de historial en tramas
+	 * @param code -> Código de la petición
+	 * @param channel -> Canal del historial
+	 * @param page -> Mensajes en orden de antigüedad (el más antiguo primero)
+	 * @return Tramas a enviar en orden
+	 * @throws JsonProcessingException
+	 */
+	public List<TextMessage> encode(String code, String channel, List<ChatEntry> page) throws JsonProcessingException {
+		// Cabecera común a todas las tramas (código y canal)
+		ObjectNode header = mapper.createObjectNode();
+		header.put("code", code);
+		header.put("channel", channel);
+		byte[] head = mapper.writeValueAsBytes(header);
+
+		List<TextMessage> frames = new ArrayList<>();
+		ByteArrayOutputStream frame = new ByteArrayOutputStream(Math.min(maxFrameBytes, 1024));
+		int count = 0;
+		for(ChatEntry entry : page) {
+			byte[] bytes = mapper.writeValueAsBytes(toNode(entry));
+
+			// Si el mensaje no cabe, se cierra la trama en curso y se empieza otra
+			if(count > 0 && frame.size() + 1 + bytes.length + MORE.length > maxFrameBytes) {
+				frame.write(MORE, 0, MORE.length);
+				frames.add(new TextMessage(frame.toByteArray()));
+				frame.reset();
+				count = 0;
+			}
+			if(count == 0) {
+				// Cabecera sin la llave de cierre seguida de la lista de mensajes
+				frame.write(head, 0, head.length - 1);
+				frame.write(MESSAGES, 0, MESSAGES.length);
+			} else {
+				frame.write(',');
+			}
+			frame.write(bytes, 0, bytes.length);
+			count++;
+		}
+
+		// Última trama (o única, vacía, si la página no tiene mensajes)
+		if(count == 0) {
+			frame.write(head, 0, head.length - 1);
+			frame.write(MESSAGES, 0, MESSAGES.length);
+		}
+		frame.write(END, 0, END.length);
+		frames.add(new TextMessage(frame.toByteArray()));
+		return frames;
+	}
+
+	// Otros //
+	private ObjectNode toNode(ChatEntry entry) {
+		ObjectNode newNode = mapper.createObjectNode();
+		newNode.put("id", entry.getId());
+		newNode.put("name", entry.getName());
+		newNode.put("message", entry.getBody());
+		return newNode;
+	}
+}
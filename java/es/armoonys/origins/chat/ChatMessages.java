@@ -0,0 +1,31 @@
+package es.armoonys.origins.chat;
+
+import es.armoonys.origins.codec.Message;
+
+/**
+ * Tipos de los mensajes que recibe el servicio de chat
+ */
+public final class ChatMessages {
+	
+	private ChatMessages() {
+	}
+	
+	// OK_GETMESSAGES -> Petición de los mensajes guardados
+	public static class GetMessages extends Message {
+		public long before;			// Solo mensajes con ID menor (0 = los más recientes)
+		public int limit;			// Número máximo de mensajes (0 = todo el historial reciente)
+		public String channel;		// Canal (null = global)
+	}
+	
+	// OK_SENDMESSAGE -> Mensaje de un usuario para el resto
+	public static class SendMessage extends Message {
+		public String name;			// Nombre del usuario
+		public String message;		// Cuerpo del mensaje
+		public String channel;		// Canal (null = global)
+	}
+	
+	// OK_JOINCHANNEL / OK_LEAVECHANNEL -> Suscripción a un canal o baja de él
+	public static class Channel extends Message {
+		public String channel;		// Nombre del canal
+	}
+}
@@ -1,38 +1,122 @@
 package es.armoonys.origins.chat;
 
 import java.io.IOException;
-import java.sql.ResultSet;
-import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
-import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.core.RowMapper;
+import org.springframework.web.util.UriComponentsBuilder;
 
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
-public class ChatService extends TextWebSocketHandler{
+import es.armoonys.origins.chat.ChatMessages.Channel;
+import es.armoonys.origins.chat.ChatMessages.GetMessages;
+import es.armoonys.origins.chat.ChatMessages.SendMessage;
+import es.armoonys.origins.codec.MessageCodec;
+import es.armoonys.origins.codec.MessageDispatcher;
+import es.armoonys.origins.metrics.Metrics;
+import es.armoonys.origins.net.Broadcaster;
+import es.armoonys.origins.persistence.DbExecutor;
+import es.armoonys.origins.persistence.IdAllocator;
+import es.armoonys.origins.persistence.MessageRepository;
+import es.armoonys.origins.users.SessionTickets;
+
+public class ChatService extends TextWebSocketHandler implements InitializingBean{
 	//******************* Variables genéricas ************************//
+	private static final Logger log = LoggerFactory.getLogger(ChatService.class);
 	// Sesiones del socket
 	private Map<String, WebSocketSession> sessions = new ConcurrentHashMap<>();	
-	// Objeto para mapear los nodos JSON recibidos
-	private ObjectMapper mapper = new ObjectMapper();
-	// Plantilla de la BD
+	// Usuario identificado con un ticket de /user de cada sesión (las anónimas no aparecen)
+	private Map<String, String> usernames = new ConcurrentHashMap<>();
+	// Tickets de sesión emitidos por el servicio de usuarios
+	private SessionTickets tickets;
+	// Objeto para generar los nodos JSON enviados
+	private ObjectMapper mapper = MessageCodec.MAPPER;
+	// Tabla de despacho de mensajes por código
+	private MessageDispatcher dispatcher = new MessageDispatcher("/chat")
+		// Caso: OK_GETMESSAGES -> Envío al usuario del historial de mensajes (paginado)
+		.on("OK_GETMESSAGES", GetMessages.class, this::requestMessages)
+		// Caso: OK_SENDMESSAGE -> Un usuario concreto quiere mandar información al resto de clientes
+		.on("OK_SENDMESSAGE", SendMessage.class, this::sendOtherUsers)
+		// Caso: OK_JOINCHANNEL -> Suscripción del usuario a un canal
+		.on("OK_JOINCHANNEL", Channel.class, this::joinChannel)
+		// Caso: OK_LEAVECHANNEL -> Baja del usuario de un canal
+		.on("OK_LEAVECHANNEL", Channel.class, this::leaveChannel);
+	// Almacén de mensajes
 	@Autowired
-	private JdbcTemplate templateOriginsDB;
-	// ID próximo mensaje
-	AtomicLong nextId;												
+	private MessageRepository messages;
+	// Escritor diferido de mensajes
+	private ChatWriteBehind writer;
+	// Ejecutor de tareas de BD
+	private DbExecutor db;
+	// Generador de IDs de mensaje
+	private IdAllocator messageIds = new IdAllocator("messages");
+	//******************* Variables específicas ************************//
+	// Historial reciente en memoria
+	@Value("${origins.chat.history-size:500}")
+	private int historySize = 500;
+	private ChatHistory history;
+	// Canales //
+	@Value("${origins.chat.channel-history-size:50}")
+	private int channelHistorySize = 50;			// Historial de cada canal en memoria
+	@Value("${origins.chat.max-channels-per-session:16}")
+	private int maxChannels = 16;					// Canales que puede suscribir una sesión
+	private ChatChannels channels;
+	// Envío agrupado del historial //
+	@Value("${origins.chat.history-frame-bytes:16384}")
+	private int historyFrameBytes = 16384;			// Tamaño máximo de cada trama de historial
+	@Value("${origins.chat.history-cache:true}")
+	private boolean historyCache = true;			// ¿Se reutilizan las tramas de la página reciente?
+	private ChatHistoryEncoder encoder;
+	private LongAdder cacheHits = Metrics.counter("origins_chat_history_cache_total",
+			"Peticiones de la página reciente del historial por resultado de la caché", "result", "hit");
+	private LongAdder cacheMisses = Metrics.counter("origins_chat_history_cache_total",
+			"Peticiones de la página reciente del historial por resultado de la caché", "result", "miss");
+	// Tamaño máximo de una página de historial
+	@Value("${origins.chat.page-size:100}")
+	private int maxPageSize = 100;
+	
+	//******************* Constructor ************************//
+	/**
+	 * Constructor del servicio del chat
+	 * @param writer -> Escritor diferido de los mensajes en la BD
+	 * @param db -> Ejecutor de tareas de BD
+	 * @param tickets -> Tickets de sesión para identificar al usuario (/chat?ticket=TICKET)
+	 */
+	public ChatService(ChatWriteBehind writer, DbExecutor db, SessionTickets tickets) {
+		this.writer = writer;
+		this.db = db;
+		this.tickets = tickets;
+	}
 	
 	//******************* Métodos ************************//
+	// Métodos de ciclo de vida //
+	/**
+	 * Método de carga del historial reciente al arrancar (una única consulta a la BD)
+	 */
+	@Override
+	public void afterPropertiesSet() {
+		history = new ChatHistory(historySize);
+		history.load(messages.findOlderThan(Long.MAX_VALUE, history.capacity()));
+		channels = new ChatChannels(new ChatChannel(ChatChannels.GLOBAL, true, history), channelHistorySize, maxChannels);
+		encoder = new ChatHistoryEncoder(historyFrameBytes);
+		
+		// El mensaje más reciente del historial es la marca de agua de los IDs
+		messageIds.seed(Math.max(0, history.newestId()));
+	}
+	
 	// Métodos sobrecargados //
 	/**
 	 * Método invocado cuando un cliente establece conexión con el socket
@@ -42,6 +126,13 @@ public class ChatService extends TextWebSocketHandler{
 	@Override
 	public void afterConnectionEstablished(WebSocketSession session) throws Exception {
 		sessions.put(session.getId(), session);
+		// Identificación del usuario con el ticket obtenido en /user (sin él, la sesión es anónima)
+		String username = tickets.redeem(getQueryParam(session, "ticket"));
+		if(username != null) {
+			usernames.put(session.getId(), username);
+		}
+		// Toda sesión empieza suscrita al canal global
+		channels.subscribe(session, ChatChannels.GLOBAL);
 	}
 	
 	/**
@@ -53,6 +144,9 @@ public class ChatService extends TextWebSocketHandler{
 	@Override
 	public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
 		sessions.remove(session.getId());
+		usernames.remove(session.getId());
+		channels.unsubscribeAll(session);
+		db.release(session);
 	}
 	
 	/**
@@ -63,91 +157,248 @@ public class ChatService extends TextWebSocketHandler{
 	 */
 	@Override
 	protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
-		// Creación de nodo de JSON del mensaje
-		JsonNode node = mapper.readTree(message.getPayload());
-		
-		// Obtención del código del mensaje
-		String codeMessage = node.get("code").asText();
-		
-		// Ejecución de código en función del código obtenido
-		switch(codeMessage) {
-			// Caso: OK_GETMESSAGES -> Envío al usuario de todos los mensajes de la BD
-			case "OK_GETMESSAGES":
-				// Método de obtención de mensajes de la BD
-				getMessagesFromDB(session, node);
-				break;
-			// Caso: OK_SENDMESSAGE -> Un usuario concreto quiere mandar información al resto de clientes
-			case "OK_SENDMESSAGE":
-				System.out.println("[SERVER] Mensaje recibido de " + node.get("name").asText());
-				
-				// Envío al resto de jugadores el mensaje del usuario
-				sendOtherUsers(session, node);
-				break;
-		}
+		// Ejecución del manejador registrado para el código del mensaje
+		dispatcher.dispatch(session, message.getPayload());
 	}
 
 	// Métodos de obtención de información //
 	/**
-	 * Método de obtención de todos los mensajes de la BD
+	 * Método para obtener el historial fuera del hilo de WebSocket (puede consultar la BD)
 	 * @param session -> Sesión del cliente que desea recibir los mensajes
-	 * @param node -> Nodo de información con el mensaje enviado por parte del cliente
+	 * @param msg -> Mensaje enviado por parte del cliente
+	 */
+	private void requestMessages(WebSocketSession session, GetMessages msg) {
+		db.execute(session, () -> getMessages(session, msg));
+	}
+	
+	/**
+	 * Método de obtención del historial de mensajes. Sin parámetros se envían los mensajes recientes;
+	 * con "before" (ID) y "limit" se pagina hacia atrás. Lo que no está en memoria se lee de la BD.
+	 * La página se envía en pocas tramas agrupadas (la última con "end":true); las de la página
+	 * reciente se guardan en el canal hasta que llega un mensaje nuevo
+	 * @param session -> Sesión del cliente que desea recibir los mensajes
+	 * @param msg -> Mensaje enviado por parte del cliente
 	 * @throws IOException
 	 */
-	private void getMessagesFromDB(WebSocketSession session, JsonNode node) throws IOException {
-		// Obtención de todos los mensajes de la base de datos
-        List<ObjectNode> listOfMessages = templateOriginsDB.query("SELECT * FROM messages", new RowMapper<ObjectNode>() {
-            // Obtención del contenido de fila del mapa (en la base de datos, cada fila es un mensaje)
-        	@Override
-            public ObjectNode mapRow(ResultSet rs, int rowNum) throws SQLException {
-        		// Generación e inserción de la información en el objeto para enviar
-        		ObjectNode newNode = mapper.createObjectNode();
-        		newNode.put("code", node.get("code").asText());
-        		newNode.put("name", rs.getString("Username"));
-        		newNode.put("message", rs.getString("Body"));
-        		
-        		return newNode;
-            }
-
-        });
-        
-        // Asignación de la nueva ID para los mensajes
-        nextId = new AtomicLong(listOfMessages.size());
-        
-        // Envío de cada uno de los mensajes al cliente
-        for(ObjectNode message : listOfMessages) {
-        	session.sendMessage(new TextMessage(message.toString()));
+	private void getMessages(WebSocketSession session, GetMessages msg) throws IOException {
+		// Canal del historial (solo se leen canales suscritos)
+		String name = msg.channel != null ? msg.channel : ChatChannels.GLOBAL;
+		ChatChannel channel = channels.isSubscribed(session, name) ? channels.get(name) : null;
+		if(channel == null) {
+			notifyChannelError(session, name);
+			return;
+		}
+		ChatHistory recent = channel.getHistory();
+		
+		// Parámetros de la página
+		int limit = msg.limit > 0 ? Math.min(msg.limit, maxPageSize) : recent.capacity();
+		long before = msg.before > 0 ? msg.before : Long.MAX_VALUE;
+		
+		// Página reciente ya codificada (la que piden todos los clientes al entrar)
+		boolean cacheable = historyCache && before == Long.MAX_VALUE;
+		long newestId = recent.newestId();
+		List<TextMessage> frames = cacheable ? channel.getRecentFrames(newestId, limit) : null;
+		if(frames != null) {
+			cacheHits.increment();
+			send(session, frames);
+			return;
+		}
+		
+		// Obtención de la página desde memoria
+		List<ChatEntry> page = recent.olderThan(before, limit);
+		
+		// Si la página no se completa y puede haber mensajes más antiguos solo en la BD (canal global)
+		if(channel.isPersistent() && page.size() < limit && !recent.isComplete()) {
+			long from = page.isEmpty() ? Math.min(before, recent.oldestId()) : page.get(0).getId();
+			List<ChatEntry> older = new ArrayList<>(messages.findOlderThan(from, limit - page.size()));
+			older.addAll(page);
+			page = older;
+		}
+		
+		// Codificación de la página en tramas agrupadas y envío al cliente
+		frames = encoder.encode(msg.code, name, page);
+		if(cacheable) {
+			cacheMisses.increment();
+			// Solo se guarda si no llegó ningún mensaje mientras se leía la página
+			if(page.isEmpty() ? newestId == -1 : page.get(page.size() - 1).getId() == newestId) {
+				channel.setRecentFrames(newestId, limit, frames);
+			}
+		}
+		send(session, frames);
+	}
+	
+	/**
+	 * Método para enviar las tramas del historial a un cliente
+	 * @param session -> Sesión del cliente
+	 * @param frames -> Tramas en orden
+	 * @throws IOException
+	 */
+	private void send(WebSocketSession session, List<TextMessage> frames) throws IOException {
+		for(TextMessage frame : frames) {
+			session.sendMessage(frame);
+		}
+	}
+	
+	// Métodos de canales //
+	/**
+	 * Método para suscribir al cliente a un canal
+	 * @param session -> Sesión del cliente
+	 * @param msg -> Canal indicado por el cliente
+	 * @throws IOException
+	 */
+	private void joinChannel(WebSocketSession session, Channel msg) throws IOException {
+		// Si el nombre no es válido, es el buzón de otro usuario o la sesión alcanzó el máximo de canales
+		if(!ChatChannels.isValid(msg.channel) || !canSubscribe(session, msg.channel)
+				|| !channels.subscribe(session, msg.channel)) {
+			notifyChannelError(session, msg.channel);
+			return;
+		}
+		notifyChannel(session, msg.code, msg.channel);
+	}
+	
+	/**
+	 * Método para dar de baja al cliente de un canal
+	 * @param session -> Sesión del cliente
+	 * @param msg -> Canal indicado por el cliente
+	 * @throws IOException
+	 */
+	private void leaveChannel(WebSocketSession session, Channel msg) throws IOException {
+		if(msg.channel == null) {
+			notifyChannelError(session, null);
+			return;
+		}
+		channels.unsubscribe(session, msg.channel);
+		notifyChannel(session, msg.code, msg.channel);
+	}
+	
+	/**
+	 * Método para saber si una sesión puede suscribir un canal: los buzones de susurros solo
+	 * los suscribe su dueño, identificado con su ticket de /user
+	 * @param session -> Sesión del cliente
+	 * @param channel -> Nombre del canal (ya validado)
+	 * @return Verdadero si puede suscribirlo
+	 */
+	private boolean canSubscribe(WebSocketSession session, String channel) {
+		if(!ChatChannels.isWhisper(channel)) {
+			return true;
 		}
+		String username = usernames.get(session.getId());
+		return username != null && channel.equals(ChatChannels.whisperOf(username));
 	}
 	
 	// Métodos de notificación //
 	/**
-	 * Método para notificar a todos los clientes el mensaje enviado por otro cliente
+	 * Método para notificar a los suscriptores de un canal el mensaje enviado por otro cliente
+	 * (en el canal global se guarda en la BD; en el resto solo en el historial del canal)
 	 * @param session -> Sesión actual del jugador
-	 * @param node -> Nodo de información a mapear para mandarlo a los usuarios
+	 * @param msg -> Mensaje a mapear para mandarlo a los usuarios
 	 * @throws IOException
 	 */
-	private void sendOtherUsers(WebSocketSession session, JsonNode node) throws IOException {
+	private void sendOtherUsers(WebSocketSession session, SendMessage msg) throws IOException {
+		log.debug("Mensaje recibido de {}", msg.name);
+		
+		// Canal destino: hay que estar suscrito, salvo para escribir en el buzón de otro usuario
+		String channelName = msg.channel != null ? msg.channel : ChatChannels.GLOBAL;
+		ChatChannel channel = ChatChannels.isValid(channelName) ? channels.get(channelName) : null;
+		if(channel == null || (!ChatChannels.isWhisper(channelName) && !channels.isSubscribed(session, channelName))) {
+			notifyChannelError(session, channelName);
+			return;
+		}
+		
 		// Obtención de valores
-		long id = nextId.incrementAndGet();
-		String name = node.get("name").asText();
-		String message = node.get("message").asText();
+		String name = msg.name;
+		String message = msg.message;
 		
-		// Inserción en la BD
-		templateOriginsDB.update("INSERT INTO messages(ID,Username,Body) VALUES('" + id +"','"+ name +"','"+ message +"')");
+		// Inserción en el historial del canal y, si es el global, encolado para la BD. El ID se
+		// asigna en la misma sección por canal para que historial y BD los reciban en orden creciente
+		ChatEntry entry;
+		synchronized(channel) {
+			entry = new ChatEntry(messageIds.next(), name, message);
+			channel.getHistory().append(entry);
+			if(channel.isPersistent()) {
+				writer.submit(entry);
+			}
+		}
 				
 		// Generación del mensaje a enviar a un cliente específico
-		ObjectNode newNode = mapper.createObjectNode();
-		newNode.put("code", node.get("code").asText());
-		newNode.put("name", name);
-		newNode.put("message", message);
+		ObjectNode newNode = toNode(msg.code, channelName, entry);
 		
-		// Obtención de cada una de las sesiones en el socket
-		for(WebSocketSession participant : sessions.values()) {
-			// Si no es el mismo que mandó el mensaje
-			if(!participant.getId().equals(session.getId())) {
-				// Envío del mensaje
-				participant.sendMessage(new TextMessage(newNode.toString()));
-			}
+		// Envío del mensaje (serializado una vez) al resto de suscriptores del canal
+		Broadcaster.broadcast(channel.getSubscribers(), newNode, session);
+	}
+	
+	/**
+	 * Método para confirmar al cliente el alta o la baja de un canal
+	 * @param session -> Sesión del cliente
+	 * @param code -> Código de la petición
+	 * @param channel -> Nombre del canal
+	 * @throws IOException
+	 */
+	private void notifyChannel(WebSocketSession session, String code, String channel) throws IOException {
+		ObjectNode newNode = mapper.createObjectNode();
+		newNode.put("code", code);
+		newNode.put("channel", channel);
+		session.sendMessage(new TextMessage(newNode.toString()));
+	}
+	
+	/**
+	 * Método para avisar al cliente de que el canal no es válido, no existe o no está suscrito
+	 * @param session -> Sesión del cliente
+	 * @param channel -> Nombre del canal indicado
+	 * @throws IOException
+	 */
+	private void notifyChannelError(WebSocketSession session, String channel) throws IOException {
+		ObjectNode newNode = mapper.createObjectNode();
+		newNode.put("code", "Error_CHANNEL");
+		newNode.put("channel", channel);
+		session.sendMessage(new TextMessage(newNode.toString()));
+	}
+	
+	// Getters //
+	/**
+	 * Método para obtener el número de sesiones conectadas al socket
+	 * @return Número de sesiones
+	 */
+	public int getSessionCount() {
+		return sessions.size();
+	}
+	
+	/**
+	 * Método para obtener el número de canales con suscriptores
+	 * @return Número de canales
+	 */
+	public int getChannelCount() {
+		return channels.getChannelCount();
+	}
+	
+	// Otros //
+	/**
+	 * Método para obtener un parámetro de la consulta de la URI de conexión
+	 * @param session -> Sesión del cliente
+	 * @param name -> Nombre del parámetro
+	 * @return Valor o null si no se indicó
+	 */
+	private static String getQueryParam(WebSocketSession session, String name) {
+		if(session.getUri() == null) {
+			return null;
 		}
+		return UriComponentsBuilder.fromUri(session.getUri()).build().getQueryParams().getFirst(name);
+	}
+	
+	/**
+	 * Método para generar el nodo JSON de un mensaje de chat
+	 * @param code -> Código del mensaje
+	 * @param channel -> Canal del mensaje
+	 * @param entry -> Mensaje de chat
+	 * @return Nodo a enviar
+	 */
+	private ObjectNode toNode(String code, String channel, ChatEntry entry) {
+		ObjectNode newNode = mapper.createObjectNode();
+		newNode.put("code", code);
+		newNode.put("channel", channel);
+		newNode.put("id", entry.getId());
+		newNode.put("name", entry.getName());
+		newNode.put("message", entry.getBody());
+		return newNode;
 	}
 }
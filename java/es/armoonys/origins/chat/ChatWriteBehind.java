@@ -0,0 +1,184 @@
+package es.armoonys.origins.chat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+
+import es.armoonys.origins.persistence.MessageRepository;
+
+/**
+ * Persistencia diferida de los mensajes del chat. Los mensajes se encolan sin tocar la BD
+ * y un único hilo escritor los guarda por lotes al llenarse el lote
+ * o al vencer el plazo de espera. Si la cola está llena, el envío espera un tiempo acotado
+ * (contrapresión) y, si sigue llena, el mensaje no se guarda y se cuenta como descartado:
+ * la BD nunca se toca desde el hilo del emisor.
+ */
+public class ChatWriteBehind implements InitializingBean, DisposableBean {
+	//******************* Variables genéricas ************************//
+	private static final Logger log = LoggerFactory.getLogger(ChatWriteBehind.class);
+	// Almacén de mensajes
+	@Autowired
+	private MessageRepository messages;
+	
+	//******************* Variables específicas ************************//
+	// Configuración //
+	@Value("${origins.chat.write.queue-size:4096}")
+	private int queueSize = 4096;				// Mensajes pendientes como máximo
+	@Value("${origins.chat.write.batch-size:64}")
+	private int batchSize = 64;					// Mensajes por lote como máximo
+	@Value("${origins.chat.write.flush-ms:200}")
+	private long flushMs = 200;					// Espera máxima de un mensaje antes de escribirse
+	@Value("${origins.chat.write.offer-timeout-ms:50}")
+	private long offerTimeoutMs = 50;			// Espera máxima para encolar con la cola llena
+	// Cola de mensajes pendientes e hilo escritor
+	private BlockingQueue<ChatEntry> queue;
+	private Thread writer;
+	private volatile boolean running;
+	// Estadísticas //
+	private AtomicLong written = new AtomicLong();		// Mensajes escritos
+	private AtomicLong batches = new AtomicLong();		// Lotes escritos
+	private AtomicLong shed = new AtomicLong();			// Mensajes descartados (cola llena o escritor parado)
+	private AtomicLong failed = new AtomicLong();		// Mensajes que no se pudieron escribir
+	
+	//******************* Métodos ************************//
+	// Métodos de ciclo de vida //
+	/**
+	 * Método de arranque del hilo escritor una vez inyectada la configuración
+	 */
+	@Override
+	public void afterPropertiesSet() {
+		queue = new ArrayBlockingQueue<>(queueSize);
+		running = true;
+		
+		writer = new Thread(this::run, "origins-chat-writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+	
+	/**
+	 * Método de parada: el escritor vacía la cola antes de terminar
+	 * @throws InterruptedException
+	 */
+	@Override
+	public void destroy() throws InterruptedException {
+		running = false;
+		writer.join(TimeUnit.SECONDS.toMillis(10));
+		
+		// Si el escritor no terminó a tiempo, lo pendiente se escribe aquí
+		List<ChatEntry> rest = new ArrayList<>();
+		queue.drainTo(rest);
+		flush(rest);
+		log.info("Escritor del chat detenido ({} mensajes en {} lotes, {} fallidos)", 
+				written.get(), batches.get(), failed.get());
+	}
+	
+	// Métodos de escritura //
+	/**
+	 * Método para encolar un mensaje para su escritura
+	 * @param entry -> Mensaje a guardar
+	 */
+	public void submit(ChatEntry entry) {
+		if(running) {
+			try {
+				if(queue.offer(entry, offerTimeoutMs, TimeUnit.MILLISECONDS)) {
+					return;
+				}
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		
+		// Cola llena (o escritor parado): el mensaje solo queda en el historial en memoria
+		if(shed.incrementAndGet() % 1000 == 1) {
+			log.warn("Cola del escritor del chat llena: {} mensajes sin guardar", shed.get());
+		}
+	}
+	
+	/**
+	 * Bucle del hilo escritor: agrupa los mensajes hasta llenar el lote o vencer el plazo
+	 */
+	private void run() {
+		List<ChatEntry> batch = new ArrayList<>(batchSize);
+		long flushNanos = TimeUnit.MILLISECONDS.toNanos(flushMs);
+		
+		while(running || !queue.isEmpty()) {
+			try {
+				// Espera del primer mensaje del lote
+				ChatEntry first = queue.poll(flushMs, TimeUnit.MILLISECONDS);
+				if(first == null) {
+					continue;
+				}
+				batch.add(first);
+				
+				// Se completa el lote con lo pendiente hasta llenarlo o vencer el plazo
+				long deadline = System.nanoTime() + flushNanos;
+				while(batch.size() < batchSize) {
+					queue.drainTo(batch, batchSize - batch.size());
+					long wait = deadline - System.nanoTime();
+					if(batch.size() >= batchSize || wait <= 0 || !running) {
+						break;
+					}
+					ChatEntry next = queue.poll(wait, TimeUnit.NANOSECONDS);
+					if(next == null) {
+						break;
+					}
+					batch.add(next);
+				}
+			} catch(InterruptedException e) {
+				running = false;
+			}
+			flush(batch);
+		}
+	}
+	
+	/**
+	 * Método para insertar un lote de mensajes en la BD
+	 * @param batch -> Lote de mensajes (se vacía tras escribirse)
+	 */
+	private void flush(List<ChatEntry> batch) {
+		if(batch.isEmpty()) {
+			return;
+		}
+		
+		try {
+			messages.saveAll(batch);
+			written.addAndGet(batch.size());
+			batches.incrementAndGet();
+		} catch(RuntimeException e) {
+			failed.addAndGet(batch.size());
+			log.warn("Error al guardar {} mensajes del chat: {}", batch.size(), e.getMessage());
+		}
+		batch.clear();
+	}
+	
+	// Getters //
+	public int getPending() {
+		return queue.size();
+	}
+	
+	public long getWritten() {
+		return written.get();
+	}
+	
+	public long getBatches() {
+		return batches.get();
+	}
+	
+	public long getShed() {
+		return shed.get();
+	}
+	
+	public long getFailed() {
+		return failed.get();
+	}
+}
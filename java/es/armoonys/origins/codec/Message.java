@@ -0,0 +1,10 @@
+package es.armoonys.origins.codec;
+
+/**
+ * Mensaje tipado recibido de un cliente. Todos los mensajes del protocolo llevan el campo "code";
+ * cada código se asocia a una subclase con el resto de sus campos.
+ */
+public class Message {
+	// Código del mensaje
+	public String code;
+}
@@ -0,0 +1,56 @@
+package es.armoonys.origins.codec;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Utilidades de codificación compartidas por todos los servicios. Lee el campo "code" con el parser
+ * de streaming (sin construir el árbol JSON) y ofrece el ObjectMapper común para los tipos de mensaje.
+ */
+public final class MessageCodec {
+	//******************* Variables genéricas ************************//
+	// Objeto para mapear los mensajes (los campos desconocidos se ignoran, como con readTree)
+	public static final ObjectMapper MAPPER = new ObjectMapper()
+			.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+	// Fábrica de parsers de streaming
+	private static final JsonFactory FACTORY = MAPPER.getFactory();
+	
+	//******************* Constructor ************************//
+	private MessageCodec() {
+	}
+	
+	//******************* Métodos ************************//
+	/**
+	 * Método para obtener el código de un mensaje sin deserializarlo entero.
+	 * Se detiene en cuanto encuentra el campo (normalmente el primero)
+	 * @param payload -> Mensaje JSON recibido
+	 * @return Código del mensaje o null si no tiene
+	 * @throws IOException
+	 */
+	public static String readCode(String payload) throws IOException {
+		try(JsonParser parser = FACTORY.createParser(payload)) {
+			// El mensaje debe ser un objeto JSON
+			if(parser.nextToken() != JsonToken.START_OBJECT) {
+				return null;
+			}
+			
+			// Recorrido de los campos de primer nivel hasta encontrar el código
+			while(parser.nextToken() == JsonToken.FIELD_NAME) {
+				String field = parser.getCurrentName();
+				JsonToken value = parser.nextToken();
+				
+				if("code".equals(field)) {
+					return value == JsonToken.VALUE_STRING ? parser.getText() : null;
+				}
+				// Los valores anidados se saltan sin construirlos
+				parser.skipChildren();
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,126 @@
+package es.armoonys.origins.codec;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.web.socket.WebSocketSession;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import es.armoonys.origins.metrics.Histogram;
+import es.armoonys.origins.metrics.Metrics;
+
+/**
+ * Tabla de despacho de mensajes de un servicio. Cada código se registra una vez con su tipo
+ * y su manejador; al recibir un mensaje se lee el código, se busca la ruta en la tabla y se
+ * deserializa directamente en el tipo registrado.
+ * La tabla se construye al crear el servicio y solo se lee después.
+ * Cada ruta mide el tiempo de manejo de su código (deserialización incluida).
+ */
+public class MessageDispatcher {
+	//******************* Tipos ************************//
+	// Ruta de un código: tipo, lector precompilado, manejador y su medidor de tiempo
+	private static final class Route<T extends Message> {
+		final Class<T> type;
+		final ObjectReader reader;
+		final MessageHandler<T> handler;
+		final Histogram timer;
+		
+		Route(Class<T> type, MessageHandler<T> handler, Histogram timer) {
+			this.type = type;
+			this.reader = MessageCodec.MAPPER.readerFor(type);
+			this.handler = handler;
+			this.timer = timer;
+		}
+		
+		void handle(WebSocketSession session, String payload) throws Exception {
+			long start = System.nanoTime();
+			try {
+				T message = reader.readValue(payload);
+				handler.handle(session, message);
+			} finally {
+				timer.recordNanos(System.nanoTime() - start);
+			}
+		}
+		
+		void handle(WebSocketSession session, Message message) throws Exception {
+			long start = System.nanoTime();
+			try {
+				handler.handle(session, type.cast(message));
+			} finally {
+				timer.recordNanos(System.nanoTime() - start);
+			}
+		}
+	}
+	
+	//******************* Variables específicas ************************//
+	// Punto de conexión al que pertenece la tabla (etiqueta de las métricas)
+	private String endpoint;
+	// Rutas por código de mensaje
+	private Map<String, Route<?>> routes = new HashMap<>();
+	// Mensajes con un código no registrado
+	private LongAdder unknown;
+	
+	//******************* Constructor ************************//
+	/**
+	 * @param endpoint -> Ruta del punto de conexión (p. ej. "/chat")
+	 */
+	public MessageDispatcher(String endpoint) {
+		this.endpoint = endpoint;
+		this.unknown = Metrics.counter("origins_messages_unknown_total", 
+				"Mensajes recibidos con un código no registrado", "endpoint", endpoint);
+	}
+	
+	//******************* Métodos ************************//
+	/**
+	 * Método para registrar el manejador de un código de mensaje
+	 * @param code -> Código del mensaje
+	 * @param type -> Tipo en el que se deserializa
+	 * @param handler -> Manejador del mensaje
+	 * @return La propia tabla (para encadenar registros)
+	 */
+	public <T extends Message> MessageDispatcher on(String code, Class<T> type, MessageHandler<T> handler) {
+		Histogram timer = Metrics.timer("origins_message_handle_seconds", 
+				"Tiempo de manejo de un mensaje por código", "endpoint", endpoint, "code", code);
+		routes.put(code, new Route<>(type, handler, timer));
+		return this;
+	}
+	
+	/**
+	 * Método para despachar un mensaje JSON
+	 * @param session -> Sesión del cliente
+	 * @param payload -> Mensaje JSON recibido
+	 * @return Falso si el código no está registrado
+	 * @throws Exception
+	 */
+	public boolean dispatch(WebSocketSession session, String payload) throws Exception {
+		// Obtención del código (streaming) y de su ruta
+		Route<?> route = routes.get(MessageCodec.readCode(payload));
+		if(route == null) {
+			unknown.increment();
+			return false;
+		}
+		
+		route.handle(session, payload);
+		return true;
+	}
+	
+	/**
+	 * Método para despachar un mensaje ya decodificado (p. ej. desde el protocolo binario)
+	 * @param session -> Sesión del cliente
+	 * @param message -> Mensaje decodificado
+	 * @return Falso si el código no está registrado o el tipo no coincide
+	 * @throws Exception
+	 */
+	public boolean dispatch(WebSocketSession session, Message message) throws Exception {
+		Route<?> route = message != null ? routes.get(message.code) : null;
+		if(route == null || !route.type.isInstance(message)) {
+			unknown.increment();
+			return false;
+		}
+		
+		route.handle(session, message);
+		return true;
+	}
+}
@@ -0,0 +1,19 @@
+package es.armoonys.origins.codec;
+
+import org.springframework.web.socket.WebSocketSession;
+
+/**
+ * Manejador de un tipo de mensaje ya decodificado
+ * @param <T> Tipo del mensaje
+ */
+@FunctionalInterface
+public interface MessageHandler<T extends Message> {
+	
+	/**
+	 * Método para gestionar un mensaje recibido
+	 * @param session -> Sesión del cliente que mandó el mensaje
+	 * @param message -> Mensaje decodificado
+	 * @throws Exception
+	 */
+	void handle(WebSocketSession session, T message) throws Exception;
+}
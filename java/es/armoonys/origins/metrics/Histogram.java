@@ -0,0 +1,102 @@
+package es.armoonys.origins.metrics;
+
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histograma acumulativo con cubos fijos (formato Prometheus). Se usa tanto para tiempos
+ * (en segundos) como para tamaños (p. ej. número de destinatarios de una difusión).
+ * Registrar un valor no reserva memoria ni toma cerrojos: solo suma en contadores repartidos.
+ */
+public final class Histogram {
+	//******************* Variables genéricas ************************//
+	// Límites de los cubos de tiempo en segundos (100 µs - 5 s)
+	static final double[] TIME_BUCKETS = {0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5};
+	// Límites de los cubos de tamaño (1 - 10000)
+	static final double[] SIZE_BUCKETS = {1, 2, 4, 8, 16, 32, 64, 128, 256, 512, 1024, 2048, 4096, 10000};
+
+	//******************* Variables específicas ************************//
+	// Límites superiores de cada cubo
+	private final double[] bounds;
+	// Observaciones por cubo (no acumuladas; se acumulan al exportar)
+	private final LongAdder[] buckets;
+	// Totales //
+	private final LongAdder count = new LongAdder();
+	private final DoubleAdder sum = new DoubleAdder();
+	private final LongAccumulator maxBits = new LongAccumulator(Math::max, Double.doubleToLongBits(0));
+
+	//******************* Constructor ************************//
+	Histogram(double[] bounds) {
+		this.bounds = bounds;
+		this.buckets = new LongAdder[bounds.length];
+		for(int i = 0; i < bounds.length; i++) {
+			buckets[i] = new LongAdder();
+		}
+	}
+
+	//******************* Métodos ************************//
+	/**
+	 * Método para registrar una duración
+	 * @param nanos -> Duración en nanosegundos (se exporta en segundos)
+	 */
+	public void recordNanos(long nanos) {
+		observe(nanos / 1e9);
+	}
+
+	/**
+	 * Método para registrar un valor
+	 * @param value -> Valor observado (no negativo)
+	 */
+	public void observe(double value) {
+		// Búsqueda del primer cubo que lo admite (los valores mayores solo cuentan en +Inf)
+		for(int i = 0; i < bounds.length; i++) {
+			if(value <= bounds[i]) {
+				buckets[i].increment();
+				break;
+			}
+		}
+		count.increment();
+		sum.add(value);
+		// Los bits de un double no negativo conservan el orden, así que basta con un máximo entero
+		maxBits.accumulate(Double.doubleToLongBits(value));
+	}
+
+	// Getters //
+	public long getCount() {
+		return count.sum();
+	}
+
+	public double getSum() {
+		return sum.sum();
+	}
+
+	public double getMax() {
+		return Double.longBitsToDouble(maxBits.get());
+	}
+
+	// Otros //
+	/**
+	 * Método para escribir el histograma en formato de texto de Prometheus
+	 * (el máximo no forma parte del formato y se exporta aparte como indicador)
+	 * @param out -> Destino
+	 * @param name -> Nombre de la métrica
+	 * @param labels -> Etiquetas ya formateadas (sin llaves), o cadena vacía
+	 */
+	void writeTo(StringBuilder out, String name, String labels) {
+		String sep = labels.isEmpty() ? "" : ",";
+		long cumulative = 0;
+		for(int i = 0; i < bounds.length; i++) {
+			cumulative += buckets[i].sum();
+			out.append(name).append("_bucket{").append(labels).append(sep)
+				.append("le=\"").append(bounds[i]).append("\"} ").append(cumulative).append('\n');
+		}
+
+		// El total se lee una sola vez para que +Inf y _count coincidan
+		long total = Math.max(count.sum(), cumulative);
+		String braces = labels.isEmpty() ? "" : "{" + labels + "}";
+		out.append(name).append("_bucket{").append(labels).append(sep).append("le=\"+Inf\"} ").append(total).append('\n');
+		out.append(name).append("_count").append(braces).append(' ').append(total).append('\n');
+		out.append(name).append("_sum").append(braces).append(' ').append(sum.sum()).append('\n');
+	}
+}
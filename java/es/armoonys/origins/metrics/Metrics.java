@@ -0,0 +1,205 @@
+package es.armoonys.origins.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Registro global de métricas del servidor. Las métricas se crean una vez (normalmente al
+ * construir el servicio que las usa) y se guardan en campos, de modo que registrar un valor
+ * en el camino caliente no implica búsquedas ni reservas de memoria.
+ * El contenido se exporta en formato de texto de Prometheus desde {@link MetricsEndpoint}.
+ */
+public final class Metrics {
+	//******************* Tipos ************************//
+	// Familia de métricas: mismo nombre y tipo, distintas etiquetas
+	private static final class Family {
+		final String type;
+		final String help;
+		final Map<String, Object> series = new ConcurrentSkipListMap<>();
+
+		Family(String type, String help) {
+			this.type = type;
+			this.help = help;
+		}
+	}
+
+	//******************* Variables específicas ************************//
+	// Familias por nombre (ordenadas para que la salida sea estable)
+	private static final Map<String, Family> FAMILIES = new ConcurrentSkipListMap<>();
+
+	//******************* Constructor ************************//
+	private Metrics() {
+	}
+
+	//******************* Métodos ************************//
+	/**
+	 * Método para obtener (o crear) un histograma de duraciones en segundos
+	 * @param name -> Nombre de la métrica
+	 * @param help -> Descripción
+	 * @param labels -> Pares nombre/valor de las etiquetas
+	 * @return Histograma de la serie
+	 */
+	public static Histogram timer(String name, String help, String... labels) {
+		return series(name, "histogram", help, labels, key -> new Histogram(Histogram.TIME_BUCKETS));
+	}
+
+	/**
+	 * Método para obtener (o crear) un histograma de tamaños
+	 * @param name -> Nombre de la métrica
+	 * @param help -> Descripción
+	 * @param labels -> Pares nombre/valor de las etiquetas
+	 * @return Histograma de la serie
+	 */
+	public static Histogram sizes(String name, String help, String... labels) {
+		return series(name, "histogram", help, labels, key -> new Histogram(Histogram.SIZE_BUCKETS));
+	}
+
+	/**
+	 * Método para obtener (o crear) un contador
+	 * @param name -> Nombre de la métrica (terminado en _total)
+	 * @param help -> Descripción
+	 * @param labels -> Pares nombre/valor de las etiquetas
+	 * @return Contador de la serie
+	 */
+	public static LongAdder counter(String name, String help, String... labels) {
+		return series(name, "counter", help, labels, key -> new LongAdder());
+	}
+
+	/**
+	 * Método para registrar un contador mantenido por otro componente, que se lee en cada exportación
+	 * @param name -> Nombre de la métrica (terminado en _total)
+	 * @param help -> Descripción
+	 * @param value -> Origen del valor
+	 * @param labels -> Pares nombre/valor de las etiquetas
+	 */
+	public static void counter(String name, String help, Supplier<? extends Number> value, String... labels) {
+		family(name, "counter", help).series.put(formatLabels(labels), value);
+	}
+	
+	/**
+	 * Método para registrar un indicador que se lee en cada exportación
+	 * (si ya existía la serie, se sustituye su origen)
+	 * @param name -> Nombre de la métrica
+	 * @param help -> Descripción
+	 * @param value -> Origen del valor
+	 * @param labels -> Pares nombre/valor de las etiquetas
+	 */
+	public static void gauge(String name, String help, Supplier<? extends Number> value, String... labels) {
+		family(name, "gauge", help).series.put(formatLabels(labels), value);
+	}
+
+	/**
+	 * Método para exportar todas las métricas en formato de texto de Prometheus
+	 * @return Texto de exportación
+	 */
+	public static String scrape() {
+		StringBuilder out = new StringBuilder(4096);
+
+		for(Map.Entry<String, Family> entry : FAMILIES.entrySet()) {
+			String name = entry.getKey();
+			Family family = entry.getValue();
+			header(out, name, family.type, family.help);
+
+			for(Map.Entry<String, Object> series : family.series.entrySet()) {
+				String labels = series.getKey();
+				Object metric = series.getValue();
+
+				if(metric instanceof Histogram) {
+					((Histogram) metric).writeTo(out, name, labels);
+				} else if(metric instanceof LongAdder) {
+					sample(out, name, labels, ((LongAdder) metric).sum());
+				} else {
+					sample(out, name, labels, read((Supplier<?>) metric));
+				}
+			}
+
+			// Máximo de los histogramas como indicador aparte
+			if(family.type.equals("histogram")) {
+				header(out, name + "_max", "gauge", "Máximo observado de " + name);
+				for(Map.Entry<String, Object> series : family.series.entrySet()) {
+					sample(out, name + "_max", series.getKey(), ((Histogram) series.getValue()).getMax());
+				}
+			}
+		}
+		return out.toString();
+	}
+
+	// Otros //
+	/**
+	 * Método para obtener (o crear) una serie de una familia
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T> T series(String name, String type, String help, String[] labels, Function<String, T> factory) {
+		return (T) family(name, type, help).series.computeIfAbsent(formatLabels(labels), factory);
+	}
+
+	/**
+	 * Método para obtener (o crear) una familia comprobando que no cambia de tipo
+	 */
+	private static Family family(String name, String type, String help) {
+		Family family = FAMILIES.computeIfAbsent(name, key -> new Family(type, help));
+		if(!family.type.equals(type)) {
+			throw new IllegalArgumentException("La métrica " + name + " ya está registrada como " + family.type);
+		}
+		return family;
+	}
+
+	/**
+	 * Método para formatear las etiquetas como nombre="valor",...
+	 */
+	private static String formatLabels(String[] labels) {
+		if(labels.length % 2 != 0) {
+			throw new IllegalArgumentException("Las etiquetas deben ir en pares nombre/valor");
+		}
+
+		StringBuilder out = new StringBuilder();
+		for(int i = 0; i < labels.length; i += 2) {
+			if(i > 0) {
+				out.append(',');
+			}
+			out.append(labels[i]).append("=\"");
+			// Escapado de los caracteres reservados del formato
+			String value = labels[i + 1];
+			for(int c = 0; c < value.length(); c++) {
+				char ch = value.charAt(c);
+				if(ch == '\\' || ch == '"') {
+					out.append('\\').append(ch);
+				} else if(ch == '\n') {
+					out.append("\\n");
+				} else {
+					out.append(ch);
+				}
+			}
+			out.append('"');
+		}
+		return out.toString();
+	}
+
+	/**
+	 * Método para leer un indicador sin que un fallo interrumpa la exportación
+	 */
+	private static double read(Supplier<?> gauge) {
+		try {
+			Object value = gauge.get();
+			return value instanceof Number ? ((Number) value).doubleValue() : Double.NaN;
+		} catch(RuntimeException e) {
+			return Double.NaN;
+		}
+	}
+
+	private static void header(StringBuilder out, String name, String type, String help) {
+		out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+	}
+
+	private static void sample(StringBuilder out, String name, String labels, double value) {
+		out.append(name);
+		if(!labels.isEmpty()) {
+			out.append('{').append(labels).append('}');
+		}
+		out.append(' ').append(value).append('\n');
+	}
+}
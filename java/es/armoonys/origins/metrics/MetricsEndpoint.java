@@ -0,0 +1,24 @@
+package es.armoonys.origins.metrics;
+
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Punto de exportación de métricas en formato de texto de Prometheus (GET /metrics).
+ */
+@RestController
+public class MetricsEndpoint {
+	//******************* Variables genéricas ************************//
+	// Tipo de contenido del formato de texto de Prometheus
+	private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+	//******************* Métodos ************************//
+	/**
+	 * Método para exportar las métricas actuales
+	 * @return Texto de exportación
+	 */
+	@GetMapping(value = "/metrics", produces = CONTENT_TYPE)
+	public String scrape() {
+		return Metrics.scrape();
+	}
+}
@@ -0,0 +1,134 @@
+package es.armoonys.origins.net;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import es.armoonys.origins.metrics.Histogram;
+import es.armoonys.origins.metrics.Metrics;
+
+/**
+ * Utilidad de difusión de mensajes. El mensaje se serializa una sola vez y se envía
+ * la misma trama (inmutable) a todos los destinatarios.
+ */
+public final class Broadcaster {
+	//******************* Variables genéricas ************************//
+	private static final Logger log = LoggerFactory.getLogger(Broadcaster.class);
+	// Métricas de difusión //
+	private static final Histogram FANOUT = Metrics.sizes("origins_broadcast_recipients", 
+			"Destinatarios efectivos de cada difusión");
+	private static final Histogram DURATION = Metrics.timer("origins_broadcast_seconds", 
+			"Tiempo de envío de una difusión a todos sus destinatarios");
+	private static final LongAdder FAILED = Metrics.counter("origins_send_failures_total", 
+			"Envíos fallidos a una sesión");
+	
+	//******************* Constructor ************************//
+	private Broadcaster() {
+	}
+	
+	//******************* Métodos ************************//
+	/**
+	 * Método para enviar un nodo JSON a todas las sesiones
+	 * @param targets -> Sesiones destinatarias
+	 * @param node -> Nodo de información a enviar
+	 */
+	public static void broadcast(Collection<WebSocketSession> targets, ObjectNode node) {
+		broadcast(targets, new TextMessage(node.toString()), null);
+	}
+	
+	/**
+	 * Método para enviar un nodo JSON a todas las sesiones salvo a una
+	 * @param targets -> Sesiones destinatarias
+	 * @param node -> Nodo de información a enviar
+	 * @param exclude -> Sesión que no recibe el mensaje (normalmente la que lo mandó), o null
+	 */
+	public static void broadcast(Collection<WebSocketSession> targets, ObjectNode node, WebSocketSession exclude) {
+		broadcast(targets, new TextMessage(node.toString()), exclude);
+	}
+	
+	/**
+	 * Método para enviar una trama multiformato a todas las sesiones salvo a una
+	 * (cada sesión la recibe en el formato que negoció)
+	 * @param targets -> Sesiones destinatarias
+	 * @param frame -> Trama a enviar
+	 * @param exclude -> Sesión que no recibe el mensaje, o null
+	 */
+	public static void broadcast(Collection<WebSocketSession> targets, Frame frame, WebSocketSession exclude) {
+		String excludeId = exclude != null ? exclude.getId() : null;
+		long start = System.nanoTime();
+		int recipients = 0;
+		
+		for(WebSocketSession participant : targets) {
+			// Si es el que mandó el mensaje o la sesión ya se cerró
+			if(participant.getId().equals(excludeId) || !participant.isOpen()) {
+				continue;
+			}
+			send(participant, frame.forSession(participant));
+			recipients++;
+		}
+		record(recipients, start);
+	}
+	
+	/**
+	 * Método para enviar una trama ya codificada a todas las sesiones salvo a una
+	 * @param targets -> Sesiones destinatarias
+	 * @param frame -> Trama a enviar
+	 * @param exclude -> Sesión que no recibe el mensaje, o null
+	 */
+	public static void broadcast(Collection<WebSocketSession> targets, WebSocketMessage<?> frame, WebSocketSession exclude) {
+		String excludeId = exclude != null ? exclude.getId() : null;
+		long start = System.nanoTime();
+		int recipients = 0;
+		
+		// Obtención de cada una de las sesiones destinatarias
+		for(WebSocketSession participant : targets) {
+			// Si es el que mandó el mensaje o la sesión ya se cerró
+			if(participant.getId().equals(excludeId) || !participant.isOpen()) {
+				continue;
+			}
+			
+			send(participant, frame);
+			recipients++;
+		}
+		record(recipients, start);
+	}
+	
+	/**
+	 * Método para enviar un mensaje a una sesión sin detener la difusión si falla
+	 * @param participant -> Sesión destinataria
+	 * @param message -> Mensaje a enviar
+	 */
+	public static void send(WebSocketSession participant, WebSocketMessage<?> message) {
+		// Solo la cola de salida sabe descartar los mensajes sustituibles; el resto recibe el texto
+		if(!(participant instanceof OutboundSession)) {
+			message = SupersedableMessage.unwrap(message);
+		}
+		
+		// Envío del mensaje (un fallo en un destinatario no detiene al resto)
+		try {
+			participant.sendMessage(message);
+		} catch(IOException | IllegalStateException e) {
+			FAILED.increment();
+			log.warn("Error al enviar a la sesión {}: {}", participant.getId(), e.getMessage());
+		}
+	}
+	
+	/**
+	 * Método para registrar el coste de una difusión
+	 * @param recipients -> Número de destinatarios que recibieron el mensaje
+	 * @param start -> Instante de inicio (System.nanoTime)
+	 */
+	private static void record(int recipients, long start) {
+		DURATION.recordNanos(System.nanoTime() - start);
+		FANOUT.observe(recipients);
+	}
+}
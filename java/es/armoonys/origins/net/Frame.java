@@ -0,0 +1,18 @@
+package es.armoonys.origins.net;
+
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+/**
+ * Trama que puede codificarse en varios formatos (texto o binario).
+ * Cada formato se codifica una sola vez y se reutiliza para todos los destinatarios que lo usen.
+ */
+public interface Frame {
+	
+	/**
+	 * Método para obtener la trama en el formato negociado por la sesión
+	 * @param session -> Sesión destinataria
+	 * @return Mensaje a enviar a la sesión
+	 */
+	WebSocketMessage<?> forSession(WebSocketSession session);
+}
@@ -0,0 +1,151 @@
+package es.armoonys.origins.net;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PingMessage;
+import org.springframework.web.socket.PongMessage;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+
+import es.armoonys.origins.metrics.Metrics;
+import es.armoonys.origins.sched.TimingWheel;
+
+/**
+ * Decorador de manejadores que comprueba que siguen vivos los clientes que pasan demasiado
+ * tiempo sin enviar nada: se les envía un ping y solo se cierra la sesión si no responden
+ * (ni con el pong ni con otro mensaje) en el plazo de respuesta. Un cliente callado pero vivo
+ * (p. ej. esperando en una sala) nunca se cierra.
+ * Cada mensaje solo apunta el instante de la última actividad; el plazo de la rueda no se
+ * reprograma por mensaje, sino que al vencer comprueba la actividad y, si la hubo, se vuelve
+ * a planificar por el tiempo que falta.
+ */
+public class IdleHandlerDecorator extends WebSocketHandlerDecorator {
+	//******************* Variables genéricas ************************//
+	private static final Logger log = LoggerFactory.getLogger(IdleHandlerDecorator.class);
+	// Estado de cierre enviado al cliente inactivo
+	private static final CloseStatus IDLE = CloseStatus.GOING_AWAY.withReason("idle");
+
+	//******************* Tipos ************************//
+	// Actividad de una sesión
+	private final class SessionIdle implements Runnable {
+		final WebSocketSession session;
+		volatile long lastActive = System.nanoTime();
+		volatile TimingWheel.Timeout timeout;
+		boolean pinging = false;			// ¿Se espera respuesta a un ping? (solo en el hilo de la rueda)
+
+		SessionIdle(WebSocketSession session) {
+			this.session = session;
+		}
+
+		// Vencimiento del plazo (en el hilo de la rueda)
+		@Override
+		public void run() {
+			if(sessions.get(session.getId()) != this) {
+				return;
+			}
+
+			// Si hubo actividad (también la respuesta al ping), se vuelve a planificar por el tiempo que falta
+			long idle = System.nanoTime() - lastActive;
+			if(idle < idleNanos) {
+				pinging = false;
+				timeout = timeouts.newTimeout(this, TimeUnit.NANOSECONDS.toMillis(idleNanos - idle) + 1);
+				return;
+			}
+			
+			// Sin actividad: se comprueba con un ping si el cliente sigue ahí
+			if(!pinging) {
+				pinging = true;
+				try {
+					session.sendMessage(new PingMessage());
+					pings.increment();
+					timeout = timeouts.newTimeout(this, pongTimeoutMs);
+					return;
+				} catch(IOException | IllegalStateException e) {
+					log.debug("Error al enviar el ping a la sesión {}: {}", session.getId(), e.getMessage());
+				}
+			}
+			
+			// Sin respuesta al ping: la conexión está muerta
+			reaped.increment();
+			log.debug("Sesión {} de {} cerrada por no responder al ping", session.getId(), endpoint);
+			try {
+				session.close(IDLE);
+			} catch(IOException e) {
+				log.debug("Error al cerrar la sesión inactiva {}: {}", session.getId(), e.getMessage());
+			}
+		}
+	}
+	
+	//******************* Variables específicas ************************//
+	// Rueda de los plazos
+	private TimingWheel timeouts;
+	// Ruta del punto de conexión
+	private String endpoint;
+	// Inactividad máxima antes del ping
+	private long idleMs;
+	private long idleNanos;
+	// Espera máxima de la respuesta al ping
+	private long pongTimeoutMs;
+	// Actividad de cada sesión abierta
+	private Map<String, SessionIdle> sessions = new ConcurrentHashMap<>();
+	// Métricas //
+	private LongAdder reaped;
+	private LongAdder pings;
+	private LongAdder pongs;
+
+	//******************* Constructor ************************//
+	public IdleHandlerDecorator(WebSocketHandler delegate, TimingWheel timeouts, String endpoint, long idleMs, long pongTimeoutMs) {
+		super(delegate);
+		this.timeouts = timeouts;
+		this.endpoint = endpoint;
+		this.idleMs = idleMs;
+		this.idleNanos = TimeUnit.MILLISECONDS.toNanos(idleMs);
+		this.pongTimeoutMs = pongTimeoutMs;
+		this.reaped = Metrics.counter("origins_idle_closed_sessions_total",
+				"Sesiones cerradas por no responder al ping", "endpoint", endpoint);
+		this.pings = Metrics.counter("origins_idle_pings_total",
+				"Pings enviados a sesiones inactivas", "endpoint", endpoint);
+		this.pongs = Metrics.counter("origins_idle_pongs_total",
+				"Pongs recibidos de los clientes", "endpoint", endpoint);
+	}
+
+	//******************* Métodos ************************//
+	// Métodos sobrecargados //
+	@Override
+	public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+		SessionIdle idle = new SessionIdle(session);
+		sessions.put(session.getId(), idle);
+		idle.timeout = timeouts.newTimeout(idle, idleMs);
+		super.afterConnectionEstablished(session);
+	}
+
+	@Override
+	public void handleMessage(WebSocketSession session, WebSocketMessage<?> message) throws Exception {
+		SessionIdle idle = sessions.get(session.getId());
+		if(idle != null) {
+			idle.lastActive = System.nanoTime();
+		}
+		if(message instanceof PongMessage) {
+			pongs.increment();
+		}
+		super.handleMessage(session, message);
+	}
+
+	@Override
+	public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+		SessionIdle idle = sessions.remove(session.getId());
+		if(idle != null) {
+			idle.timeout.cancel();
+		}
+		super.afterConnectionClosed(session, closeStatus);
+	}
+}
@@ -0,0 +1,61 @@
+package es.armoonys.origins.net;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.web.socket.WebSocketHandler;
+
+import es.armoonys.origins.sched.TimingWheel;
+
+/**
+ * Configuración del cierre de sesiones muertas de todos los puntos de conexión:
+ *  - Tiempo sin recibir nada del cliente tras el que se le envía un ping (origins.timeouts.idle-ms)
+ *  - Tiempo propio de algunos puntos de conexión (origins.timeouts.idle, con el formato ruta:ms)
+ *  - Espera de la respuesta al ping antes de cerrar la sesión (origins.timeouts.pong-ms)
+ * Cualquier mensaje recibido (también los pong) cuenta como actividad.
+ */
+public class IdleSessionReaper implements InitializingBean {
+	//******************* Variables específicas ************************//
+	// Configuración //
+	@Value("${origins.timeouts.idle-ms:300000}")
+	private long idleMs = 300000;					// Inactividad máxima si no se indica (0 = sin límite)
+	@Value("${origins.timeouts.pong-ms:10000}")
+	private long pongMs = 10000;					// Espera máxima de la respuesta al ping
+	@Value("${origins.timeouts.idle:}")
+	private String idleSpec = "";
+	// Inactividad máxima por punto de conexión
+	private Map<String, Long> idle = new HashMap<>();
+	// Rueda de los plazos de inactividad
+	private TimingWheel timeouts;
+
+	//******************* Constructor ************************//
+	public IdleSessionReaper(TimingWheel timeouts) {
+		this.timeouts = timeouts;
+	}
+
+	//******************* Métodos ************************//
+	// Métodos de ciclo de vida //
+	@Override
+	public void afterPropertiesSet() {
+		for(String[] parts : RateLimiter.entries(idleSpec, 2)) {
+			idle.put(parts[0], Long.parseLong(parts[1]));
+		}
+	}
+
+	// Métodos de decoración //
+	/**
+	 * Método para envolver el manejador de un punto de conexión con el ping a los clientes inactivos
+	 * @param handler -> Manejador del servicio
+	 * @param endpoint -> Ruta del punto de conexión
+	 * @return Manejador decorado (o el mismo si el punto de conexión no tiene límite)
+	 */
+	public WebSocketHandler decorate(WebSocketHandler handler, String endpoint) {
+		long ms = idle.getOrDefault(endpoint, idleMs);
+		if(ms <= 0) {
+			return handler;
+		}
+		return new IdleHandlerDecorator(handler, timeouts, endpoint, ms, pongMs);
+	}
+}
@@ -0,0 +1,68 @@
+package es.armoonys.origins.net;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+
+/**
+ * Decorador de manejadores que entrega al servicio la sesión con cola de salida
+ * en lugar de la sesión real, en todas las llamadas.
+ */
+public class OutboundHandlerDecorator extends WebSocketHandlerDecorator {
+	//******************* Variables específicas ************************//
+	// Sesiones con cola de salida del manejador
+	private Map<String, OutboundSession> sessions = new ConcurrentHashMap<>();
+	// Gestor de colas de salida
+	private OutboundQueueManager manager;
+	
+	//******************* Constructor ************************//
+	public OutboundHandlerDecorator(WebSocketHandler delegate, OutboundQueueManager manager) {
+		super(delegate);
+		this.manager = manager;
+	}
+	
+	//******************* Métodos ************************//
+	// Métodos sobrecargados //
+	@Override
+	public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+		OutboundSession outbound = manager.open(session);
+		sessions.put(session.getId(), outbound);
+		super.afterConnectionEstablished(outbound);
+	}
+	
+	@Override
+	public void handleMessage(WebSocketSession session, WebSocketMessage<?> message) throws Exception {
+		super.handleMessage(wrap(session), message);
+	}
+	
+	@Override
+	public void handleTransportError(WebSocketSession session, Throwable exception) throws Exception {
+		super.handleTransportError(wrap(session), exception);
+	}
+	
+	@Override
+	public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+		try {
+			super.afterConnectionClosed(wrap(session), closeStatus);
+		} finally {
+			sessions.remove(session.getId());
+			manager.close(session);
+		}
+	}
+	
+	// Otros //
+	/**
+	 * Método para obtener la sesión con cola de salida de una sesión real
+	 * @param session -> Sesión real
+	 * @return Sesión con cola de salida (o la real si no se registró)
+	 */
+	private WebSocketSession wrap(WebSocketSession session) {
+		OutboundSession outbound = sessions.get(session.getId());
+		return outbound != null ? outbound : session;
+	}
+}
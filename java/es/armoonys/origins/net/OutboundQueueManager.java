@@ -0,0 +1,214 @@
+package es.armoonys.origins.net;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+
+import es.armoonys.origins.sched.TimingWheel;
+
+/**
+ * Gestor de las colas de salida de todas las sesiones: configuración de límites,
+ * hilos de escritura, vigilancia del tiempo de envío y estadísticas de profundidad de las colas.
+ */
+public class OutboundQueueManager implements InitializingBean, DisposableBean {
+	//******************* Tipos ************************//
+	// Política a aplicar cuando la cola de un cliente se llena
+	public enum OverflowPolicy {
+		DROP_SUPERSEDED,	// Descartar los mensajes que otro posterior sustituye (si no basta, cerrar)
+		TERMINATE			// Cerrar la sesión del cliente lento
+	}
+	
+	//******************* Variables específicas ************************//
+	// Configuración //
+	@Value("${origins.outbound.buffer-size-limit:65536}")
+	private long bufferSizeLimit = 65536;						// Bytes máximos en cola por sesión
+	@Value("${origins.outbound.send-time-limit-ms:5000}")
+	private long sendTimeLimitMs = 5000;						// Tiempo máximo de un envío
+	@Value("${origins.outbound.overflow:DROP_SUPERSEDED}")
+	private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_SUPERSEDED;
+	@Value("${origins.outbound.threads:0}")
+	private int threads = 0;									// Hilos de escritura (0 = dos por núcleo)
+	// Hilos de escritura
+	private ExecutorService writers;
+	// Hilo que cierra las sesiones atascadas (el cierre puede bloquearse igual que el envío)
+	private ExecutorService closers;
+	// Vigilante del tiempo de envío //
+	private TimingWheel timeouts;
+	private AtomicBoolean watching = new AtomicBoolean();	// ¿Está planificada la revisión?
+	private volatile boolean stopped = false;
+	// Sesiones con cola de salida
+	private Map<String, OutboundSession> sessions = new ConcurrentHashMap<>();
+	// Estadísticas //
+	private AtomicInteger maxDepth = new AtomicInteger();		// Profundidad máxima observada
+	private AtomicLong dropped = new AtomicLong();				// Mensajes descartados
+	private AtomicLong terminated = new AtomicLong();			// Sesiones cerradas por lentas
+	
+	//******************* Constructor ************************//
+	public OutboundQueueManager(TimingWheel timeouts) {
+		this.timeouts = timeouts;
+	}
+	
+	//******************* Métodos ************************//
+	// Métodos de ciclo de vida //
+	@Override
+	public void afterPropertiesSet() {
+		int size = threads > 0 ? threads : 2 * Runtime.getRuntime().availableProcessors();
+		AtomicInteger count = new AtomicInteger();
+		
+		writers = Executors.newFixedThreadPool(size, r -> {
+			Thread t = new Thread(r, "origins-out-" + count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+		closers = Executors.newCachedThreadPool(r -> {
+			Thread t = new Thread(r, "origins-out-closer");
+			t.setDaemon(true);
+			return t;
+		});
+	}
+	
+	@Override
+	public void destroy() {
+		stopped = true;
+		writers.shutdownNow();
+		closers.shutdownNow();
+	}
+	
+	// Métodos de sesiones //
+	/**
+	 * Método para envolver un manejador de forma que todas sus sesiones usen cola de salida
+	 * @param handler -> Manejador del servicio
+	 * @return Manejador decorado
+	 */
+	public WebSocketHandler decorate(WebSocketHandler handler) {
+		return new OutboundHandlerDecorator(handler, this);
+	}
+	
+	/**
+	 * Método para crear la cola de salida de una sesión nueva
+	 * @param session -> Sesión real del cliente
+	 * @return Sesión con cola de salida
+	 */
+	OutboundSession open(WebSocketSession session) {
+		OutboundSession outbound = new OutboundSession(session, this, writers);
+		sessions.put(session.getId(), outbound);
+		
+		// El vigilante se planifica con la primera sesión (la rueda ya está en marcha)
+		if(watching.compareAndSet(false, true)) {
+			timeouts.newTimeout(this::checkSendTimes, getCheckPeriodMs());
+		}
+		return outbound;
+	}
+	
+	/**
+	 * Método para descartar la cola de salida de una sesión cerrada
+	 * @param session -> Sesión cerrada
+	 */
+	void close(WebSocketSession session) {
+		OutboundSession outbound = sessions.remove(session.getId());
+		if(outbound != null) {
+			outbound.discard();
+		}
+	}
+	
+	/**
+	 * Método del vigilante (en el hilo de la rueda): cierra las sesiones cuyo envío en curso
+	 * supera el tiempo máximo, para que un cliente que no lee no retenga un hilo de escritura.
+	 * El cierre se hace en otro hilo y, al cerrarse la conexión, el envío bloqueado falla.
+	 */
+	private void checkSendTimes() {
+		long now = System.nanoTime();
+		long limitNanos = TimeUnit.MILLISECONDS.toNanos(sendTimeLimitMs);
+		for(OutboundSession outbound : sessions.values()) {
+			if(outbound.isStuck(now, limitNanos)) {
+				closers.execute(() -> outbound.terminate("tiempo de envío superado"));
+			}
+		}
+		
+		if(!stopped) {
+			timeouts.newTimeout(this::checkSendTimes, getCheckPeriodMs());
+		}
+	}
+	
+	// Periodo de revisión: un envío atascado se detecta como mucho un 50 % después del límite
+	private long getCheckPeriodMs() {
+		return Math.max(100, sendTimeLimitMs / 2);
+	}
+	
+	// Métodos de estadísticas //
+	void recordDepth(int depth) {
+		maxDepth.accumulateAndGet(depth, Math::max);
+	}
+	
+	void recordDropped() {
+		dropped.incrementAndGet();
+	}
+	
+	void recordTerminated() {
+		terminated.incrementAndGet();
+	}
+	
+	/**
+	 * Método para obtener el total de mensajes en las colas de salida
+	 * @return Mensajes pendientes de envío en todas las sesiones
+	 */
+	public long getQueuedMessages() {
+		long total = 0;
+		for(OutboundSession outbound : sessions.values()) {
+			total += outbound.getQueueDepth();
+		}
+		return total;
+	}
+	
+	/**
+	 * Método para obtener el total de bytes en las colas de salida
+	 * @return Bytes pendientes de envío en todas las sesiones
+	 */
+	public long getQueuedBytes() {
+		long total = 0;
+		for(OutboundSession outbound : sessions.values()) {
+			total += outbound.getQueuedBytes();
+		}
+		return total;
+	}
+	
+	// Getters //
+	public int getMaxQueueDepth() {
+		return maxDepth.get();
+	}
+	
+	public long getDroppedMessages() {
+		return dropped.get();
+	}
+	
+	public long getTerminatedSessions() {
+		return terminated.get();
+	}
+	
+	public int getOpenSessions() {
+		return sessions.size();
+	}
+	
+	long getBufferSizeLimit() {
+		return bufferSizeLimit;
+	}
+	
+	long getSendTimeLimitMs() {
+		return sendTimeLimitMs;
+	}
+	
+	OverflowPolicy getOverflowPolicy() {
+		return overflowPolicy;
+	}
+}
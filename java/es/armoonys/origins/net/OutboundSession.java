@@ -0,0 +1,259 @@
+package es.armoonys.origins.net;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import es.armoonys.origins.net.OutboundQueueManager.OverflowPolicy;
+
+/**
+ * Sesión con cola de salida asíncrona y acotada. sendMessage solo encola el mensaje;
+ * el envío real lo hace un hilo de escritura, por lo que un cliente lento nunca bloquea
+ * al hilo que difunde el mensaje al resto.
+ * Si la cola se llena, solo se descartan los mensajes que otro posterior de la cola sustituye
+ * (SupersedableMessage con la misma clave); si no basta, se cierra la sesión, porque perder un
+ * mensaje de control desincronizaría al cliente (que puede reanudar la partida al reconectar).
+ */
+public class OutboundSession extends WebSocketSessionDecorator {
+	//******************* Variables genéricas ************************//
+	private static final Logger log = LoggerFactory.getLogger(OutboundSession.class);
+	
+	//******************* Variables específicas ************************//
+	// Cola de mensajes pendientes de envío
+	private Queue<WebSocketMessage<?>> queue = new ConcurrentLinkedQueue<>();
+	private AtomicInteger depth = new AtomicInteger();		// Mensajes en cola
+	private AtomicLong bytes = new AtomicLong();			// Bytes en cola
+	// Estado del envío //
+	private AtomicBoolean scheduled = new AtomicBoolean();	// ¿Hay un vaciado de la cola planificado?
+	private volatile long sendStart = 0;					// Inicio (nanoTime) del envío en curso, 0 si no hay
+	private volatile CloseStatus pendingClose;				// Cierre solicitado tras vaciar la cola
+	private AtomicBoolean closed = new AtomicBoolean();		// ¿La sesión ya se cerró?
+	// Configuración //
+	private OutboundQueueManager manager;
+	private Executor writers;
+	
+	//******************* Constructor ************************//
+	OutboundSession(WebSocketSession delegate, OutboundQueueManager manager, Executor writers) {
+		super(delegate);
+		this.manager = manager;
+		this.writers = writers;
+	}
+	
+	//******************* Métodos ************************//
+	// Métodos sobrecargados //
+	/**
+	 * Método para encolar un mensaje (no bloqueante)
+	 * @param message -> Mensaje a enviar
+	 */
+	@Override
+	public void sendMessage(WebSocketMessage<?> message) throws IOException {
+		// Si la sesión se está cerrando, se descarta
+		if(closed.get() || pendingClose != null) {
+			return;
+		}
+		
+		// Inserción en la cola
+		queue.offer(message);
+		depth.incrementAndGet();
+		bytes.addAndGet(message.getPayloadLength());
+		manager.recordDepth(depth.get());
+		
+		// Comprobación de límites y planificación del envío
+		if(checkLimits()) {
+			schedule();
+		}
+	}
+	
+	/**
+	 * Método para cerrar la sesión una vez enviados los mensajes ya encolados
+	 * @param status -> Estado de cierre
+	 */
+	@Override
+	public void close(CloseStatus status) throws IOException {
+		pendingClose = status;
+		schedule();
+	}
+	
+	@Override
+	public void close() throws IOException {
+		close(CloseStatus.NORMAL);
+	}
+	
+	@Override
+	public boolean isOpen() {
+		return !closed.get() && pendingClose == null && super.isOpen();
+	}
+	
+	// Métodos de la cola //
+	/**
+	 * Método para comprobar los límites de tiempo de envío y tamaño de la cola
+	 * @return Falso si la sesión se cerró por superar algún límite
+	 */
+	private boolean checkLimits() {
+		// Si la cola supera el tamaño máximo
+		if(bytes.get() > manager.getBufferSizeLimit()) {
+			// Política: descartar los mensajes sustituidos por otros posteriores
+			if(manager.getOverflowPolicy() == OverflowPolicy.DROP_SUPERSEDED) {
+				dropSuperseded();
+			}
+			
+			// Si sigue llena, se cierra la sesión del cliente lento
+			if(bytes.get() > manager.getBufferSizeLimit()) {
+				terminate("cola de salida llena");
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Método para descartar de la cola, del más antiguo al más reciente, los mensajes que otro
+	 * posterior con la misma clave deja obsoletos, hasta volver por debajo del tamaño máximo
+	 */
+	private void dropSuperseded() {
+		synchronized(queue) {
+			// Último mensaje de cada clave (el que se conserva)
+			Map<String, WebSocketMessage<?>> latest = new HashMap<>();
+			for(WebSocketMessage<?> message : queue) {
+				if(message instanceof SupersedableMessage) {
+					latest.put(((SupersedableMessage) message).getKey(), message);
+				}
+			}
+			if(latest.isEmpty()) {
+				return;
+			}
+			
+			for(WebSocketMessage<?> message : queue) {
+				if(bytes.get() <= manager.getBufferSizeLimit()) {
+					return;
+				}
+				if(message instanceof SupersedableMessage
+						&& latest.get(((SupersedableMessage) message).getKey()) != message
+						&& queue.remove(message)) {
+					depth.decrementAndGet();
+					bytes.addAndGet(-message.getPayloadLength());
+					manager.recordDropped();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Método para comprobar si el envío en curso supera el tiempo máximo (lo llama el vigilante
+	 * del gestor, sin depender de que lleguen mensajes nuevos)
+	 * @param now -> Instante actual (System.nanoTime)
+	 * @param limitNanos -> Tiempo máximo de un envío
+	 * @return Verdadero si el cliente lleva demasiado tiempo sin leer
+	 */
+	boolean isStuck(long now, long limitNanos) {
+		long start = sendStart;
+		return start != 0 && !closed.get() && now - start > limitNanos;
+	}
+	
+	/**
+	 * Método para planificar el vaciado de la cola en un hilo de escritura (si no lo está ya)
+	 */
+	private void schedule() {
+		if(scheduled.compareAndSet(false, true)) {
+			writers.execute(this::drain);
+		}
+	}
+	
+	/**
+	 * Método para enviar en orden todos los mensajes de la cola
+	 */
+	private void drain() {
+		try {
+			WebSocketMessage<?> message;
+			while(!closed.get() && (message = queue.poll()) != null) {
+				depth.decrementAndGet();
+				bytes.addAndGet(-message.getPayloadLength());
+				
+				// Envío real al cliente
+				sendStart = System.nanoTime();
+				try {
+					getDelegate().sendMessage(SupersedableMessage.unwrap(message));
+				} catch(IOException | IllegalStateException e) {
+					terminate("error de envío: " + e.getMessage());
+					return;
+				} finally {
+					sendStart = 0;
+				}
+			}
+		} finally {
+			scheduled.set(false);
+			
+			// Si llegaron mensajes durante el vaciado, se vuelve a planificar
+			if(!queue.isEmpty() && !closed.get()) {
+				schedule();
+			} else if(pendingClose != null) {
+				closeDelegate(pendingClose);
+			}
+		}
+	}
+	
+	/**
+	 * Método para cerrar la sesión de un cliente que no consume sus mensajes
+	 * @param reason -> Motivo del cierre
+	 */
+	void terminate(String reason) {
+		if(closed.get()) {
+			return;
+		}
+		
+		log.warn("Sesión {} cerrada por {}", getId(), reason);
+		manager.recordTerminated();
+		closeDelegate(CloseStatus.SESSION_NOT_RELIABLE);
+	}
+	
+	/**
+	 * Método para cerrar la sesión real una sola vez y vaciar la cola
+	 * @param status -> Estado de cierre
+	 */
+	private void closeDelegate(CloseStatus status) {
+		if(!closed.compareAndSet(false, true)) {
+			return;
+		}
+		
+		queue.clear();
+		depth.set(0);
+		bytes.set(0);
+		try {
+			getDelegate().close(status);
+		} catch(IOException | IllegalStateException e) {
+			// La sesión ya estaba cerrada
+		}
+	}
+	
+	/**
+	 * Método para descartar la cola cuando la conexión ya se cerró
+	 */
+	void discard() {
+		closed.set(true);
+		queue.clear();
+		depth.set(0);
+		bytes.set(0);
+	}
+	
+	// Getters //
+	public int getQueueDepth() {
+		return depth.get();
+	}
+	
+	public long getQueuedBytes() {
+		return bytes.get();
+	}
+}
@@ -0,0 +1,211 @@
+package es.armoonys.origins.net;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+
+import es.armoonys.origins.metrics.Metrics;
+
+/**
+ * Decorador de manejadores que aplica los límites de {@link RateLimiter} a un punto de conexión.
+ * Las sesiones que superan el máximo del punto de conexión se cierran sin llegar al servicio, y
+ * los mensajes que superan su cubo se descartan antes de deserializarlos. Al primer rechazo de
+ * una racha se avisa al cliente con Error_RATELIMIT; si la racha se alarga, se cierra la sesión.
+ */
+public class RateLimitHandlerDecorator extends WebSocketHandlerDecorator {
+	//******************* Variables genéricas ************************//
+	private static final Logger log = LoggerFactory.getLogger(RateLimitHandlerDecorator.class);
+
+	//******************* Tipos ************************//
+	// Estado de los límites de una sesión (solo lo usa el hilo que entrega sus mensajes)
+	private static final class SessionLimits {
+		final TokenBucket session;
+		final TokenBucket[] codes;
+		int violations;
+
+		SessionLimits(TokenBucket session, int codeCount) {
+			this.session = session;
+			this.codes = new TokenBucket[codeCount];
+		}
+	}
+
+	//******************* Variables específicas ************************//
+	// Configuración de los límites
+	private RateLimiter limiter;
+	// Ruta del punto de conexión
+	private String endpoint;
+	// Obtención del código de las tramas binarias (null si el punto de conexión no las usa)
+	private Function<ByteBuffer, String> binaryCode;
+	// Límites de cada sesión admitida
+	private Map<String, SessionLimits> sessions = new ConcurrentHashMap<>();
+	private AtomicInteger admitted = new AtomicInteger();
+	private int maxConnections;
+	// Avisos precalculados al cliente (uno por código limitado y otro genérico)
+	private TextMessage[] notices;
+	private TextMessage sessionNotice;
+	// Métricas //
+	private LongAdder[] throttledByCode;
+	private LongAdder throttledBySession;
+	private LongAdder rejectedConnections;
+	private LongAdder closedSessions;
+
+	//******************* Constructor ************************//
+	public RateLimitHandlerDecorator(WebSocketHandler delegate, RateLimiter limiter, String endpoint,
+			Function<ByteBuffer, String> binaryCode) {
+		super(delegate);
+		this.limiter = limiter;
+		this.endpoint = endpoint;
+		this.binaryCode = binaryCode;
+		this.maxConnections = limiter.getMaxConnections(endpoint);
+
+		String throttled = "origins_throttled_messages_total";
+		String throttledHelp = "Mensajes descartados por superar su límite";
+		int count = limiter.getCodeCount();
+		notices = new TextMessage[count];
+		throttledByCode = new LongAdder[count];
+		for(int i = 0; i < count; i++) {
+			String code = limiter.getCode(i);
+			notices[i] = notice(code);
+			throttledByCode[i] = Metrics.counter(throttled, throttledHelp, "endpoint", endpoint, "limit", code);
+		}
+		sessionNotice = notice(null);
+		throttledBySession = Metrics.counter(throttled, throttledHelp, "endpoint", endpoint, "limit", "session");
+		rejectedConnections = Metrics.counter("origins_rejected_connections_total",
+				"Conexiones rechazadas por superar el máximo de sesiones", "endpoint", endpoint);
+		closedSessions = Metrics.counter("origins_throttle_closed_sessions_total",
+				"Sesiones cerradas por superar los límites de forma continuada", "endpoint", endpoint);
+	}
+
+	//******************* Métodos ************************//
+	// Métodos sobrecargados //
+	@Override
+	public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+		// Control de admisión: por encima del máximo la sesión no llega al servicio
+		if(admitted.incrementAndGet() > maxConnections) {
+			admitted.decrementAndGet();
+			rejectedConnections.increment();
+			session.close(CloseStatus.SERVICE_OVERLOAD);
+			return;
+		}
+
+		sessions.put(session.getId(), new SessionLimits(limiter.newSessionBucket(), limiter.getCodeCount()));
+		super.afterConnectionEstablished(session);
+	}
+
+	@Override
+	public void handleMessage(WebSocketSession session, WebSocketMessage<?> message) throws Exception {
+		SessionLimits limits = sessions.get(session.getId());
+		// Sesión no admitida
+		if(limits == null) {
+			return;
+		}
+
+		// Localización del código sin deserializar el mensaje
+		int code = -1;
+		if(message instanceof TextMessage) {
+			code = limiter.codeIndex(((TextMessage) message).getPayload());
+		} else if(message instanceof BinaryMessage && binaryCode != null) {
+			code = limiter.codeIndexOf(binaryCode.apply(((BinaryMessage) message).getPayload()));
+		}
+
+		if(!acquire(limits, code)) {
+			reject(session, limits, code, message instanceof TextMessage);
+			return;
+		}
+		limits.violations = 0;
+		super.handleMessage(session, message);
+	}
+
+	@Override
+	public void handleTransportError(WebSocketSession session, Throwable exception) throws Exception {
+		if(sessions.containsKey(session.getId())) {
+			super.handleTransportError(session, exception);
+		}
+	}
+
+	@Override
+	public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+		// Solo las sesiones admitidas llegaron al servicio
+		if(sessions.remove(session.getId()) != null) {
+			admitted.decrementAndGet();
+			super.afterConnectionClosed(session, closeStatus);
+		}
+	}
+
+	// Métodos de límites //
+	/**
+	 * Método para consumir las fichas de un mensaje (la de la sesión y la de su código)
+	 * @param limits -> Límites de la sesión
+	 * @param code -> Índice del código limitado, o -1
+	 * @return Falso si alguno de los cubos está vacío
+	 */
+	private boolean acquire(SessionLimits limits, int code) {
+		long now = System.nanoTime();
+		if(!limits.session.tryAcquire(now)) {
+			throttledBySession.increment();
+			return false;
+		}
+		if(code < 0) {
+			return true;
+		}
+
+		TokenBucket bucket = limits.codes[code];
+		if(bucket == null) {
+			bucket = limits.codes[code] = limiter.newCodeBucket(code);
+		}
+		if(!bucket.tryAcquire(now)) {
+			// El mensaje no se procesa, así que no cuenta para el límite de la sesión
+			limits.session.refund();
+			throttledByCode[code].increment();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Método para rechazar un mensaje: aviso al cliente al empezar la racha y cierre si se alarga
+	 * @param session -> Sesión del cliente
+	 * @param limits -> Límites de la sesión
+	 * @param code -> Índice del código limitado, o -1
+	 * @param text -> Si el cliente usa mensajes de texto (el aviso es JSON)
+	 * @throws Exception
+	 */
+	private void reject(WebSocketSession session, SessionLimits limits, int code, boolean text) throws Exception {
+		int violations = ++limits.violations;
+
+		if(violations == 1 && text) {
+			Broadcaster.send(session, code >= 0 ? notices[code] : sessionNotice);
+		} else if(violations == limiter.getMaxViolations() + 1) {
+			// Solo se cierra una vez; lo que llegue hasta el cierre se sigue descartando
+			closedSessions.increment();
+			log.warn("Sesión {} de {} cerrada por superar los límites ({} mensajes rechazados seguidos)",
+					session.getId(), endpoint, violations);
+			session.close(CloseStatus.POLICY_VIOLATION);
+		}
+	}
+
+	// Otros //
+	/**
+	 * Método para generar el aviso de límite superado
+	 * @param code -> Código rechazado, o null si se superó el límite de la sesión
+	 * @return Mensaje a enviar (inmutable, compartido entre sesiones)
+	 */
+	private static TextMessage notice(String code) {
+		return new TextMessage(code != null
+				? "{\"code\":\"Error_RATELIMIT\",\"rejected\":\"" + code + "\"}"
+				: "{\"code\":\"Error_RATELIMIT\"}");
+	}
+}
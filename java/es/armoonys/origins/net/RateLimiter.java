@@ -0,0 +1,194 @@
+package es.armoonys.origins.net;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.web.socket.WebSocketHandler;
+
+import es.armoonys.origins.codec.MessageCodec;
+
+/**
+ * Configuración de los límites de entrada de todos los puntos de conexión:
+ *  - Cubo de fichas por sesión para todos sus mensajes (origins.limits.session-*)
+ *  - Cubo de fichas por sesión y código para los mensajes caros (origins.limits.codes,
+ *    con el formato CÓDIGO:fichas por segundo:ráfaga)
+ *  - Número máximo de sesiones simultáneas por punto de conexión (origins.limits.connections,
+ *    con el formato ruta:máximo)
+ * El código de primer nivel se lee en flujo sin deserializar el mensaje, así que un mensaje
+ * rechazado no llega a construirse.
+ */
+public class RateLimiter implements InitializingBean {
+	//******************* Tipos ************************//
+	// Límite de un código de mensaje
+	static final class CodeLimit {
+		final String code;
+		final double rate;
+		final double burst;
+
+		CodeLimit(String code, double rate, double burst) {
+			this.code = code;
+			this.rate = rate;
+			this.burst = burst;
+		}
+	}
+
+	//******************* Variables específicas ************************//
+	// Configuración //
+	@Value("${origins.limits.enabled:true}")
+	private boolean enabled = true;
+	@Value("${origins.limits.session-rate:40}")
+	private double sessionRate = 40;				// Mensajes por segundo de una sesión
+	@Value("${origins.limits.session-burst:80}")
+	private double sessionBurst = 80;				// Ráfaga máxima de una sesión
+	@Value("${origins.limits.codes:}")
+	private String codesSpec = "";
+	@Value("${origins.limits.connections:}")
+	private String connectionsSpec = "";
+	@Value("${origins.limits.default-connections:10000}")
+	private int defaultConnections = 10000;			// Sesiones por punto de conexión si no se indica
+	@Value("${origins.limits.max-violations:200}")
+	private int maxViolations = 200;				// Mensajes rechazados seguidos antes de cerrar la sesión
+	// Límites por código (el índice identifica el cubo dentro de cada sesión)
+	private CodeLimit[] codes = new CodeLimit[0];
+	private Map<String, Integer> codeIndex = new HashMap<>();
+	// Máximo de sesiones por punto de conexión
+	private Map<String, Integer> connections = new HashMap<>();
+
+	//******************* Métodos ************************//
+	// Métodos de ciclo de vida //
+	@Override
+	public void afterPropertiesSet() {
+		// Límites por código
+		List<CodeLimit> parsed = new ArrayList<>();
+		for(String[] parts : entries(codesSpec, 3)) {
+			codeIndex.put(parts[0], parsed.size());
+			parsed.add(new CodeLimit(parts[0], Double.parseDouble(parts[1]), Double.parseDouble(parts[2])));
+		}
+		codes = parsed.toArray(new CodeLimit[0]);
+
+		// Límites de sesiones por punto de conexión
+		for(String[] parts : entries(connectionsSpec, 2)) {
+			connections.put(parts[0], Integer.parseInt(parts[1]));
+		}
+	}
+
+	// Métodos de decoración //
+	/**
+	 * Método para envolver el manejador de un punto de conexión con sus límites
+	 * @param handler -> Manejador del servicio
+	 * @param endpoint -> Ruta del punto de conexión
+	 * @return Manejador decorado (o el mismo si los límites están desactivados)
+	 */
+	public WebSocketHandler decorate(WebSocketHandler handler, String endpoint) {
+		return decorate(handler, endpoint, null);
+	}
+
+	/**
+	 * Método para envolver el manejador de un punto de conexión que también recibe tramas binarias
+	 * @param handler -> Manejador del servicio
+	 * @param endpoint -> Ruta del punto de conexión
+	 * @param binaryCode -> Obtención del código de una trama binaria sin decodificarla, o null
+	 * @return Manejador decorado (o el mismo si los límites están desactivados)
+	 */
+	public WebSocketHandler decorate(WebSocketHandler handler, String endpoint, Function<ByteBuffer, String> binaryCode) {
+		if(!enabled) {
+			return handler;
+		}
+		return new RateLimitHandlerDecorator(handler, this, endpoint, binaryCode);
+	}
+
+	// Métodos de consulta //
+	/**
+	 * Método para crear los cubos de una sesión nueva (los de código se crean al primer uso)
+	 * @return Cubo de la sesión
+	 */
+	TokenBucket newSessionBucket() {
+		return new TokenBucket(sessionRate, sessionBurst);
+	}
+
+	/**
+	 * Método para crear el cubo de un código para una sesión
+	 * @param index -> Índice del código
+	 * @return Cubo nuevo
+	 */
+	TokenBucket newCodeBucket(int index) {
+		CodeLimit limit = codes[index];
+		return new TokenBucket(limit.rate, limit.burst);
+	}
+
+	/**
+	 * Método para localizar el código de primer nivel de un mensaje JSON sin deserializarlo
+	 * (misma lectura en flujo que usa la tabla de despacho)
+	 * @param payload -> Mensaje recibido
+	 * @return Índice del código limitado, o -1 si el código no tiene límite propio
+	 */
+	int codeIndex(String payload) {
+		if(codes.length == 0) {
+			return -1;
+		}
+
+		try {
+			return codeIndexOf(MessageCodec.readCode(payload));
+		} catch(IOException e) {
+			// Mensaje mal formado: se cuenta solo en el cubo de la sesión
+			return -1;
+		}
+	}
+
+	/**
+	 * Método para obtener el índice de un código ya conocido (p. ej. de una trama binaria)
+	 * @param code -> Código del mensaje, o null
+	 * @return Índice del código limitado, o -1 si no tiene límite propio
+	 */
+	int codeIndexOf(String code) {
+		Integer index = code != null ? codeIndex.get(code) : null;
+		return index != null ? index : -1;
+	}
+
+	// Getters //
+	String getCode(int index) {
+		return codes[index].code;
+	}
+
+	int getCodeCount() {
+		return codes.length;
+	}
+
+	int getMaxConnections(String endpoint) {
+		return connections.getOrDefault(endpoint, defaultConnections);
+	}
+
+	int getMaxViolations() {
+		return maxViolations;
+	}
+
+	// Otros //
+	/**
+	 * Método para separar una lista de configuración "a:b:c,d:e:f" en sus entradas
+	 * @param spec -> Texto de la propiedad
+	 * @param fields -> Número de campos de cada entrada
+	 * @return Entradas no vacías
+	 */
+	static List<String[]> entries(String spec, int fields) {
+		List<String[]> result = new ArrayList<>();
+		for(String entry : spec.split(",")) {
+			entry = entry.trim();
+			if(entry.isEmpty()) {
+				continue;
+			}
+			String[] parts = entry.split(":");
+			if(parts.length != fields) {
+				throw new IllegalArgumentException("Entrada de límites no válida: " + entry);
+			}
+			result.add(parts);
+		}
+		return result;
+	}
+}
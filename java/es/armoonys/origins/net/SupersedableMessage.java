@@ -0,0 +1,57 @@
+package es.armoonys.origins.net;
+
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+/**
+ * Mensaje de texto con estado puro: un mensaje posterior con la misma clave lo deja obsoleto
+ * (p. ej. el número de usuarios conectados). Es el único tipo de mensaje que la cola de salida
+ * puede descartar cuando se llena; el resto se entrega siempre o se cierra la sesión.
+ * La sesión real solo acepta el TextMessage envuelto, así que se desenvuelve al enviarlo.
+ */
+public class SupersedableMessage implements WebSocketMessage<String> {
+	//******************* Variables específicas ************************//
+	private final String key;			// Clave del estado que transporta
+	private final TextMessage message;	// Mensaje a enviar
+	
+	//******************* Constructor ************************//
+	/**
+	 * @param key -> Clave del estado (los mensajes con la misma clave se sustituyen)
+	 * @param payload -> Contenido del mensaje
+	 */
+	public SupersedableMessage(String key, CharSequence payload) {
+		this.key = key;
+		this.message = new TextMessage(payload);
+	}
+	
+	//******************* Métodos ************************//
+	/**
+	 * Método para obtener el mensaje que se envía a la sesión real
+	 * @param message -> Mensaje cualquiera
+	 * @return El TextMessage envuelto o el propio mensaje si no lo es
+	 */
+	static WebSocketMessage<?> unwrap(WebSocketMessage<?> message) {
+		return message instanceof SupersedableMessage ? ((SupersedableMessage) message).message : message;
+	}
+	
+	// Métodos sobrecargados //
+	@Override
+	public String getPayload() {
+		return message.getPayload();
+	}
+	
+	@Override
+	public int getPayloadLength() {
+		return message.getPayloadLength();
+	}
+	
+	@Override
+	public boolean isLast() {
+		return true;
+	}
+	
+	//******************* Getters ************************//
+	public String getKey() {
+		return key;
+	}
+}
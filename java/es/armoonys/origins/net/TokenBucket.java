@@ -0,0 +1,53 @@
+package es.armoonys.origins.net;
+
+/**
+ * Cubo de fichas: admite ráfagas de hasta {@code burst} mensajes y se rellena a {@code rate}
+ * fichas por segundo. No es seguro entre hilos; cada cubo pertenece a una sola sesión y el
+ * contenedor entrega los mensajes de una sesión de uno en uno.
+ */
+final class TokenBucket {
+	//******************* Variables específicas ************************//
+	// Fichas por nanosegundo
+	private final double ratePerNano;
+	// Capacidad máxima del cubo
+	private final double burst;
+	// Fichas disponibles y momento del último relleno
+	private double tokens;
+	private long lastRefill;
+
+	//******************* Constructor ************************//
+	/**
+	 * @param rate -> Fichas por segundo
+	 * @param burst -> Capacidad máxima (el cubo empieza lleno)
+	 */
+	TokenBucket(double rate, double burst) {
+		this.ratePerNano = rate / 1e9;
+		this.burst = burst;
+		this.tokens = burst;
+		this.lastRefill = System.nanoTime();
+	}
+
+	//******************* Métodos ************************//
+	/**
+	 * Método para consumir una ficha
+	 * @param now -> Instante actual (System.nanoTime), compartido entre los cubos de un mensaje
+	 * @return Falso si el cubo está vacío
+	 */
+	boolean tryAcquire(long now) {
+		tokens = Math.min(burst, tokens + (now - lastRefill) * ratePerNano);
+		lastRefill = now;
+
+		if(tokens < 1) {
+			return false;
+		}
+		tokens -= 1;
+		return true;
+	}
+
+	/**
+	 * Método para devolver una ficha consumida (cuando otro cubo del mismo mensaje lo rechazó)
+	 */
+	void refund() {
+		tokens = Math.min(burst, tokens + 1);
+	}
+}
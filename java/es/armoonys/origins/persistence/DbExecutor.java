@@ -0,0 +1,211 @@
+package es.armoonys.origins.persistence;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+
+import es.armoonys.origins.metrics.Histogram;
+import es.armoonys.origins.metrics.Metrics;
+
+/**
+ * Ejecutor de las tareas que acceden a la BD, para no bloquear los hilos de WebSocket del
+ * contenedor durante las consultas. Las tareas de una misma sesión se ejecutan en orden,
+ * una detrás de otra, aunque las de sesiones distintas avancen en paralelo.
+ * El modo se elige por configuración para poder comparar:
+ *  - VIRTUAL -> Un hilo virtual por tarea (Java 21+; si no hay, se usa BOUNDED)
+ *  - BOUNDED -> Grupo fijo de hilos con cola acotada (si se llena, la tarea la ejecuta quien la envía)
+ *  - INLINE -> En el propio hilo de WebSocket (comportamiento original)
+ */
+public class DbExecutor implements InitializingBean, DisposableBean {
+	//******************* Variables genéricas ************************//
+	private static final Logger log = LoggerFactory.getLogger(DbExecutor.class);
+	
+	//******************* Tipos ************************//
+	// Modo de ejecución
+	public enum Mode {
+		VIRTUAL,
+		BOUNDED,
+		INLINE
+	}
+	
+	// Tarea de BD
+	@FunctionalInterface
+	public interface Task {
+		void run() throws Exception;
+	}
+	
+	// Ejecutor en serie de una sesión: una sola tarea a la vez sobre el ejecutor compartido
+	private class SerialExecutor implements Runnable {
+		final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+		final AtomicBoolean running = new AtomicBoolean();
+		
+		void execute(Runnable task) {
+			tasks.offer(task);
+			schedule();
+		}
+		
+		void schedule() {
+			if(!tasks.isEmpty() && running.compareAndSet(false, true)) {
+				executor.execute(this);
+			}
+		}
+		
+		@Override
+		public void run() {
+			try {
+				Runnable task;
+				while((task = tasks.poll()) != null) {
+					task.run();
+				}
+			} finally {
+				running.set(false);
+				// Una tarea encolada justo después de vaciar la cola necesita otra pasada
+				schedule();
+			}
+		}
+	}
+	
+	//******************* Variables específicas ************************//
+	// Configuración //
+	@Value("${origins.db.executor:BOUNDED}")
+	private Mode mode = Mode.BOUNDED;
+	@Value("${origins.db.threads:8}")
+	private int threads = 8;					// Hilos del modo BOUNDED
+	@Value("${origins.db.queue-size:1024}")
+	private int queueSize = 1024;				// Tareas en espera del modo BOUNDED
+	// Ejecutor compartido
+	private ExecutorService executor;
+	// Ejecutor en serie de cada sesión
+	private Map<String, SerialExecutor> serials = new ConcurrentHashMap<>();
+	// Estadísticas //
+	private AtomicLong executed = new AtomicLong();		// Tareas ejecutadas
+	private AtomicLong failed = new AtomicLong();		// Tareas que lanzaron una excepción
+	private Histogram queueWait = Metrics.timer("origins_db_queue_wait_seconds", 
+			"Espera de una tarea de BD hasta empezar a ejecutarse");
+	private Histogram taskTime = Metrics.timer("origins_db_task_seconds", 
+			"Duración de una tarea de BD");
+	
+	//******************* Métodos ************************//
+	// Métodos de ciclo de vida //
+	@Override
+	public void afterPropertiesSet() {
+		if(mode == Mode.VIRTUAL) {
+			executor = newVirtualExecutor();
+			if(executor == null) {
+				log.warn("Hilos virtuales no disponibles en esta JVM, se usa un grupo acotado");
+				mode = Mode.BOUNDED;
+			}
+		}
+		if(mode == Mode.BOUNDED) {
+			AtomicInteger count = new AtomicInteger();
+			executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, 
+					new ArrayBlockingQueue<>(queueSize), r -> {
+				Thread t = new Thread(r, "origins-db-" + count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}, new ThreadPoolExecutor.CallerRunsPolicy());
+		}
+		log.info("Ejecutor de BD en modo {}", mode);
+	}
+	
+	@Override
+	public void destroy() throws InterruptedException {
+		if(executor != null) {
+			executor.shutdown();
+			executor.awaitTermination(10, TimeUnit.SECONDS);
+		}
+	}
+	
+	// Métodos de ejecución //
+	/**
+	 * Método para ejecutar una tarea de BD de una sesión, después de las anteriores de la misma sesión.
+	 * Si la tarea falla, se cierra la sesión igual que si hubiera fallado en el hilo de WebSocket
+	 * @param session -> Sesión del cliente
+	 * @param task -> Tarea a ejecutar
+	 */
+	public void execute(WebSocketSession session, Task task) {
+		long queued = System.nanoTime();
+		Runnable run = () -> {
+			queueWait.recordNanos(System.nanoTime() - queued);
+			runTask(session, task);
+		};
+		if(mode == Mode.INLINE) {
+			run.run();
+			return;
+		}
+		serials.computeIfAbsent(session.getId(), id -> new SerialExecutor()).execute(run);
+	}
+	
+	/**
+	 * Método para liberar el ejecutor en serie de una sesión cerrada (las tareas pendientes aún se ejecutan)
+	 * @param session -> Sesión cerrada
+	 */
+	public void release(WebSocketSession session) {
+		serials.remove(session.getId());
+	}
+	
+	/**
+	 * Método para ejecutar una tarea, registrando sus errores
+	 */
+	private void runTask(WebSocketSession session, Task task) {
+		long start = System.nanoTime();
+		try {
+			task.run();
+			executed.incrementAndGet();
+		} catch(Exception e) {
+			failed.incrementAndGet();
+			log.warn("Error en una tarea de BD de la sesión {}: {}", session.getId(), e.toString());
+			try {
+				if(session.isOpen()) {
+					session.close(CloseStatus.SERVER_ERROR);
+				}
+			} catch(Exception ignored) {
+				// La sesión ya no está disponible
+			}
+		} finally {
+			taskTime.recordNanos(System.nanoTime() - start);
+		}
+	}
+	
+	/**
+	 * Método para crear un ejecutor de hilos virtuales por reflexión (para poder compilar con Java 17)
+	 * @return Ejecutor o null si la JVM no tiene hilos virtuales
+	 */
+	private static ExecutorService newVirtualExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch(ReflectiveOperationException e) {
+			return null;
+		}
+	}
+	
+	// Getters //
+	public Mode getMode() {
+		return mode;
+	}
+	
+	public long getExecuted() {
+		return executed.get();
+	}
+	
+	public long getFailed() {
+		return failed.get();
+	}
+}
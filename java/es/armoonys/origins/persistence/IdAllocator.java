@@ -0,0 +1,56 @@
+package es.armoonys.origins.persistence;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Generador de IDs de una tabla. Se siembra una única vez al arrancar con la marca de agua
+ * ya persistida (el mayor ID guardado) y a partir de ahí cada ID se obtiene con una sola
+ * operación atómica, sin volver a consultar la tabla.
+ */
+public class IdAllocator {
+	//******************* Variables genéricas ************************//
+	private static final Logger log = LoggerFactory.getLogger(IdAllocator.class);
+	
+	//******************* Variables específicas ************************//
+	// Nombre del generador (para los avisos)
+	private final String name;
+	// Último ID entregado
+	private final AtomicLong last = new AtomicLong();
+	
+	//******************* Constructor ************************//
+	/**
+	 * Constructor del generador
+	 * @param name -> Nombre del generador
+	 */
+	public IdAllocator(String name) {
+		this.name = name;
+	}
+	
+	//******************* Métodos ************************//
+	/**
+	 * Método para sembrar la marca de agua. Nunca retrocede, por lo que sembrar dos veces es seguro
+	 * @param highWater -> Mayor ID ya utilizado
+	 */
+	public void seed(long highWater) {
+		long previous = last.getAndAccumulate(highWater, Math::max);
+		if(highWater > previous) {
+			log.info("IDs de {} a partir de {}", name, highWater + 1);
+		}
+	}
+	
+	/**
+	 * Método para obtener el siguiente ID
+	 * @return ID sin usar
+	 */
+	public long next() {
+		return last.incrementAndGet();
+	}
+	
+	// Getters //
+	public long getLast() {
+		return last.get();
+	}
+}
@@ -0,0 +1,83 @@
+package es.armoonys.origins.persistence;
+
+import java.sql.PreparedStatement;
+import java.util.Collections;
+import java.util.List;
+
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import es.armoonys.origins.chat.ChatEntry;
+
+/**
+ * Almacén de mensajes del chat sobre JDBC (fichero de Access o motor SQL embebido).
+ * Todas las sentencias son constantes con parámetros, de forma que el motor reutiliza su plan.
+ * El límite de filas se aplica con setMaxRows para no depender del dialecto (TOP, LIMIT...)
+ */
+public class JdbcMessageRepository implements MessageRepository, InitializingBean {
+	//******************* Variables genéricas ************************//
+	// Sentencias //
+	private static final String CREATE = "CREATE TABLE IF NOT EXISTS messages(ID BIGINT PRIMARY KEY, "
+			+ "Username VARCHAR(255), Body VARCHAR(4000))";
+	private static final String MAX_ID = "SELECT MAX(ID) FROM messages";
+	private static final String OLDER_THAN = "SELECT ID, Username, Body FROM messages WHERE ID < ? ORDER BY ID DESC";
+	private static final String INSERT = "INSERT INTO messages(ID,Username,Body) VALUES(?,?,?)";
+	// Conversión de una fila en mensaje
+	private static final RowMapper<ChatEntry> ROW = (rs, rowNum) -> 
+			new ChatEntry(rs.getLong("ID"), rs.getString("Username"), rs.getString("Body"));
+	
+	//******************* Variables específicas ************************//
+	// Plantilla de la BD
+	private JdbcTemplate templateOriginsDB;
+	// ¿Se crea la tabla si no existe? (solo en el motor embebido; el esquema de Access ya viene en el fichero)
+	private boolean createSchema;
+	
+	//******************* Constructor ************************//
+	/**
+	 * Constructor del almacén
+	 * @param templateOriginsDB -> Plantilla de la BD
+	 * @param createSchema -> ¿Se crea la tabla si no existe?
+	 */
+	public JdbcMessageRepository(JdbcTemplate templateOriginsDB, boolean createSchema) {
+		this.templateOriginsDB = templateOriginsDB;
+		this.createSchema = createSchema;
+	}
+	
+	//******************* Métodos ************************//
+	@Override
+	public void afterPropertiesSet() {
+		if(createSchema) {
+			templateOriginsDB.execute(CREATE);
+		}
+	}
+	
+	@Override
+	public long maxId() {
+		Long max = templateOriginsDB.queryForObject(MAX_ID, Long.class);
+		return max != null ? max : 0;
+	}
+	
+	@Override
+	public List<ChatEntry> findOlderThan(long beforeId, int limit) {
+		// Obtención de los mensajes (del más reciente al más antiguo)
+		List<ChatEntry> entries = templateOriginsDB.query(con -> {
+			PreparedStatement ps = con.prepareStatement(OLDER_THAN);
+			ps.setLong(1, beforeId);
+			ps.setMaxRows(limit);
+			return ps;
+		}, ROW);
+		
+		Collections.reverse(entries);
+		return entries;
+	}
+	
+	@Override
+	public void saveAll(List<ChatEntry> entries) {
+		templateOriginsDB.batchUpdate(INSERT, entries, entries.size(), (ps, entry) -> {
+			ps.setLong(1, entry.getId());
+			ps.setString(2, entry.getName());
+			ps.setString(3, entry.getBody());
+		});
+	}
+}
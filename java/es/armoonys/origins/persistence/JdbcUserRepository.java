@@ -0,0 +1,86 @@
+package es.armoonys.origins.persistence;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import es.armoonys.origins.users.UserRecord;
+
+/**
+ * Almacén de usuarios sobre JDBC (fichero de Access o motor SQL embebido).
+ * Todas las sentencias son constantes con parámetros, de forma que el motor reutiliza su plan
+ */
+public class JdbcUserRepository implements UserRepository, InitializingBean {
+	//******************* Variables genéricas ************************//
+	// Sentencias //
+	private static final String CREATE = "CREATE TABLE IF NOT EXISTS users(ID BIGINT PRIMARY KEY, "
+			+ "Username VARCHAR(255) NOT NULL UNIQUE, Password VARCHAR(255), Status BOOLEAN DEFAULT FALSE)";
+	private static final String MAX_ID = "SELECT MAX(ID) FROM users";
+	private static final String FIND = "SELECT Username, Password, Status FROM users WHERE Username = ?";
+	private static final String INSERT = "INSERT INTO users(ID,Username,Password,Status) VALUES(?,?,?,?)";
+	private static final String UPDATE_STATUS = "UPDATE users SET Status = ? WHERE Username = ?";
+	private static final String RESET_STATUS = "UPDATE users SET Status = ? WHERE Status = ?";
+	// Conversión de una fila en usuario
+	private static final RowMapper<UserRecord> ROW = (rs, rowNum) -> 
+			new UserRecord(rs.getString("Username"), rs.getString("Password"), rs.getBoolean("Status"));
+	
+	//******************* Variables específicas ************************//
+	// Plantilla de la BD
+	private JdbcTemplate templateOriginsDB;
+	// ¿Se crea la tabla si no existe? (solo en el motor embebido; el esquema de Access ya viene en el fichero)
+	private boolean createSchema;
+	
+	//******************* Constructor ************************//
+	/**
+	 * Constructor del almacén
+	 * @param templateOriginsDB -> Plantilla de la BD
+	 * @param createSchema -> ¿Se crea la tabla si no existe?
+	 */
+	public JdbcUserRepository(JdbcTemplate templateOriginsDB, boolean createSchema) {
+		this.templateOriginsDB = templateOriginsDB;
+		this.createSchema = createSchema;
+	}
+	
+	//******************* Métodos ************************//
+	@Override
+	public void afterPropertiesSet() {
+		if(createSchema) {
+			templateOriginsDB.execute(CREATE);
+		}
+	}
+	
+	@Override
+	public long maxId() {
+		Long max = templateOriginsDB.queryForObject(MAX_ID, Long.class);
+		return max != null ? max : 0;
+	}
+	
+	@Override
+	public UserRecord findByUsername(String username) {
+		List<UserRecord> users = templateOriginsDB.query(FIND, ROW, username);
+		return users.isEmpty() ? null : users.get(0);
+	}
+	
+	@Override
+	public void insert(long id, UserRecord user) {
+		templateOriginsDB.update(INSERT, id, user.getUsername(), user.getPassword(), user.getStatus());
+	}
+	
+	@Override
+	public void updateStatuses(Map<String, Boolean> statuses) {
+		List<Object[]> batch = new ArrayList<>(statuses.size());
+		for(Map.Entry<String, Boolean> status : statuses.entrySet()) {
+			batch.add(new Object[] { status.getValue(), status.getKey() });
+		}
+		templateOriginsDB.batchUpdate(UPDATE_STATUS, batch);
+	}
+	
+	@Override
+	public int resetStatuses() {
+		return templateOriginsDB.update(RESET_STATUS, false, true);
+	}
+}
@@ -0,0 +1,408 @@
+package es.armoonys.origins.persistence;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+
+import es.armoonys.origins.chat.ChatEntry;
+
+/**
+ * Almacén de mensajes del chat como registro de solo escritura al final, repartido en
+ * segmentos de tamaño fijo mapeados en memoria. Cada mensaje es un registro con cabecera fija:
+ * 
+ *  [int longitud][int crc32][long id][int bytes del nombre][nombre UTF-8][cuerpo UTF-8]
+ *  
+ * La longitud cuenta lo que sigue a la cabecera (16 bytes) y el CRC cubre desde el ID hasta el
+ * final del registro. La longitud se escribe la última, de forma que un registro con longitud 0
+ * marca el final del segmento. Al arrancar se recorre cada segmento y se borra (a ceros) todo
+ * lo que sigue al primer registro incompleto o corrupto. Cada segmento guarda en memoria un
+ * índice disperso (ID y posición de uno de cada N registros) para buscar por ID sin recorrerlo
+ * entero. Los IDs deben llegar en orden creciente, como los entrega el escritor diferido; saveAll
+ * descarta (y cuenta) los que no lo hacen, de forma que el orden del registro es siempre el de
+ * los IDs y la búsqueda por ID puede detenerse en el primer registro posterior.
+ */
+public class MappedChatLog implements MessageRepository, InitializingBean, DisposableBean {
+	//******************* Tipos ************************//
+	// Segmento del registro: fichero mapeado con registros desde la posición 0 hasta "end"
+	private static class Segment {
+		final Path path;					// Fichero del segmento
+		final FileChannel channel;			// Canal del fichero
+		final MappedByteBuffer buffer;		// Contenido mapeado
+		int end = 0;						// Bytes con registros válidos
+		int count = 0;						// Número de registros
+		long firstId = 0;					// ID del primer registro
+		long lastId = 0;					// ID del último registro
+		// Índice disperso //
+		long[] indexIds = new long[16];
+		int[] indexPos = new int[16];
+		int indexSize = 0;
+		
+		Segment(Path path, int size) throws IOException {
+			this.path = path;
+			this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(channel.size(), size));
+		}
+	}
+	
+	//******************* Variables genéricas ************************//
+	private static final Logger log = LoggerFactory.getLogger(MappedChatLog.class);
+	// Tamaño de la cabecera de un registro
+	private static final int HEADER = 16;
+	// Extensión de los segmentos (el nombre es el ID del primer registro)
+	private static final String SUFFIX = ".log";
+	
+	//******************* Variables específicas ************************//
+	// Configuración //
+	@Value("${origins.chat.log.dir:chatlog}")
+	private String dir = "chatlog";						// Carpeta de los segmentos
+	@Value("${origins.chat.log.segment-bytes:16777216}")
+	private int segmentBytes = 16 * 1024 * 1024;		// Tamaño de cada segmento
+	@Value("${origins.chat.log.index-interval:64}")
+	private int indexInterval = 64;						// Registros entre dos entradas del índice
+	@Value("${origins.chat.log.force:true}")
+	private boolean forceOnWrite = true;				// ¿Se fuerza la escritura a disco tras cada lote?
+	// Segmentos en orden (el último es el activo)
+	private List<Segment> segments = new ArrayList<>();
+	// Cerrojo de lectura/escritura (un único escritor, el escritor diferido del chat)
+	private ReadWriteLock lock = new ReentrantReadWriteLock();
+	// Bytes a ceros tras recuperar registros incompletos
+	private long recoveredBytes = 0;
+	// Mensajes descartados por llegar con un ID no creciente
+	private long rejected = 0;
+	
+	//******************* Métodos ************************//
+	// Métodos de ciclo de vida //
+	/**
+	 * Método de apertura de los segmentos existentes y recuperación de su final
+	 * @throws IOException
+	 */
+	@Override
+	public void afterPropertiesSet() throws IOException {
+		Path folder = Paths.get(dir);
+		Files.createDirectories(folder);
+		
+		List<Path> files;
+		try(Stream<Path> list = Files.list(folder)) {
+			files = list.filter(p -> p.getFileName().toString().endsWith(SUFFIX)).sorted().collect(Collectors.toList());
+		}
+		for(Path file : files) {
+			Segment segment = new Segment(file, segmentBytes);
+			recover(segment);
+			segments.add(segment);
+		}
+		if(segments.isEmpty()) {
+			segments.add(newSegment(1));
+		}
+		
+		log.info("Registro del chat abierto: {} segmentos, último mensaje {}, {} bytes recuperados", 
+				segments.size(), maxId(), recoveredBytes);
+	}
+	
+	/**
+	 * Método de cierre: se fuerzan los cambios a disco y se cierran los ficheros
+	 * @throws IOException
+	 */
+	@Override
+	public void destroy() throws IOException {
+		lock.writeLock().lock();
+		try {
+			for(Segment segment : segments) {
+				segment.buffer.force();
+				segment.channel.close();
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	// Métodos del almacén //
+	@Override
+	public long maxId() {
+		lock.readLock().lock();
+		try {
+			return lastId();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	@Override
+	public void saveAll(List<ChatEntry> entries) {
+		lock.writeLock().lock();
+		try {
+			Segment active = segments.get(segments.size() - 1);
+			long last = lastId();
+			for(ChatEntry entry : entries) {
+				// Un ID no creciente rompería el orden en que se busca por ID
+				if(entry.getId() <= last) {
+					rejected++;
+					log.warn("Mensaje {} descartado: el registro ya llega al mensaje {}", entry.getId(), last);
+					continue;
+				}
+				last = entry.getId();
+				
+				byte[] name = entry.getName() != null ? entry.getName().getBytes(StandardCharsets.UTF_8) : new byte[0];
+				byte[] body = entry.getBody() != null ? entry.getBody().getBytes(StandardCharsets.UTF_8) : new byte[0];
+				
+				// Si el registro no cabe, se cierra el segmento y se abre otro
+				if(!append(active, entry.getId(), name, body)) {
+					active.buffer.force();
+					active = newSegment(entry.getId());
+					segments.add(active);
+					if(!append(active, entry.getId(), name, body)) {
+						throw new IllegalArgumentException("Mensaje " + entry.getId() + " mayor que un segmento");
+					}
+				}
+			}
+			if(forceOnWrite) {
+				active.buffer.force();
+			}
+		} catch(IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	@Override
+	public List<ChatEntry> findOlderThan(long beforeId, int limit) {
+		lock.readLock().lock();
+		try {
+			// Recorrido de los segmentos del más reciente al más antiguo hasta completar el límite
+			Deque<ChatEntry> result = new ArrayDeque<>();
+			for(int i = segments.size() - 1; i >= 0 && result.size() < limit; i--) {
+				Segment segment = segments.get(i);
+				if(segment.count == 0 || segment.firstId >= beforeId) {
+					continue;
+				}
+				
+				List<ChatEntry> older = readOlderThan(segment, beforeId, limit - result.size());
+				for(int j = older.size() - 1; j >= 0; j--) {
+					result.addFirst(older.get(j));
+				}
+			}
+			return new ArrayList<>(result);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	// Métodos de segmentos //
+	/**
+	 * Método para obtener el ID del último registro (con el cerrojo ya tomado)
+	 * @return ID o 0 si el registro está vacío
+	 */
+	private long lastId() {
+		for(int i = segments.size() - 1; i >= 0; i--) {
+			if(segments.get(i).count > 0) {
+				return segments.get(i).lastId;
+			}
+		}
+		return 0;
+	}
+	
+	/**
+	 * Método para crear un segmento vacío
+	 * @param baseId -> ID de su primer registro
+	 * @return Segmento nuevo
+	 * @throws IOException
+	 */
+	private Segment newSegment(long baseId) throws IOException {
+		return new Segment(Paths.get(dir).resolve(String.format("%020d", baseId) + SUFFIX), segmentBytes);
+	}
+	
+	/**
+	 * Método para escribir un registro al final de un segmento
+	 * @return ¿Cabía el registro?
+	 */
+	private boolean append(Segment segment, long id, byte[] name, byte[] body) {
+		int length = 4 + name.length + body.length;
+		int pos = segment.end;
+		if(pos + HEADER + length > segment.buffer.capacity()) {
+			return false;
+		}
+		
+		// Datos, ID y CRC primero; la longitud al final confirma el registro
+		ByteBuffer out = segment.buffer.duplicate();
+		out.position(pos + 8);
+		out.putLong(id).putInt(name.length).put(name).put(body);
+		out.putInt(pos + 4, crc(segment, pos, length));
+		out.putInt(pos, length);
+		
+		track(segment, id, pos);
+		segment.end = pos + HEADER + length;
+		return true;
+	}
+	
+	/**
+	 * Método para recorrer un segmento al abrirlo: reconstruye el índice y borra el final incompleto
+	 */
+	private void recover(Segment segment) {
+		ByteBuffer in = segment.buffer;
+		int capacity = in.capacity();
+		int pos = 0;
+		
+		while(pos + HEADER <= capacity) {
+			int length = in.getInt(pos);
+			if(length == 0) {
+				break;
+			}
+			// Registro incompleto o corrupto: aquí termina el segmento
+			if(length < 4 || pos + HEADER + length > capacity || in.getInt(pos + 4) != crc(segment, pos, length)) {
+				break;
+			}
+			track(segment, in.getLong(pos + 8), pos);
+			pos += HEADER + length;
+		}
+		segment.end = pos;
+		
+		// Borrado de lo que quede tras el último registro válido (restos de una escritura interrumpida)
+		int lastDirty = -1;
+		for(int i = pos; i < capacity; i++) {
+			if(in.get(i) != 0) {
+				lastDirty = i;
+			}
+		}
+		if(lastDirty >= pos) {
+			for(int i = pos; i <= lastDirty; i++) {
+				in.put(i, (byte) 0);
+			}
+			recoveredBytes += lastDirty - pos + 1;
+			segment.buffer.force();
+		}
+	}
+	
+	/**
+	 * Método para añadir un registro a las estadísticas y al índice disperso del segmento
+	 */
+	private void track(Segment segment, long id, int pos) {
+		if(segment.count % indexInterval == 0) {
+			if(segment.indexSize == segment.indexIds.length) {
+				segment.indexIds = Arrays.copyOf(segment.indexIds, segment.indexSize * 2);
+				segment.indexPos = Arrays.copyOf(segment.indexPos, segment.indexSize * 2);
+			}
+			segment.indexIds[segment.indexSize] = id;
+			segment.indexPos[segment.indexSize] = pos;
+			segment.indexSize++;
+		}
+		if(segment.count == 0) {
+			segment.firstId = id;
+		}
+		segment.lastId = id;
+		segment.count++;
+	}
+	
+	/**
+	 * Método para leer los últimos registros de un segmento anteriores a un ID
+	 * @return Mensajes en orden de antigüedad (el más antiguo primero)
+	 */
+	private List<ChatEntry> readOlderThan(Segment segment, long beforeId, int limit) {
+		// Última entrada del índice anterior al ID (búsqueda binaria)
+		int k = Arrays.binarySearch(segment.indexIds, 0, segment.indexSize, beforeId);
+		k = (k >= 0 ? k : -k - 1) - 1;
+		if(k < 0) {
+			return new ArrayList<>();
+		}
+		
+		// Se retroceden las entradas del índice necesarias para cubrir el límite antes de esa entrada
+		int start = Math.max(0, k - (limit + indexInterval - 1) / indexInterval);
+		int pos = segment.indexPos[start];
+		
+		// Ventana con las posiciones de los últimos registros anteriores al ID
+		ByteBuffer in = segment.buffer;
+		Deque<Integer> window = new ArrayDeque<>(limit);
+		while(pos < segment.end) {
+			if(in.getLong(pos + 8) >= beforeId) {
+				break;
+			}
+			if(window.size() == limit) {
+				window.pollFirst();
+			}
+			window.addLast(pos);
+			pos += HEADER + in.getInt(pos);
+		}
+		
+		// Solo se decodifican los registros de la ventana, directamente desde el fichero mapeado
+		List<ChatEntry> entries = new ArrayList<>(window.size());
+		for(int p : window) {
+			entries.add(read(segment, p));
+		}
+		return entries;
+	}
+	
+	/**
+	 * Método para decodificar un registro
+	 */
+	private ChatEntry read(Segment segment, int pos) {
+		ByteBuffer in = segment.buffer.duplicate();
+		int length = in.getInt(pos);
+		long id = in.getLong(pos + 8);
+		int nameLength = in.getInt(pos + HEADER);
+		
+		int nameStart = pos + HEADER + 4;
+		int bodyStart = nameStart + nameLength;
+		in.limit(bodyStart).position(nameStart);
+		String name = StandardCharsets.UTF_8.decode(in).toString();
+		in.limit(pos + HEADER + length).position(bodyStart);
+		String body = StandardCharsets.UTF_8.decode(in).toString();
+		
+		return new ChatEntry(id, name, body);
+	}
+	
+	/**
+	 * Método para calcular el CRC de un registro (desde el ID hasta el final)
+	 */
+	private static int crc(Segment segment, int pos, int length) {
+		ByteBuffer in = segment.buffer.duplicate();
+		in.limit(pos + HEADER + length).position(pos + 8);
+		CRC32 crc = new CRC32();
+		crc.update(in);
+		return (int) crc.getValue();
+	}
+	
+	// Getters //
+	public int getSegments() {
+		lock.readLock().lock();
+		try {
+			return segments.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	public long getRecoveredBytes() {
+		return recoveredBytes;
+	}
+	
+	public long getRejected() {
+		lock.readLock().lock();
+		try {
+			return rejected;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+}
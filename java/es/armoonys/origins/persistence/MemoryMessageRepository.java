@@ -0,0 +1,49 @@
+package es.armoonys.origins.persistence;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import es.armoonys.origins.chat.ChatEntry;
+
+/**
+ * Almacén de mensajes del chat solo en memoria (se pierde al parar el servidor). Pensado para
+ * pruebas de carga y despliegues sin fichero de BD
+ */
+public class MemoryMessageRepository implements MessageRepository {
+	//******************* Variables específicas ************************//
+	// Mensajes ordenados por ID
+	private NavigableMap<Long, ChatEntry> messages = new ConcurrentSkipListMap<>();
+	
+	//******************* Métodos ************************//
+	@Override
+	public long maxId() {
+		Map.Entry<Long, ChatEntry> last = messages.lastEntry();
+		return last != null ? last.getKey() : 0;
+	}
+	
+	@Override
+	public List<ChatEntry> findOlderThan(long beforeId, int limit) {
+		// Recorrido del más reciente al más antiguo
+		List<ChatEntry> entries = new ArrayList<>(Math.min(limit, 256));
+		for(ChatEntry entry : messages.headMap(beforeId, false).descendingMap().values()) {
+			if(entries.size() >= limit) {
+				break;
+			}
+			entries.add(entry);
+		}
+		
+		Collections.reverse(entries);
+		return entries;
+	}
+	
+	@Override
+	public void saveAll(List<ChatEntry> entries) {
+		for(ChatEntry entry : entries) {
+			messages.put(entry.getId(), entry);
+		}
+	}
+}
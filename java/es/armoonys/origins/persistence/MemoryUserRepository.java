@@ -0,0 +1,56 @@
+package es.armoonys.origins.persistence;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import es.armoonys.origins.users.UserRecord;
+
+/**
+ * Almacén de usuarios solo en memoria (se pierde al parar el servidor). Pensado para
+ * pruebas de carga y despliegues sin fichero de BD
+ */
+public class MemoryUserRepository implements UserRepository {
+	//******************* Variables específicas ************************//
+	// Usuarios por nombre
+	private Map<String, UserRecord> users = new ConcurrentHashMap<>();
+	// Mayor ID guardado
+	private AtomicLong maxId = new AtomicLong();
+	
+	//******************* Métodos ************************//
+	@Override
+	public long maxId() {
+		return maxId.get();
+	}
+	
+	@Override
+	public UserRecord findByUsername(String username) {
+		return users.get(username);
+	}
+	
+	@Override
+	public void insert(long id, UserRecord user) {
+		users.put(user.getUsername(), user);
+		maxId.accumulateAndGet(id, Math::max);
+	}
+	
+	@Override
+	public void updateStatuses(Map<String, Boolean> statuses) {
+		for(Map.Entry<String, Boolean> status : statuses.entrySet()) {
+			users.computeIfPresent(status.getKey(), (username, user) -> 
+					new UserRecord(username, user.getPassword(), status.getValue()));
+		}
+	}
+	
+	@Override
+	public int resetStatuses() {
+		int reset = 0;
+		for(UserRecord user : users.values()) {
+			if(user.getStatus()) {
+				users.put(user.getUsername(), new UserRecord(user.getUsername(), user.getPassword(), false));
+				reset++;
+			}
+		}
+		return reset;
+	}
+}
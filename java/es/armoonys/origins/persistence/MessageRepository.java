@@ -0,0 +1,30 @@
+package es.armoonys.origins.persistence;
+
+import java.util.List;
+
+import es.armoonys.origins.chat.ChatEntry;
+
+/**
+ * Almacén de mensajes del chat. La implementación se elige con origins.persistence.backend
+ */
+public interface MessageRepository {
+	/**
+	 * Método para obtener el mayor ID de mensaje guardado
+	 * @return Mayor ID o 0 si no hay mensajes
+	 */
+	long maxId();
+	
+	/**
+	 * Método para obtener los últimos mensajes anteriores a un ID
+	 * @param beforeId -> ID a partir del cual se buscan mensajes anteriores
+	 * @param limit -> Número máximo de mensajes
+	 * @return Mensajes en orden de antigüedad (el más antiguo primero)
+	 */
+	List<ChatEntry> findOlderThan(long beforeId, int limit);
+	
+	/**
+	 * Método para guardar varios mensajes en un solo lote
+	 * @param entries -> Mensajes en orden de ID
+	 */
+	void saveAll(List<ChatEntry> entries);
+}
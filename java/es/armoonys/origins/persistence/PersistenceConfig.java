@@ -0,0 +1,77 @@
+package es.armoonys.origins.persistence;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Selección del almacén de datos según origins.persistence.backend:
+ *  - access -> Fichero de Access con UCanAccess (por defecto)
+ *  - embedded -> Motor SQL embebido en fichero (perfil "embedded", crea las tablas si no existen)
+ *  - memory -> Solo en memoria, sin BD (perfil "memory")
+ * Con origins.chat.store=log los mensajes del chat se guardan en el registro de ficheros mapeados
+ * en lugar de en el almacén elegido.
+ * Todos los repositorios quedan envueltos por {@link TimedRepositories} para medir su latencia
+ */
+@Configuration
+public class PersistenceConfig {
+	//******************* Variables genéricas ************************//
+	// Propiedad de selección del almacén
+	private static final String BACKEND = "origins.persistence.backend";
+	
+	//******************* Métodos ************************//
+	// Medición de latencia (estático para registrarse antes que los repositorios) //
+	@Bean
+	public static TimedRepositories timedRepositories() {
+		return new TimedRepositories();
+	}
+	
+	// Fichero de Access //
+	@Bean
+	@ConditionalOnProperty(name = BACKEND, havingValue = "access", matchIfMissing = true)
+	public UserRepository accessUserRepository(JdbcTemplate templateOriginsDB) {
+		return new JdbcUserRepository(templateOriginsDB, false);
+	}
+	
+	@Bean
+	@ConditionalOnProperty(name = BACKEND, havingValue = "access", matchIfMissing = true)
+	public MessageRepository accessMessageRepository(JdbcTemplate templateOriginsDB) {
+		return new JdbcMessageRepository(templateOriginsDB, false);
+	}
+	
+	// Motor SQL embebido //
+	@Bean
+	@ConditionalOnProperty(name = BACKEND, havingValue = "embedded")
+	public UserRepository embeddedUserRepository(JdbcTemplate templateOriginsDB) {
+		return new JdbcUserRepository(templateOriginsDB, true);
+	}
+	
+	@Bean
+	@ConditionalOnProperty(name = BACKEND, havingValue = "embedded")
+	public MessageRepository embeddedMessageRepository(JdbcTemplate templateOriginsDB) {
+		return new JdbcMessageRepository(templateOriginsDB, true);
+	}
+	
+	// Memoria //
+	@Bean
+	@ConditionalOnProperty(name = BACKEND, havingValue = "memory")
+	public UserRepository memoryUserRepository() {
+		return new MemoryUserRepository();
+	}
+	
+	@Bean
+	@ConditionalOnProperty(name = BACKEND, havingValue = "memory")
+	public MessageRepository memoryMessageRepository() {
+		return new MemoryMessageRepository();
+	}
+	
+	// Registro del chat en ficheros mapeados //
+	@Bean
+	@Primary
+	@ConditionalOnProperty(name = "origins.chat.store", havingValue = "log")
+	public MessageRepository chatLogRepository() {
+		return new MappedChatLog();
+	}
+}
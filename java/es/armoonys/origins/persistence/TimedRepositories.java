@@ -0,0 +1,82 @@
+package es.armoonys.origins.persistence;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.util.ClassUtils;
+
+import es.armoonys.origins.metrics.Histogram;
+import es.armoonys.origins.metrics.Metrics;
+
+/**
+ * Envoltorio de los repositorios que mide la latencia de cada operación (origins_db_call_seconds,
+ * etiquetada por repositorio y método). Se aplica después de inicializar el bean, así que el
+ * repositorio real recibe su configuración y su arranque antes de quedar envuelto.
+ */
+public class TimedRepositories implements BeanPostProcessor {
+	//******************* Tipos ************************//
+	// Manejador del proxy de un repositorio
+	private static final class Timing implements InvocationHandler {
+		final Object target;
+		final Class<?> repository;
+		final String label;
+		final Map<Method, Histogram> timers = new ConcurrentHashMap<>();
+
+		Timing(Object target, Class<?> repository, String label) {
+			this.target = target;
+			this.repository = repository;
+			this.label = label;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			// Solo se miden las operaciones del repositorio (no el ciclo de vida ni Object)
+			Histogram timer = method.getDeclaringClass() == repository
+					? timers.computeIfAbsent(method, m -> Metrics.timer("origins_db_call_seconds",
+							"Latencia de las operaciones de los repositorios", "repository", label, "method", m.getName()))
+					: null;
+
+			long start = System.nanoTime();
+			try {
+				return method.invoke(target, args);
+			} catch(InvocationTargetException e) {
+				throw e.getCause();
+			} finally {
+				if(timer != null) {
+					timer.recordNanos(System.nanoTime() - start);
+				}
+			}
+		}
+	}
+
+	//******************* Métodos ************************//
+	@Override
+	public Object postProcessAfterInitialization(Object bean, String beanName) {
+		if(bean instanceof UserRepository) {
+			return wrap(bean, UserRepository.class, "users");
+		}
+		if(bean instanceof MessageRepository) {
+			return wrap(bean, MessageRepository.class, "messages");
+		}
+		return bean;
+	}
+
+	/**
+	 * Método para envolver un repositorio conservando todas sus interfaces
+	 * (así se siguen invocando, p. ej., sus métodos de cierre)
+	 * @param bean -> Repositorio real
+	 * @param repository -> Interfaz del repositorio
+	 * @param label -> Etiqueta de las métricas
+	 * @return Proxy del repositorio
+	 */
+	private static Object wrap(Object bean, Class<?> repository, String label) {
+		Class<?>[] interfaces = ClassUtils.getAllInterfacesForClass(bean.getClass());
+		return Proxy.newProxyInstance(bean.getClass().getClassLoader(), interfaces,
+				new Timing(bean, repository, label));
+	}
+}
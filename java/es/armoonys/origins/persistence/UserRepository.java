@@ -0,0 +1,42 @@
+package es.armoonys.origins.persistence;
+
+import java.util.Map;
+
+import es.armoonys.origins.users.UserRecord;
+
+/**
+ * Almacén de usuarios. La implementación se elige con origins.persistence.backend
+ */
+public interface UserRepository {
+	/**
+	 * Método para obtener el mayor ID de usuario guardado
+	 * @return Mayor ID o 0 si no hay usuarios
+	 */
+	long maxId();
+	
+	/**
+	 * Método para buscar un usuario por su nombre
+	 * @param username -> Nombre del usuario
+	 * @return Usuario o null si no existe
+	 */
+	UserRecord findByUsername(String username);
+	
+	/**
+	 * Método para guardar un usuario nuevo
+	 * @param id -> ID del usuario
+	 * @param user -> Usuario
+	 */
+	void insert(long id, UserRecord user);
+	
+	/**
+	 * Método para guardar el estado de varios usuarios en un solo lote
+	 * @param statuses -> Estado de cada usuario por nombre
+	 */
+	void updateStatuses(Map<String, Boolean> statuses);
+	
+	/**
+	 * Método para marcar a todos los usuarios como desconectados
+	 * @return Número de usuarios que estaban marcados como conectados
+	 */
+	int resetStatuses();
+}
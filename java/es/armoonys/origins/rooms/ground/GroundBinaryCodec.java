@@ -0,0 +1,197 @@
+package es.armoonys.origins.rooms.ground;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.springframework.web.socket.WebSocketSession;
+
+import es.armoonys.origins.codec.Message;
+import es.armoonys.origins.rooms.ground.GroundMessages.PlayerInfo;
+import es.armoonys.origins.rooms.ground.GroundMessages.PointsInfo;
+import es.armoonys.origins.rooms.ground.GroundMessages.RoundState;
+import es.armoonys.origins.rooms.ground.GroundMessages.TakeDM;
+
+/**
+ * Codificación binaria de tamaño fijo del canal de partida (/groundM).
+ * Se negocia por conexión con el subprotocolo {@value #PROTOCOL}; sin él se usa JSON.
+ * Cada trama empieza por un byte con el código de operación y los enteros van en big-endian:
+ * <pre>
+ *  OP_PLAYERINFO   (0x01) i32 userId, i32 userVictim, u8 longitud + updateKey (UTF-8)
+ *  OP_POINTSINFO   (0x02) i32 userId, i32 updatedPoints
+ *  OP_TAKEDM       (0x03) i32 userTaken
+ *  OP_ROUNDSTATE   (0x04) cliente: vacío | servidor: i16 matterX, i16 matterY, i16 roundTime
+ *  OP_INITIALSTATE (0x05) i16 matterX, i16 matterY, i16 roundTime
+ *  OP_TIMER        (0x06) i16 timer
+ *  OP_ENDROUNDINFO (0x07) i32 winnerUser
+ *  OP_BATCH        (0x08) u16 número de tramas, y por cada una: u16 longitud + trama
+ * </pre>
+ */
+public final class GroundBinaryCodec {
+	//******************* Constantes ************************//
+	// Subprotocolo de la codificación binaria
+	public static final String PROTOCOL = "origins.bin.v1";
+	// Códigos de operación //
+	public static final byte OP_PLAYERINFO = 0x01;
+	public static final byte OP_POINTSINFO = 0x02;
+	public static final byte OP_TAKEDM = 0x03;
+	public static final byte OP_ROUNDSTATE = 0x04;
+	public static final byte OP_INITIALSTATE = 0x05;
+	public static final byte OP_TIMER = 0x06;
+	public static final byte OP_ENDROUNDINFO = 0x07;
+	public static final byte OP_BATCH = 0x08;
+	
+	//******************* Constructor ************************//
+	private GroundBinaryCodec() {
+	}
+	
+	//******************* Métodos ************************//
+	/**
+	 * Método para saber si una sesión negoció la codificación binaria
+	 * @param session -> Sesión del cliente
+	 * @return Verdadero si la sesión usa el subprotocolo binario
+	 */
+	public static boolean isBinary(WebSocketSession session) {
+		return PROTOCOL.equals(session.getAcceptedProtocol());
+	}
+	
+	// Métodos de codificación //
+	public static byte[] playerInfo(int userId, int userVictim, String updateKey) {
+		byte[] key = updateKey.getBytes(StandardCharsets.UTF_8);
+		int keyLength = Math.min(key.length, 255);
+		
+		ByteBuffer buf = ByteBuffer.allocate(1 + 4 + 4 + 1 + keyLength);
+		buf.put(OP_PLAYERINFO).putInt(userId).putInt(userVictim).put((byte) keyLength).put(key, 0, keyLength);
+		return buf.array();
+	}
+	
+	public static byte[] pointsInfo(int userId, int updatedPoints) {
+		return ByteBuffer.allocate(1 + 4 + 4).put(OP_POINTSINFO).putInt(userId).putInt(updatedPoints).array();
+	}
+	
+	public static byte[] takeDM(int userTaken) {
+		return ByteBuffer.allocate(1 + 4).put(OP_TAKEDM).putInt(userTaken).array();
+	}
+	
+	public static byte[] roundState(byte op, int matterX, int matterY, int roundTime) {
+		return ByteBuffer.allocate(1 + 2 + 2 + 2).put(op)
+				.putShort((short) matterX).putShort((short) matterY).putShort((short) roundTime).array();
+	}
+	
+	public static byte[] timer(int timer) {
+		return ByteBuffer.allocate(1 + 2).put(OP_TIMER).putShort((short) timer).array();
+	}
+	
+	public static byte[] endRound(int winnerUser) {
+		return ByteBuffer.allocate(1 + 4).put(OP_ENDROUNDINFO).putInt(winnerUser).array();
+	}
+	
+	/**
+	 * Método para agrupar varias tramas binarias en una sola
+	 * @param frames -> Tramas a agrupar
+	 * @param count -> Número de tramas del array a agrupar
+	 * @return Trama agrupada
+	 */
+	public static byte[] batch(byte[][] frames, int count) {
+		int size = 1 + 2;
+		for(int i = 0; i < count; i++) {
+			size += 2 + frames[i].length;
+		}
+		
+		ByteBuffer buf = ByteBuffer.allocate(size).put(OP_BATCH).putShort((short) count);
+		for(int i = 0; i < count; i++) {
+			buf.putShort((short) frames[i].length).put(frames[i]);
+		}
+		return buf.array();
+	}
+	
+	// Métodos de decodificación //
+	/**
+	 * Método para obtener el código de mensaje de una trama de cliente sin decodificarla
+	 * (no mueve la posición del buffer)
+	 * @param buf -> Contenido de la trama
+	 * @return Código del mensaje o null si el código de operación no es de cliente
+	 */
+	public static String codeOf(ByteBuffer buf) {
+		if(!buf.hasRemaining()) {
+			return null;
+		}
+		switch(buf.get(buf.position())) {
+			case OP_PLAYERINFO:
+				return "OK_PLAYERINFO";
+			case OP_POINTSINFO:
+				return "OK_POINTSINFO";
+			case OP_TAKEDM:
+				return "OK_TAKEDM";
+			case OP_ROUNDSTATE:
+				return "OK_ROUNDSTATE";
+			default:
+				return null;
+		}
+	}
+	
+	/**
+	 * Método para decodificar un mensaje binario de un cliente en su tipo de mensaje.
+	 * Una trama más corta de lo que exige su código de operación se trata como desconocida
+	 * @param buf -> Contenido de la trama
+	 * @return Mensaje decodificado o null si el código de operación no es de cliente o la trama está incompleta
+	 */
+	public static Message decode(ByteBuffer buf) {
+		if(!buf.hasRemaining()) {
+			return null;
+		}
+		switch(buf.get()) {
+			case OP_PLAYERINFO:
+				// Dos enteros y el prefijo de longitud de la tecla
+				if(buf.remaining() < 9) {
+					return null;
+				}
+				PlayerInfo playerInfo = new PlayerInfo();
+				playerInfo.code = "OK_PLAYERINFO";
+				playerInfo.userID = buf.getInt();
+				playerInfo.userVictim = buf.getInt();
+				playerInfo.updateKey = readString(buf);
+				return playerInfo.updateKey != null ? playerInfo : null;
+			case OP_POINTSINFO:
+				if(buf.remaining() < 8) {
+					return null;
+				}
+				PointsInfo pointsInfo = new PointsInfo();
+				pointsInfo.code = "OK_POINTSINFO";
+				pointsInfo.userID = buf.getInt();
+				pointsInfo.updatedPoints = buf.getInt();
+				return pointsInfo;
+			case OP_TAKEDM:
+				if(buf.remaining() < 4) {
+					return null;
+				}
+				TakeDM takeDM = new TakeDM();
+				takeDM.code = "OK_TAKEDM";
+				takeDM.userTaken = buf.getInt();
+				return takeDM;
+			case OP_ROUNDSTATE:
+				RoundState roundState = new RoundState();
+				roundState.code = "OK_ROUNDSTATE";
+				return roundState;
+			default:
+				return null;
+		}
+	}
+	
+	/**
+	 * Método para leer una cadena con prefijo de longitud de un byte
+	 * @param buf -> Buffer posicionado en el prefijo
+	 * @return Cadena leída o null si la trama no contiene la cadena completa
+	 */
+	public static String readString(ByteBuffer buf) {
+		if(!buf.hasRemaining()) {
+			return null;
+		}
+		int length = buf.get() & 0xFF;
+		if(buf.remaining() < length) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		buf.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
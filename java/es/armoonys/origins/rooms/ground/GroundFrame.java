@@ -0,0 +1,121 @@
+package es.armoonys.origins.rooms.ground;
+
+import java.util.function.Supplier;
+
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import es.armoonys.origins.net.Frame;
+
+/**
+ * Trama del canal de partida. Cada formato (JSON o binario) se codifica solo la primera vez
+ * que algún destinatario lo necesita. No es segura para varios hilos: se usa con el cerrojo de la partida.
+ */
+class GroundFrame implements Frame {
+	//******************* Variables específicas ************************//
+	private Supplier<ObjectNode> jsonSource;		// Generador del nodo JSON
+	private Supplier<byte[]> binarySource;			// Generador de la trama binaria
+	private TextMessage text;						// Trama JSON (codificada bajo demanda)
+	private byte[] binary;							// Trama binaria (codificada bajo demanda)
+	
+	//******************* Constructor ************************//
+	private GroundFrame(Supplier<ObjectNode> jsonSource, Supplier<byte[]> binarySource) {
+		this.jsonSource = jsonSource;
+		this.binarySource = binarySource;
+	}
+	
+	//******************* Métodos ************************//
+	@Override
+	public WebSocketMessage<?> forSession(WebSocketSession session) {
+		// La trama binaria se envuelve por destinatario (el envío consume la posición del buffer)
+		return GroundBinaryCodec.isBinary(session) ? new BinaryMessage(binary()) : text();
+	}
+	
+	/**
+	 * Método para obtener la trama JSON
+	 * @return Trama de texto
+	 */
+	TextMessage text() {
+		if(text == null) {
+			text = new TextMessage(jsonSource.get().toString());
+		}
+		return text;
+	}
+	
+	/**
+	 * Método para obtener la trama binaria
+	 * @return Bytes de la trama
+	 */
+	byte[] binary() {
+		if(binary == null) {
+			binary = binarySource.get();
+		}
+		return binary;
+	}
+	
+	// Factorías de tramas //
+	static GroundFrame playerInfo(int userId, int userVictim, String updateKey) {
+		return new GroundFrame(() -> {
+			ObjectNode newNode = JsonNodeFactory.instance.objectNode();
+			newNode.put("code", "OK_PLAYERINFO");
+			newNode.put("userId", userId);
+			newNode.put("userVictim", userVictim);
+			newNode.put("updateKey", updateKey);
+			return newNode;
+		}, () -> GroundBinaryCodec.playerInfo(userId, userVictim, updateKey));
+	}
+	
+	static GroundFrame pointsInfo(int userId, int updatedPoints) {
+		return new GroundFrame(() -> {
+			ObjectNode newNode = JsonNodeFactory.instance.objectNode();
+			newNode.put("code", "OK_POINTSINFO");
+			newNode.put("userId", userId);
+			newNode.put("updatedPoints", updatedPoints);
+			return newNode;
+		}, () -> GroundBinaryCodec.pointsInfo(userId, updatedPoints));
+	}
+	
+	static GroundFrame takeDM(int userTaken) {
+		return new GroundFrame(() -> {
+			ObjectNode newNode = JsonNodeFactory.instance.objectNode();
+			newNode.put("code", "OK_TAKEDM");
+			newNode.put("userTaken", userTaken);
+			return newNode;
+		}, () -> GroundBinaryCodec.takeDM(userTaken));
+	}
+	
+	static GroundFrame roundState(boolean initial, int matterX, int matterY, int roundTime) {
+		return new GroundFrame(() -> {
+			ObjectNode newNode = JsonNodeFactory.instance.objectNode();
+			newNode.put("code", initial ? "OK_INITIALSTATE" : "OK_ROUNDSTATE");
+			newNode.put("matterX", matterX);
+			newNode.put("matterY", matterY);
+			newNode.put("roundTime", roundTime);
+			return newNode;
+		}, () -> GroundBinaryCodec.roundState(initial ? GroundBinaryCodec.OP_INITIALSTATE : GroundBinaryCodec.OP_ROUNDSTATE,
+				matterX, matterY, roundTime));
+	}
+	
+	static GroundFrame timer(int timer) {
+		return new GroundFrame(() -> {
+			ObjectNode newNode = JsonNodeFactory.instance.objectNode();
+			newNode.put("code", "OK_TIMER");
+			newNode.put("timer", timer);
+			return newNode;
+		}, () -> GroundBinaryCodec.timer(timer));
+	}
+	
+	static GroundFrame endRound(int winnerUser) {
+		return new GroundFrame(() -> {
+			ObjectNode newNode = JsonNodeFactory.instance.objectNode();
+			newNode.put("code", "OK_ENDROUNDINFO");
+			newNode.put("winnerUser", winnerUser);
+			return newNode;
+		}, () -> GroundBinaryCodec.endRound(winnerUser));
+	}
+}
@@ -1,49 +1,76 @@
 package es.armoonys.origins.rooms.ground;
 
 import java.io.IOException;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Arrays;
+import java.util.List;
 
+import org.springframework.web.socket.BinaryMessage;
 import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.SubProtocolCapable;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
-import org.springframework.web.socket.handler.TextWebSocketHandler;
+import org.springframework.web.socket.handler.AbstractWebSocketHandler;
+import org.springframework.web.util.UriComponentsBuilder;
 
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
-public class GroundMService extends TextWebSocketHandler {
+import es.armoonys.origins.codec.Message;
+import es.armoonys.origins.codec.MessageCodec;
+import es.armoonys.origins.codec.MessageDispatcher;
+import es.armoonys.origins.codec.MessageHandler;
+import es.armoonys.origins.rooms.ground.GroundMessages.PlayerInfo;
+import es.armoonys.origins.rooms.ground.GroundMessages.PointsInfo;
+import es.armoonys.origins.rooms.ground.GroundMessages.RoundState;
+import es.armoonys.origins.rooms.ground.GroundMessages.TakeDM;
+
+public class GroundMService extends AbstractWebSocketHandler implements SubProtocolCapable {
+	//******************* Tipos ************************//
+	// Manejador de un mensaje de partida que recibe la partida ya resuelta
+	@FunctionalInterface
+	private interface MatchHandler<T extends Message> {
+		void handle(GroundMatch match, WebSocketSession session, T message) throws Exception;
+	}
+
 	//******************* Variables genéricas ************************//
-	// Sesiones del socket
-	private Map<String, WebSocketSession> sessions = new ConcurrentHashMap<>();
-	// Objeto para mapear los nodos JSON recibidos
-	private ObjectMapper mapper = new ObjectMapper();
-	//******************* Variables partida ************************//
-	private int matterPosX = 0;
-	private int matterPosY = 0;
-	private int roundTime = 0;
+	// Objeto para generar los nodos JSON enviados
+	private ObjectMapper mapper = MessageCodec.MAPPER;
+	// Tabla de despacho de mensajes por código (común a JSON y binario)
+	private MessageDispatcher dispatcher = new MessageDispatcher("/groundM")
+		// Caso: OK_PLAYERINFO -> Caso para notificar la actualización de la información del usuario
+		.on("OK_PLAYERINFO", PlayerInfo.class, inMatch((match, session, msg) ->
+			match.notifyPlayerUpdate(session, msg.userID, msg.userVictim, msg.updateKey)))
+		// Caso: OK_POINTSINFO -> Caso para notificar la actualización de la puntuación del usuario
+		.on("OK_POINTSINFO", PointsInfo.class, inMatch((match, session, msg) ->
+			match.notifyPointsUpdate(session, msg.userID, msg.updatedPoints)))
+		// Caso: OK_TAKEDM -> Caso para notificar la actualización de la materia oscura
+		.on("OK_TAKEDM", TakeDM.class, inMatch((match, session, msg) ->
+			match.notifyDarkMTaken(session, msg.userTaken)))
+		// Caso: OK_ROUNDSTATE -> Caso para notificar el cambio de ronda
+		.on("OK_ROUNDSTATE", RoundState.class, inMatch((match, session, msg) ->
+			match.playerRoundFinished()));
 	//******************* Otras variables ************************//
-	private int rIdx = 0;
-	private GroundRService roomObj;
-	private boolean busy = false;
-	//******************* Usuarios ************************//
-	private int connectedUsers = 0;
-	private int finishedUsers = 0;	
+	// Gestor de partidas de tierra
+	private GroundMatchManager matches;
+	// Subprotocolos admitidos (sin subprotocolo se usa JSON)
+	private static final List<String> PROTOCOLS = Arrays.asList(GroundBinaryCodec.PROTOCOL);
 
 	//******************* Constructor ************************//
-	public GroundMService(GroundRService grService) {
-		// TODO Auto-generated constructor stub
-		rIdx = getRandomIndex();
-		matterPosX = getMatterPosX();
-		matterPosY = getMatterPosY();
-		roundTime = 30;
-		
-		roomObj = grService;
+	public GroundMService(GroundMatchManager matches) {
+		this.matches = matches;
 	}
 	
 	//******************* Métodos ************************//
 	// Métodos sobrecargados //
+	/**
+	 * Método para indicar los subprotocolos que se pueden negociar en el handshake
+	 * @return Subprotocolos admitidos
+	 */
+	@Override
+	public List<String> getSubProtocols() {
+		return PROTOCOLS;
+	}
+	
 	/**
 	 * Método invocado cuando un cliente establece conexión con el socket
 	 * @param session -> Sesión del cliente
@@ -51,12 +78,26 @@ public class GroundMService extends TextWebSocketHandler {
 	 */
 	@Override
 	public void afterConnectionEstablished(WebSocketSession session) throws Exception {
-		// Inserción en el mapa de sesiones y actualización de usuarios conectados
-		sessions.put(session.getId(), session);	
-		connectedUsers++;
+		// Reanudación del hueco reservado (/groundM?resume=TOKEN&received=N)
+		String token = getQueryParam(session, "resume");
+		GroundMatch match = token != null ? matches.resume(session, token, getReceived(session)) : null;
+		int roomId = getRoomId(session);
+		
+		// Si la reanudación falló y el cliente no indicó sala, no hay partida a la que unirlo
+		if(token != null && match == null && roomId == -1) {
+			notifyAndCloseConnection(session, "Error_RESUMEFAILED");
+			return;
+		}
+		
+		// Asociación de la sesión a la partida de su sala
+		if(match == null) {
+			match = matches.bind(session, roomId);
+		}
 		
-		// Notificación de estado inicial de partida
-		notifyInitialState(session);
+		// Si la sala indicada no tiene una partida en curso
+		if(match == null) {
+			notifyAndCloseConnection(session, "Error_NOMATCH");
+		}
 	}
 	
 	/**
@@ -67,8 +108,8 @@ public class GroundMService extends TextWebSocketHandler {
 	 */
 	@Override
 	public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
-		// Actualización valor de variable controladora de partida
-		roomObj.matchStarted = false;
+		// Salida de la sesión de su partida (el hueco se reserva durante el periodo de gracia)
+		matches.unbind(session);
 	}
 	
 	/**
@@ -79,233 +120,97 @@ public class GroundMService extends TextWebSocketHandler {
 	 */
 	@Override
 	protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
-		// Creación de nodo de JSON del mensaje
-		JsonNode node = mapper.readTree(message.getPayload());
-		
-		// Obtención del código del mensaje
-		String codeMessage = node.get("code").asText();
-		
-		// Ejecución de código en función del código obtenido
-		switch(codeMessage) {
-			// Caso: OK_PLAYERINFO -> Caso para notificar la actualización de la información del usuario
-			case "OK_PLAYERINFO":
-				notifyPlayerUpdate(session, node);
-				break;
-			// Caso: OK_POINTSINFO -> Caso para notificar la actualización de la puntuación del usuario
-			case "OK_POINTSINFO":
-				notifyPointsUpdate(session, node);
-				break;
-			// Caso: OK_TAKEDM -> Caso para notificar la actualización de la materia oscura
-			case "OK_TAKEDM":
-				notifyDarkMTaken(session, node);
-				break;
-			// Caso: OK_ROUNDSTATE -> Caso para notificar el cambio de ronda
-			case "OK_ROUNDSTATE":
-				// Actualización de usuarios finalizados
-				finishedUsers++;
-				
-				// Si el número es igual al de conectados
-				if(finishedUsers == connectedUsers){
-					// Notificación del estado nuevo de ronda
-					notifyRoundState();
-					// Reinicio de variable
-					finishedUsers = 0;
-				}
-				break;
-		}
-	}
-	
-	// Métodos notificación //
-	/**
-	 * Método para notificar el estado inicial de la partida
-	 * @param session
-	 * @throws IOException
-	 */
-	private void notifyInitialState(WebSocketSession session) throws IOException {
-		// Generación del mensaje a enviar a un cliente específico
-		ObjectNode newNode = mapper.createObjectNode();
-		newNode.put("code", "OK_INITIALSTATE");
-		newNode.put("matterX", matterPosX);
-		newNode.put("matterY", matterPosY);
-		newNode.put("roundTime", roundTime);
-		
-		// Envío de la información al cliente específico
-		session.sendMessage(new TextMessage(newNode.toString()));
+		// Ejecución del manejador registrado para el código del mensaje (si el cliente no
+		// pertenece a ninguna partida, el manejador lo ignora)
+		dispatcher.dispatch(session, message.getPayload());
 	}
 	
 	/**
-	 * Método para notificar el estado nuevo de ronda
-	 * @param session
+	 * Método para gestionar los mensajes binarios (subprotocolo {@value GroundBinaryCodec#PROTOCOL})
+	 * @param session -> Sesión del cliente
+	 * @param message -> Mensaje recibido del cliente
 	 * @throws IOException
 	 */
-	private void notifyRoundState() throws IOException {
-		// Reinicio de variables
-		rIdx = getRandomIndex();
-		matterPosX = getMatterPosX();
-		matterPosY = getMatterPosY();
-		roundTime = 30;
-		
-		// Generación del mensaje a enviar a un cliente específico
-		ObjectNode newNode = mapper.createObjectNode();
-		newNode.put("code", "OK_ROUNDSTATE");
-		newNode.put("matterX", matterPosX);
-		newNode.put("matterY", matterPosY);
-		newNode.put("roundTime", roundTime);
-		
-		// Obtención de cada una de las sesiones en el socket
-		for(WebSocketSession participant : sessions.values()) {
-			// Envío de un mensaje con la información del jugador
-			participant.sendMessage(new TextMessage(newNode.toString()));
-		}
+	@Override
+	protected void handleBinaryMessage(WebSocketSession session, BinaryMessage message) throws Exception {
+		// Decodificación de los campos de tamaño fijo y ejecución del mismo manejador que en JSON
+		dispatcher.dispatch(session, GroundBinaryCodec.decode(message.getPayload()));
 	}
 	
+	// Métodos notificación //
 	/**
-	 * Método para notificar la nueva información del usuario que mandó el mensaje
+	 * Este método se llama cuando un jugador se conecta sin una partida en curso en su sala
+	 * (Error_NOMATCH) o con un token de reanudación no válido o caducado (Error_RESUMEFAILED)
 	 * @param session -> Sesión actual del jugador
-	 * @param node -> Nodo de información a mapear para mandarlo a los usuarios
+	 * @param code -> Código de error
 	 * @throws IOException
 	 */
-	private void notifyPlayerUpdate(WebSocketSession session, JsonNode node) throws IOException {
-		// Generación del mensaje a enviar al resto de clientes
+	private void notifyAndCloseConnection(WebSocketSession session, String code) throws IOException {
+		// Generación del mensaje a enviar a un cliente específico
 		ObjectNode newNode = mapper.createObjectNode();
-		newNode.put("code", "OK_PLAYERINFO");								// Código del mensaje
-		newNode.put("userId", node.get("userID").asInt());					// ID a asignar al cliente conectado
-		newNode.put("userVictim", node.get("userVictim").asInt());
-		newNode.put("updateKey", node.get("updateKey").asText());			// Tipo del jugador (elemento)
+		newNode.put("code", code);
 		
-		// Obtención de cada una de las sesiones en el socket
-		for(WebSocketSession participant : sessions.values()) {
-			// Si no es el mismo que mandó el mensaje
-			if(!participant.getId().equals(session.getId())) {
-				// Envío de un mensaje con la información del jugador
-				participant.sendMessage(new TextMessage(newNode.toString()));
-			}
-		}		
+		// Envío del mensaje a la sesión y cierre de la conexión
+		session.sendMessage(new TextMessage(newNode.toString()));
+		session.close();
 	}
 	
+	// Otros métodos //
 	/**
-	 * Método para notificar la nueva puntuación del usuario que mandó el mensaje
-	 * @param session -> Sesión actual del jugador
-	 * @param node -> Nodo de información a mapear para mandarlo a los usuarios
-	 * @throws IOException
+	 * Método para envolver un manejador de partida: la partida del cliente se obtiene una sola vez
+	 * y, si ya no tiene (p. ej. la sesión se cerró mientras tanto), el mensaje se ignora
+	 * @param handler -> Manejador que recibe la partida
+	 * @return Manejador para la tabla de despacho
 	 */
-	private void notifyPointsUpdate(WebSocketSession session, JsonNode node) throws IOException {
-		// Generación del mensaje a enviar al resto de clientes
-		ObjectNode newNode = mapper.createObjectNode();
-		newNode.put("code", "OK_POINTSINFO");										// Código del mensaje
-		newNode.put("userId", node.get("userID").asInt());							// ID a asignar al cliente conectado
-		newNode.put("updatedPoints", node.get("updatedPoints").asInt());			// Tipo del jugador (elemento)
-		
-		// Obtención de cada una de las sesiones en el socket
-		for(WebSocketSession participant : sessions.values()) {
-			// Si no es el mismo que mandó el mensaje
-			if(!participant.getId().equals(session.getId())) {
-				// Envío de un mensaje con la información del jugador
-				participant.sendMessage(new TextMessage(newNode.toString()));
+	private <T extends Message> MessageHandler<T> inMatch(MatchHandler<T> handler) {
+		return (session, msg) -> {
+			GroundMatch match = matches.getMatchOf(session);
+			if(match != null) {
+				handler.handle(match, session, msg);
 			}
-		}		
-	}
-	
-	/**
-	 * Método para notificar la actualización de la materia oscura
-	 * @param session -> Sesión actual del jugador
-	 * @param node -> Nodo de información a mapear para mandarlo a los usuarios
-	 * @throws IOException
-	 */
-	private void notifyDarkMTaken(WebSocketSession session, JsonNode node) throws IOException {
-        // Generación del mensaje a enviar al resto de clientes
-        ObjectNode newNode = mapper.createObjectNode();
-        newNode.put("code", "OK_TAKEDM");                                // Código del mensaje
-        newNode.put("userTaken", node.get("userTaken").asInt());            // ID a asignar al cliente conectado
-
-        // Obtención de cada una de las sesiones en el socket
-        for(WebSocketSession participant : sessions.values()) {
-            // Si no es el mismo que mandó el mensaje
-            if(!participant.getId().equals(session.getId())) {
-                // Envío de un mensaje con la información del jugador
-                participant.sendMessage(new TextMessage(newNode.toString()));
-            }
-        }
-    }
-	
-	/**
-	 * Método para notificar el final de ronda
-	 * @param session -> Sesión actual del jugador
-	 * @param node -> Nodo de información a mapear para mandarlo a los usuarios
-	 * @param winnerID -> ID del ganador de la ronda
-	 * @throws IOException
-	 */
-	public void notifyEndRound(WebSocketSession session, JsonNode node, int winnerID) throws IOException {
-		// Generación del mensaje a enviar al resto de clientes
-		ObjectNode newNode = mapper.createObjectNode();
-		newNode.put("code", "OK_ENDROUNDINFO");
-		newNode.put("winnerUser", winnerID);
-		
-		// Envío de la información al cliente
-		session.sendMessage(new TextMessage(newNode.toString()));
+		};
 	}
 	
-
-	/**
-	 * Método para notificar la actualización de tiempo a los usuarios
-	 * @param session -> Sesión actual del jugador
-	 * @param node -> Nodo de información a mapear para mandarlo a los usuarios
-	 * @throws IOException
-	 */
-	private void notifyTimeUpdate() throws IOException {
-        while(busy);
-        
-        busy = true;
-		
-		// Generación del mensaje a enviar al resto de clientes
-        ObjectNode newNode = mapper.createObjectNode();
-        newNode.put("code", "OK_TIMER");
-        newNode.put("timer", roundTime);
-
-        for(WebSocketSession participant : sessions.values()) {
-        	// Envío de un mensaje con la información del jugador
-            participant.sendMessage(new TextMessage(newNode.toString()));
-        }
-
-        busy = false;
-    }
-	
-	
-	
-	// Otros métodos //
 	/**
-	 * Método para calcular índice aleatorio empleado para obtener la posición de la materia oscura
-	 * @return Índice aleatorio para la posición de la materia oscura
+	 * Método para obtener el ID de sala indicado por el cliente al conectarse (/groundM?roomId=N)
+	 * @param session -> Sesión del cliente
+	 * @return ID de la sala o -1 si no se indicó
 	 */
-	private int getRandomIndex() {
-		// Inicialización y valor del índice aleatorio
-		int i = (int) Math.floor(Math.random() * 4);
-		
-		// Devolución del índice
-		return i;
+	static int getRoomId(WebSocketSession session) {
+		// Obtención del parámetro de la consulta
+		String roomId = getQueryParam(session, "roomId");
+		try {
+			return roomId != null ? Integer.parseInt(roomId) : -1;
+		} catch(NumberFormatException e) {
+			return -1;
+		}
 	}
 	
 	/**
-	 * Método para obtener la posX de la materia oscura
-	 * @return Posición X de la materia oscura
+	 * Método para obtener el número de tramas de partida que el cliente indica haber recibido al reanudar
+	 * @param session -> Sesión del cliente
+	 * @return Tramas recibidas o -1 si no se indicó (se resincroniza con el estado actual)
 	 */
-	private int getMatterPosX() {
-		// Inicialización de valores en X
-		int[] allX = {200, 400, 530, 400};
-		
-		// Devolución de valor
-		return allX[rIdx];
+	static long getReceived(WebSocketSession session) {
+		String received = getQueryParam(session, "received");
+		try {
+			return received != null ? Long.parseLong(received) : -1;
+		} catch(NumberFormatException e) {
+			return -1;
+		}
 	}
 	
 	/**
-	 * Método para obtener la posY de la materia oscura
-	 * @return Posición Y de la materia oscura
+	 * Método para obtener un parámetro de la consulta de la URI de conexión
+	 * @param session -> Sesión del cliente
+	 * @param name -> Nombre del parámetro
+	 * @return Valor o null si no se indicó
 	 */
-	private int getMatterPosY() {
-		// Inicialización de valores en Y
-		int[] allY = {500, 120, 460, 530};
-		
-		// Devolución de valor
-		return allY[rIdx];
+	static String getQueryParam(WebSocketSession session, String name) {
+		// Si la sesión no tiene URI
+		if(session.getUri() == null) {
+			return null;
+		}
+		return UriComponentsBuilder.fromUri(session.getUri()).build().getQueryParams().getFirst(name);
 	}
-}
\ No newline at end of file
+}
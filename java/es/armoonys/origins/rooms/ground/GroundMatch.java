@@ -0,0 +1,546 @@
+package es.armoonys.origins.rooms.ground;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import es.armoonys.origins.net.Broadcaster;
+import es.armoonys.origins.sched.GameScheduler;
+import es.armoonys.origins.sched.TimingWheel;
+
+public class GroundMatch {
+	//******************* Variables genéricas ************************//
+	private static final Logger log = LoggerFactory.getLogger(GroundMatch.class);
+	// Jugadores conectados por ID de sesión
+	private Map<String, GroundPlayer> sessions = new ConcurrentHashMap<>();
+	// Todos los jugadores de la partida (también los desconectados en periodo de gracia)
+	private List<GroundPlayer> players = new ArrayList<>();
+	// Jugadores por token de reanudación
+	private Map<String, GroundPlayer> tokens = new ConcurrentHashMap<>();
+	//******************* Variables partida ************************//
+	private final int roomId;			// ID de la sala a la que pertenece la partida
+	private final long generation;		// Número de la partida dentro de la sala
+	private boolean ended = false;		// ¿La partida ha finalizado?
+	private int matterPosX = 0;
+	private int matterPosY = 0;
+	private int roundTime = 0;
+	private long roundEndsAt = 0;				// Instante (nanoTime) en el que acaba la ronda
+	public static final int ROUND_TIME = 30;	// Duración de una ronda en segundos
+	//******************* Otras variables ************************//
+	private int rIdx = 0;
+	private ScheduledFuture<?> tickTask;		// Tick de simulación de la partida
+	private TimingWheel timeouts;				// Rueda de plazos compartida
+	private TimingWheel.Timeout roundTimeout;	// Plazo de fin de la ronda en curso
+	private GroundUpdateBatch updates = new GroundUpdateBatch();	// Actualizaciones de la ventana de tick
+	private final int replayFrames;				// Tramas guardadas por jugador para reenviar al reanudar
+	//******************* Usuarios ************************//
+	private int connectedUsers = 0;
+	private int finishedUsers = 0;
+	
+	//******************* Constructor ************************//
+	public GroundMatch(int roomId, long generation, int replayFrames) {
+		this.roomId = roomId;
+		this.generation = generation;
+		this.replayFrames = replayFrames;
+		
+		rIdx = getRandomIndex();
+		matterPosX = getMatterPosX();
+		matterPosY = getMatterPosY();
+		roundTime = ROUND_TIME;
+		roundEndsAt = System.nanoTime() + TimeUnit.SECONDS.toNanos(ROUND_TIME);
+	}
+	
+	//******************* Métodos ************************//
+	// Métodos de ciclo de vida //
+	/**
+	 * Método para arrancar el tick de simulación de la partida en el planificador compartido
+	 * y el plazo de la primera ronda en la rueda de plazos
+	 * @param scheduler -> Planificador compartido
+	 * @param timeouts -> Rueda de plazos compartida
+	 * @param tickMs -> Periodo del tick en milisegundos
+	 */
+	synchronized void start(GameScheduler scheduler, TimingWheel timeouts, long tickMs) {
+		this.timeouts = timeouts;
+		roundEndsAt = System.nanoTime() + TimeUnit.SECONDS.toNanos(ROUND_TIME);
+		roundTimeout = timeouts.newTimeout(this::roundExpired, TimeUnit.SECONDS.toMillis(ROUND_TIME));
+		tickTask = scheduler.scheduleTick(this::tick, tickMs, "partida " + roomId);
+	}
+	
+	/**
+	 * Vencimiento del plazo de la ronda (en el hilo de la rueda): la ronda se agota aunque
+	 * algún jugador no haya mandado OK_ROUNDSTATE, y reaparece la materia oscura
+	 */
+	private synchronized void roundExpired() {
+		// Si la partida finalizó o la ronda se adelantó mientras esperaba el cerrojo
+		if(ended || roundTimeout == null || !roundTimeout.isExpired()) {
+			return;
+		}
+		
+		try {
+			notifyRoundState();
+		} catch(IOException e) {
+			log.warn("Error al agotar la ronda de la partida {}: {}", roomId, e.getMessage());
+		}
+	}
+	
+	/**
+	 * Tick de simulación: envía las actualizaciones agrupadas y notifica el temporizador
+	 * cada segundo (el fin de ronda lo marca su plazo en la rueda)
+	 */
+	synchronized void tick() {
+		// Si la partida ya finalizó
+		if(ended) {
+			return;
+		}
+		
+		// Envío agrupado de las actualizaciones recibidas durante el tick
+		flushUpdates();
+		
+		long remaining = Math.max(0, roundEndsAt - System.nanoTime());
+		
+		// Si cambió el segundo mostrado, se notifica el temporizador
+		int seconds = (int) TimeUnit.NANOSECONDS.toSeconds(remaining + TimeUnit.SECONDS.toNanos(1) - 1);
+		if(seconds != roundTime) {
+			roundTime = seconds;
+			notifyTimeUpdate();
+		}
+	}
+	
+	/**
+	 * Método para insertar un cliente en la partida
+	 * @param session -> Sesión del cliente
+	 * @return Verdadero si el cliente entró (falso si la partida ya finalizó)
+	 * @throws IOException
+	 */
+	public synchronized boolean join(WebSocketSession session) throws IOException {
+		// Si la partida ya finalizó
+		if(ended) {
+			return false;
+		}
+		
+		// Creación del hueco del jugador y actualización de usuarios conectados
+		GroundPlayer player = new GroundPlayer(session, replayFrames);
+		sessions.put(session.getId(), player);
+		players.add(player);
+		tokens.put(player.token, player);
+		connectedUsers++;
+		
+		// Envío del token de reanudación y del estado inicial de partida
+		notifyConnection(player, "OK_MATCHCONN", 0, 0);
+		notifyInitialState(player);
+		return true;
+	}
+	
+	/**
+	 * Método para sacar a un cliente de la partida
+	 * @param session -> Sesión del cliente cerrado
+	 * @return Verdadero si la partida quedó vacía y finalizó
+	 */
+	public synchronized boolean leave(WebSocketSession session) {
+		// Si la sesión no pertenece a la partida
+		GroundPlayer player = sessions.remove(session.getId());
+		if(player == null) {
+			return false;
+		}
+		return remove(player);
+	}
+	
+	/**
+	 * Método para reservar el hueco de un cliente desconectado durante el periodo de gracia.
+	 * Las tramas de la partida se le siguen guardando para reenviárselas al reanudar
+	 * @param session -> Sesión del cliente cerrado
+	 * @return Token con el que se puede reanudar, o null si la sesión no pertenece a la partida
+	 */
+	public synchronized String suspend(WebSocketSession session) {
+		GroundPlayer player = sessions.remove(session.getId());
+		if(player == null) {
+			return null;
+		}
+		player.session = null;
+		return player.token;
+	}
+	
+	/**
+	 * Método para liberar el hueco de un jugador que no volvió a tiempo
+	 * @param token -> Token de reanudación del hueco
+	 * @return Verdadero si la partida quedó vacía y finalizó
+	 */
+	public synchronized boolean expire(String token) {
+		// Si el jugador ya reanudó (el token cambia) o sigue conectado
+		GroundPlayer player = tokens.get(token);
+		if(player == null || player.session != null) {
+			return false;
+		}
+		return remove(player);
+	}
+	
+	/**
+	 * Método para reanudar el hueco de un jugador con una sesión nueva. Si las tramas que no
+	 * recibió siguen guardadas se le reenvían; si no, se le manda el estado actual de la ronda.
+	 * Si el hueco sigue asignado a la sesión anterior (conexión medio abierta), la sesión nueva
+	 * la sustituye y la anterior se cierra
+	 * @param token -> Token de reanudación
+	 * @param session -> Sesión nueva del cliente
+	 * @param received -> Tramas de partida que indica haber recibido el cliente
+	 * @return Verdadero si se reanudó el hueco
+	 * @throws IOException
+	 */
+	public synchronized boolean resume(String token, WebSocketSession session, long received) throws IOException {
+		// Si el token no es válido o la partida finalizó
+		GroundPlayer player = tokens.get(token);
+		if(player == null || ended) {
+			return false;
+		}
+		
+		// Sesión anterior del hueco (null si estaba reservado)
+		WebSocketSession stale = player.session;
+		if(stale != null) {
+			sessions.remove(stale.getId());
+		}
+		
+		// Asociación de la sesión nueva y renovación del token (cada token sirve una sola vez)
+		tokens.remove(token);
+		player.token = ResumeToken.next();
+		tokens.put(player.token, player);
+		player.session = session;
+		sessions.put(session.getId(), player);
+		
+		// Reenvío de las tramas perdidas (solo si el formato no cambió y siguen en el búfer)
+		boolean binary = GroundBinaryCodec.isBinary(session);
+		long count = player.sent.getCount();
+		if(binary == player.binary && player.sent.canReplayFrom(received)) {
+			notifyConnection(player, "OK_MATCHRESUMED", received, count - received);
+			for(long i = received; i < count; i++) {
+				Broadcaster.send(session, player.sent.get(i));
+			}
+		} else {
+			// Resincronización: las tramas anteriores ya no sirven y se manda el estado actual
+			player.binary = binary;
+			player.sent.reset();
+			notifyConnection(player, "OK_MATCHRESUMED", count, 0);
+			notifyInitialState(player);
+		}
+		ResumeToken.closeReplaced(stale);
+		return true;
+	}
+	
+	/**
+	 * Método para obtener el token de reanudación vigente de una sesión
+	 * @param session -> Sesión del cliente
+	 * @return Token o null si la sesión no pertenece a la partida
+	 */
+	public String tokenOf(WebSocketSession session) {
+		GroundPlayer player = sessions.get(session.getId());
+		return player != null ? player.token : null;
+	}
+	
+	/**
+	 * Método para sacar definitivamente a un jugador de la partida
+	 * @param player -> Jugador
+	 * @return Verdadero si la partida quedó vacía y finalizó
+	 */
+	private boolean remove(GroundPlayer player) {
+		players.remove(player);
+		tokens.remove(player.token);
+		
+		// Actualización de usuarios conectados
+		connectedUsers--;
+		
+		// Si la partida se quedó sin jugadores, finaliza
+		if(connectedUsers == 0) {
+			stop();
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Método para finalizar la partida y detener su tick y su plazo de ronda
+	 * (también cuando la sala ya dio la partida por acabada y empezó otra)
+	 */
+	synchronized void stop() {
+		ended = true;
+		if(tickTask != null) {
+			tickTask.cancel(false);
+		}
+		if(roundTimeout != null) {
+			roundTimeout.cancel();
+		}
+	}
+	
+	/**
+	 * Método invocado cuando un jugador indica que ha acabado la ronda.
+	 * El plazo de la ronda es quien la agota; si todos los jugadores la dan por acabada antes, se adelanta
+	 * @throws IOException
+	 */
+	public synchronized void playerRoundFinished() throws IOException {
+		// Actualización de usuarios finalizados
+		finishedUsers++;
+		
+		// Si el número es igual al de conectados
+		if(finishedUsers >= connectedUsers){
+			// Notificación del estado nuevo de ronda
+			notifyRoundState();
+			// Reinicio de variable
+			finishedUsers = 0;
+		}
+	}
+	
+	// Métodos notificación //
+	/**
+	 * Método para notificar el estado inicial de la partida
+	 * @param player -> Jugador destinatario
+	 */
+	private void notifyInitialState(GroundPlayer player) {
+		// Generación del mensaje a enviar a un cliente específico
+		GroundFrame frame = GroundFrame.roundState(true, matterPosX, matterPosY, roundTime);
+		
+		// Envío de la información al cliente específico (en su formato)
+		deliver(player, frame);
+	}
+	
+	/**
+	 * Método para mandar al jugador su token de reanudación (mensaje de control en JSON: no se
+	 * numera ni se guarda para reenviar)
+	 * @param player -> Jugador destinatario
+	 * @param code -> OK_MATCHCONN al entrar u OK_MATCHRESUMED al reanudar
+	 * @param sequence -> Tramas que el cliente debe dar por recibidas antes de las siguientes
+	 * @param replayed -> Tramas que se le reenvían a continuación
+	 * @throws IOException
+	 */
+	private void notifyConnection(GroundPlayer player, String code, long sequence, long replayed) throws IOException {
+		ObjectNode newNode = JsonNodeFactory.instance.objectNode();
+		newNode.put("code", code);
+		newNode.put("roomId", roomId);
+		newNode.put("resumeToken", player.token);
+		newNode.put("sequence", sequence);
+		newNode.put("replayed", replayed);
+		player.session.sendMessage(new TextMessage(newNode.toString()));
+	}
+	
+	/**
+	 * Método para notificar el estado nuevo de ronda
+	 * @throws IOException
+	 */
+	private void notifyRoundState() throws IOException {
+		// Las actualizaciones de la ronda anterior se envían antes del cambio de ronda
+		flushUpdates();
+		
+		// Reinicio de variables
+		rIdx = getRandomIndex();
+		matterPosX = getMatterPosX();
+		matterPosY = getMatterPosY();
+		roundTime = ROUND_TIME;
+		roundEndsAt = System.nanoTime() + TimeUnit.SECONDS.toNanos(ROUND_TIME);
+		finishedUsers = 0;
+		
+		// Nuevo plazo de ronda (el anterior se cancela si la ronda se adelantó)
+		if(timeouts != null) {
+			if(roundTimeout != null) {
+				roundTimeout.cancel();
+			}
+			roundTimeout = timeouts.newTimeout(this::roundExpired, TimeUnit.SECONDS.toMillis(ROUND_TIME));
+		}
+		
+		// Envío del mensaje (codificado una vez por formato) a todos los jugadores de la partida
+		broadcast(GroundFrame.roundState(false, matterPosX, matterPosY, roundTime));
+	}
+	
+	/**
+	 * Método para enviar a cada jugador, en una sola trama, las actualizaciones del resto
+	 * acumuladas durante el tick
+	 */
+	private void flushUpdates() {
+		// Si no hubo actualizaciones en la ventana
+		if(updates.isEmpty()) {
+			return;
+		}
+		
+		// Tramas comunes (JSON y binaria) para los jugadores que no mandaron nada
+		WebSocketMessage<?> commonText = null;
+		byte[] commonBinary = null;
+		
+		// También se preparan para los jugadores desconectados, que las recibirán al reanudar
+		for(GroundPlayer player : players) {
+			String id = player.session != null ? player.session.getId() : null;
+			boolean binary = player.binary;
+			
+			// Trama propia (sin sus actualizaciones) o la común de su formato
+			WebSocketMessage<?> frame;
+			if(id != null && updates.hasSender(id)) {
+				frame = updates.frameFor(id, binary);
+				if(frame == null) {
+					continue;
+				}
+			} else if(binary) {
+				if(commonBinary == null) {
+					commonBinary = ((BinaryMessage) updates.frameFor(null, true)).getPayload().array();
+				}
+				frame = new BinaryMessage(commonBinary);
+			} else {
+				if(commonText == null) {
+					commonText = updates.frameFor(null, false);
+				}
+				frame = commonText;
+			}
+			
+			deliver(player, frame);
+		}
+		
+		updates.clear();
+	}
+	
+	/**
+	 * Método para notificar la nueva información del usuario que mandó el mensaje
+	 * @param session -> Sesión actual del jugador
+	 * @param userId -> ID del jugador
+	 * @param userVictim -> ID de la víctima
+	 * @param updateKey -> Tecla/acción actualizada
+	 */
+	public synchronized void notifyPlayerUpdate(WebSocketSession session, int userId, int userVictim, String updateKey) {
+		// Se agrupa con el resto del tick como evento: lleva una transición de tecla (pulsar y soltar
+		// en el mismo tick son dos cambios que el resto debe ver), así que nunca se sustituye
+		updates.addEvent(session.getId(), "OK_PLAYERINFO", GroundFrame.playerInfo(userId, userVictim, updateKey));
+	}
+	
+	/**
+	 * Método para notificar la nueva puntuación del usuario que mandó el mensaje
+	 * @param session -> Sesión actual del jugador
+	 * @param userId -> ID del jugador
+	 * @param updatedPoints -> Puntuación actualizada
+	 */
+	public synchronized void notifyPointsUpdate(WebSocketSession session, int userId, int updatedPoints) {
+		// Se agrupa con el resto del tick (la puntuación es absoluta: solo importa la última)
+		updates.addState(session.getId(), "OK_POINTSINFO", GroundFrame.pointsInfo(userId, updatedPoints));
+	}
+	
+	/**
+	 * Método para notificar la actualización de la materia oscura
+	 * @param session -> Sesión actual del jugador
+	 * @param userTaken -> ID del jugador que cogió la materia oscura
+	 */
+	public synchronized void notifyDarkMTaken(WebSocketSession session, int userTaken) {
+        // Se agrupa con el resto del tick como evento (nunca se descarta ni se reordena)
+        updates.addEvent(session.getId(), "OK_TAKEDM", GroundFrame.takeDM(userTaken));
+    }
+	
+	/**
+	 * Método para notificar el final de ronda
+	 * @param session -> Sesión actual del jugador
+	 * @param winnerID -> ID del ganador de la ronda
+	 * @throws IOException
+	 */
+	public synchronized void notifyEndRound(WebSocketSession session, int winnerID) throws IOException {
+		// Envío de la información al cliente (en su formato)
+		GroundPlayer player = sessions.get(session.getId());
+		if(player != null) {
+			deliver(player, GroundFrame.endRound(winnerID));
+		}
+	}
+	
+
+	/**
+	 * Método para notificar la actualización de tiempo a los usuarios (invocado desde el tick)
+	 */
+	private void notifyTimeUpdate() {
+        // Envío del mensaje (codificado una vez por formato) a todos los jugadores de la partida
+        broadcast(GroundFrame.timer(roundTime));
+    }
+	
+	/**
+	 * Método para enviar una trama a todos los jugadores (codificada una vez por formato)
+	 * @param frame -> Trama a enviar
+	 */
+	private void broadcast(GroundFrame frame) {
+		for(GroundPlayer player : players) {
+			deliver(player, frame);
+		}
+	}
+	
+	/**
+	 * Método para enviar una trama a un jugador en su formato
+	 * @param player -> Jugador destinatario
+	 * @param frame -> Trama a enviar
+	 */
+	private void deliver(GroundPlayer player, GroundFrame frame) {
+		deliver(player, player.binary ? new BinaryMessage(frame.binary()) : frame.text());
+	}
+	
+	/**
+	 * Método para enviar una trama ya codificada a un jugador, guardándola para reenviarla
+	 * (si está desconectado solo se guarda)
+	 * @param player -> Jugador destinatario
+	 * @param message -> Trama a enviar
+	 */
+	private void deliver(GroundPlayer player, WebSocketMessage<?> message) {
+		player.sent.add(message);
+		if(player.isConnected()) {
+			Broadcaster.send(player.session, message);
+		}
+	}
+	
+	// Getters //
+	/**
+	 * Método para obtener el ID de la sala de la partida
+	 * @return ID de la sala
+	 */
+	public int getRoomId() {
+		return roomId;
+	}
+	
+	public long getGeneration() {
+		return generation;
+	}
+	
+	// Otros métodos //
+	/**
+	 * Método para calcular índice aleatorio empleado para obtener la posición de la materia oscura
+	 * @return Índice aleatorio para la posición de la materia oscura
+	 */
+	private int getRandomIndex() {
+		// Inicialización y valor del índice aleatorio
+		int i = ThreadLocalRandom.current().nextInt(4);
+		
+		// Devolución del índice
+		return i;
+	}
+	
+	/**
+	 * Método para obtener la posX de la materia oscura
+	 * @return Posición X de la materia oscura
+	 */
+	private int getMatterPosX() {
+		// Inicialización de valores en X
+		int[] allX = {200, 400, 530, 400};
+		
+		// Devolución de valor
+		return allX[rIdx];
+	}
+	
+	/**
+	 * Método para obtener la posY de la materia oscura
+	 * @return Posición Y de la materia oscura
+	 */
+	private int getMatterPosY() {
+		// Inicialización de valores en Y
+		int[] allY = {500, 120, 460, 530};
+		
+		// Devolución de valor
+		return allY[rIdx];
+	}
+}
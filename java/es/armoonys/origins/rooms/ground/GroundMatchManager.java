@@ -0,0 +1,213 @@
+package es.armoonys.origins.rooms.ground;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.web.socket.WebSocketSession;
+
+import es.armoonys.origins.metrics.Metrics;
+import es.armoonys.origins.sched.GameScheduler;
+import es.armoonys.origins.sched.TimingWheel;
+
+/**
+ * Gestor de partidas de tierra. Mantiene una partida independiente por sala (la de la partida
+ * que la sala tiene en curso) y asocia cada sesión de /groundM a la partida de su sala.
+ * Si una sesión se cae, su hueco se reserva durante el periodo de gracia bajo un token de
+ * reanudación (/groundM?resume=TOKEN&received=N) en lugar de sacar al jugador de la partida.
+ */
+public class GroundMatchManager {
+	//******************* Variables específicas ************************//
+	// Partidas en curso por ID de sala
+	private Map<Integer, GroundMatch> matches = new ConcurrentHashMap<>();
+	// Partida de cada sesión conectada
+	private Map<String, GroundMatch> sessionMatches = new ConcurrentHashMap<>();
+	// Partida de cada token de reanudación vigente
+	private Map<String, GroundMatch> resumable = new ConcurrentHashMap<>();
+	// Registro de salas de tierra
+	private GroundRoomRegistry rooms;
+	// Planificador compartido de los ticks de las partidas
+	private GameScheduler scheduler;
+	// Rueda de los plazos de ronda y de los huecos reservados
+	private TimingWheel timeouts;
+	// Periodo del tick de simulación en milisegundos
+	@Value("${origins.ground.tick-ms:50}")
+	private long tickMs = 50;
+	// Reanudación //
+	@Value("${origins.ground.reconnect-grace-ms:15000}")
+	private long graceMs = 15000;				// Tiempo que se reserva el hueco (0 = sin reserva)
+	@Value("${origins.ground.replay-frames:256}")
+	private int replayFrames = 256;				// Tramas guardadas por jugador para reenviar
+	// Métricas //
+	private LongAdder resumed = Metrics.counter("origins_resumes_total", 
+			"Reanudaciones de sesión por resultado", "endpoint", "/groundM", "result", "ok");
+	private LongAdder resumeFailed = Metrics.counter("origins_resumes_total", 
+			"Reanudaciones de sesión por resultado", "endpoint", "/groundM", "result", "failed");
+	private LongAdder expired = Metrics.counter("origins_slots_expired_total", 
+			"Huecos liberados por no reanudarse a tiempo", "endpoint", "/groundM");
+	
+	//******************* Constructor ************************//
+	public GroundMatchManager(GroundRoomRegistry rooms, GameScheduler scheduler, TimingWheel timeouts) {
+		this.rooms = rooms;
+		this.scheduler = scheduler;
+		this.timeouts = timeouts;
+	}
+	
+	//******************* Métodos ************************//
+	/**
+	 * Método para asociar una sesión a la partida de su sala (creándola si es el primer jugador)
+	 * @param session -> Sesión del cliente
+	 * @param roomId -> ID de la sala indicada por el cliente
+	 * @return Partida asociada o null si la sala no tiene una partida en curso
+	 * @throws IOException
+	 */
+	public GroundMatch bind(WebSocketSession session, int roomId) throws IOException {
+		// Si la sala no existe o no ha comenzado la partida
+		GroundRoom room = rooms.getRoom(roomId);
+		long generation = room != null ? room.getMatchGeneration() : 0;
+		if(generation == 0) {
+			return null;
+		}
+		
+		// Obtención (o creación) de la partida e inserción de la sesión. Una partida anterior de
+		// la sala (ya acabada en el lobby) no se reutiliza: se detiene y se sustituye
+		while(true) {
+			GroundMatch match = matches.compute(roomId, (id, current) -> {
+				if(current != null && current.getGeneration() == generation) {
+					return current;
+				}
+				if(current != null) {
+					current.stop();
+				}
+				return createMatch(id, generation);
+			});
+			if(match.join(session)) {
+				sessionMatches.put(session.getId(), match);
+				resumable.put(match.tokenOf(session), match);
+				return match;
+			}
+			
+			// La partida finalizó mientras tanto: se descarta y se reintenta
+			matches.remove(roomId, match);
+		}
+	}
+	
+	/**
+	 * Método para reanudar el hueco de un jugador desconectado con una sesión nueva
+	 * @param session -> Sesión nueva del cliente
+	 * @param token -> Token de reanudación indicado por el cliente
+	 * @param received -> Tramas de partida que indica haber recibido el cliente
+	 * @return Partida reanudada o null si el token no es válido o ya caducó
+	 * @throws IOException
+	 */
+	public GroundMatch resume(WebSocketSession session, String token, long received) throws IOException {
+		// El token sigue vigente hasta que la reanudación tiene éxito (si no, su plazo lo libera)
+		GroundMatch match = resumable.get(token);
+		if(match == null || !match.resume(token, session, received)) {
+			resumeFailed.increment();
+			return null;
+		}
+		
+		resumable.remove(token, match);
+		sessionMatches.put(session.getId(), match);
+		resumable.put(match.tokenOf(session), match);
+		resumed.increment();
+		return match;
+	}
+	
+	/**
+	 * Método para sacar una sesión de su partida. Si hay periodo de gracia, el hueco se reserva
+	 * y solo se libera (finalizando la partida si quedó vacía) cuando el periodo vence
+	 * @param session -> Sesión del cliente cerrado
+	 */
+	public void unbind(WebSocketSession session) {
+		// Obtención de la partida de la sesión
+		GroundMatch match = sessionMatches.remove(session.getId());
+		if(match == null) {
+			return;
+		}
+		
+		// Reserva del hueco hasta que venza el periodo de gracia
+		if(graceMs > 0) {
+			String token = match.suspend(session);
+			if(token != null) {
+				timeouts.newTimeout(() -> expire(match, token), graceMs);
+			}
+			return;
+		}
+		
+		String token = match.tokenOf(session);
+		if(token != null) {
+			resumable.remove(token);
+		}
+		if(match.leave(session)) {
+			finish(match);
+		}
+	}
+	
+	/**
+	 * Método para liberar un hueco reservado que no se reanudó a tiempo
+	 * @param match -> Partida del hueco
+	 * @param token -> Token de reanudación del hueco
+	 */
+	private void expire(GroundMatch match, String token) {
+		// Si ya se reanudó, el token dejó de estar vigente
+		if(!resumable.remove(token, match)) {
+			return;
+		}
+		
+		expired.increment();
+		if(match.expire(token)) {
+			finish(match);
+		}
+	}
+	
+	/**
+	 * Método para retirar una partida que quedó vacía y volver a abrir su sala
+	 * @param match -> Partida finalizada
+	 */
+	private void finish(GroundMatch match) {
+		matches.remove(match.getRoomId(), match);
+		rooms.endMatch(match.getRoomId(), match.getGeneration());
+	}
+	
+	/**
+	 * Método para crear la partida de una sala y arrancar su tick
+	 * @param roomId -> ID de la sala
+	 * @param generation -> Número de la partida dentro de la sala
+	 * @return Partida nueva
+	 */
+	private GroundMatch createMatch(int roomId, long generation) {
+		GroundMatch match = new GroundMatch(roomId, generation, replayFrames);
+		match.start(scheduler, timeouts, tickMs);
+		return match;
+	}
+	
+	// Getters //
+	/**
+	 * Método para obtener la partida a la que pertenece una sesión
+	 * @param session -> Sesión del cliente
+	 * @return Partida o null si la sesión no está en ninguna
+	 */
+	public GroundMatch getMatchOf(WebSocketSession session) {
+		return sessionMatches.get(session.getId());
+	}
+	
+	/**
+	 * Método para obtener el número de partidas en curso
+	 * @return Número de partidas en curso
+	 */
+	public int getActiveMatches() {
+		return matches.size();
+	}
+	
+	/**
+	 * Método para obtener el número de sesiones asociadas a alguna partida
+	 * @return Número de sesiones
+	 */
+	public int getSessionCount() {
+		return sessionMatches.size();
+	}
+}
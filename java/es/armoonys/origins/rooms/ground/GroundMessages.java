@@ -0,0 +1,48 @@
+package es.armoonys.origins.rooms.ground;
+
+import es.armoonys.origins.codec.Message;
+
+/**
+ * Tipos de los mensajes que reciben los servicios de sala y de partida de tierra
+ */
+public final class GroundMessages {
+	
+	private GroundMessages() {
+	}
+	
+	//******************* Sala (/groundR) ************************//
+	// OK_PLAYERJOIN, OK_PLAYERREADY -> Información del jugador en el lobby
+	public static class PlayerState extends Message {
+		public int playerId;			// ID del jugador en la sala
+		public int playerType;			// Tipo del jugador (elemento)
+		public String playerName;		// Nombre del jugador
+		public boolean playerReady;		// ¿Está listo el jugador?
+	}
+	
+	// OK_MATCHENDED -> El jugador ha acabado la partida
+	public static class MatchEnded extends Message {
+	}
+	
+	//******************* Partida (/groundM) ************************//
+	// OK_PLAYERINFO -> Actualización de la información del jugador
+	public static class PlayerInfo extends Message {
+		public int userID;				// ID del jugador
+		public int userVictim;			// ID de la víctima
+		public String updateKey;		// Tecla/acción actualizada
+	}
+	
+	// OK_POINTSINFO -> Actualización de la puntuación del jugador
+	public static class PointsInfo extends Message {
+		public int userID;				// ID del jugador
+		public int updatedPoints;		// Puntuación actualizada
+	}
+	
+	// OK_TAKEDM -> Un jugador ha cogido la materia oscura
+	public static class TakeDM extends Message {
+		public int userTaken;			// ID del jugador que la cogió
+	}
+	
+	// OK_ROUNDSTATE -> El jugador ha acabado la ronda
+	public static class RoundState extends Message {
+	}
+}
@@ -0,0 +1,33 @@
+package es.armoonys.origins.rooms.ground;
+
+import org.springframework.web.socket.WebSocketSession;
+
+/**
+ * Hueco de un jugador en una partida. Sobrevive a la desconexión de su sesión durante el periodo
+ * de gracia, acumulando las tramas que se pierde para reenviárselas al reanudar.
+ * No es seguro para varios hilos: la partida lo usa siempre con su cerrojo.
+ */
+class GroundPlayer {
+	//******************* Variables específicas ************************//
+	WebSocketSession session;			// Sesión actual (null mientras está desconectado)
+	String token;						// Token de reanudación vigente
+	boolean binary;						// ¿Usa la codificación binaria?
+	final GroundReplayBuffer sent;		// Últimas tramas enviadas
+
+	//******************* Constructor ************************//
+	GroundPlayer(WebSocketSession session, int replayFrames) {
+		this.session = session;
+		this.token = ResumeToken.next();
+		this.binary = GroundBinaryCodec.isBinary(session);
+		this.sent = new GroundReplayBuffer(replayFrames);
+	}
+
+	//******************* Métodos ************************//
+	/**
+	 * Método para saber si el jugador tiene una sesión abierta
+	 * @return Verdadero si está conectado
+	 */
+	boolean isConnected() {
+		return session != null && session.isOpen();
+	}
+}
@@ -0,0 +1,71 @@
+package es.armoonys.origins.rooms.ground;
+
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+/**
+ * Búfer circular con las últimas tramas de partida enviadas a un jugador, numeradas en orden
+ * (la primera trama es la 1). Al reanudar, el cliente indica cuántas tramas recibió y se le
+ * reenvían las que faltan si siguen en el búfer.
+ * No es seguro para varios hilos: la partida lo usa siempre con su cerrojo.
+ */
+class GroundReplayBuffer {
+	//******************* Variables específicas ************************//
+	// Tramas guardadas (TextMessage, inmutable, o los bytes de la trama binaria)
+	private final Object[] frames;
+	// Tramas enviadas en total
+	private long count = 0;
+	// Primera trama que se puede reenviar (tras una resincronización no se reenvía nada anterior)
+	private long floor = 0;
+
+	//******************* Constructor ************************//
+	/**
+	 * @param capacity -> Número de tramas guardadas
+	 */
+	GroundReplayBuffer(int capacity) {
+		this.frames = new Object[Math.max(1, capacity)];
+	}
+
+	//******************* Métodos ************************//
+	/**
+	 * Método para guardar una trama enviada
+	 * @param message -> Trama enviada
+	 */
+	void add(WebSocketMessage<?> message) {
+		// La trama binaria se guarda como bytes (el envío consume la posición del buffer)
+		Object frame = message instanceof BinaryMessage ? ((BinaryMessage) message).getPayload().array() : message;
+		frames[(int) (count % frames.length)] = frame;
+		count++;
+	}
+
+	/**
+	 * Método para saber si se pueden reenviar todas las tramas posteriores a las recibidas
+	 * @param received -> Tramas que indica haber recibido el cliente
+	 * @return Verdadero si todas las que faltan siguen en el búfer
+	 */
+	boolean canReplayFrom(long received) {
+		return received >= floor && received <= count && count - received <= frames.length;
+	}
+
+	/**
+	 * Método para obtener una trama guardada
+	 * @param index -> Posición de la trama (0 es la primera enviada)
+	 * @return Trama lista para enviar
+	 */
+	WebSocketMessage<?> get(long index) {
+		Object frame = frames[(int) (index % frames.length)];
+		return frame instanceof byte[] ? new BinaryMessage((byte[]) frame) : (WebSocketMessage<?>) frame;
+	}
+
+	/**
+	 * Método para descartar las tramas guardadas (la numeración continúa)
+	 */
+	void reset() {
+		floor = count;
+	}
+
+	// Getters //
+	long getCount() {
+		return count;
+	}
+}
@@ -0,0 +1,640 @@
+package es.armoonys.origins.rooms.ground;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import es.armoonys.origins.net.Broadcaster;
+import es.armoonys.origins.rooms.ground.GroundMessages.PlayerState;
+import es.armoonys.origins.sched.TimingWheel;
+
+public class GroundRoom {
+	//******************* Tipos ************************//
+	// Aviso de los jugadores expulsados al vencer el plazo para estar listo
+	interface ReadyTimeoutListener {
+		/**
+		 * @param room -> Sala
+		 * @param tokens -> Tokens de reanudación de los huecos liberados
+		 * @param empty -> ¿La sala quedó vacía y se desactivó para reciclarla?
+		 */
+		void onKicked(GroundRoom room, List<String> tokens, boolean empty);
+	}
+
+	//******************* Variables genéricas ************************//
+	private static final Logger log = LoggerFactory.getLogger(GroundRoom.class);
+	// Sesiones de la sala
+	private Map<String, WebSocketSession> sessions = new ConcurrentHashMap<>();
+	// Objeto para el envío de mensajes
+	private ObjectMapper mapper;
+
+	//******************* Variables específicas ************************//
+	// Sala //
+	private int roomId;									// ID de la sala
+	private boolean active = true;						// ¿La sala está en uso? (falso si se recicló)
+	final AtomicBoolean queued = new AtomicBoolean();	// ¿Está en la cola de salas abiertas del registro?
+	// Usuarios //
+	private int connectedUsers = 0;						// Usuarios conectados a la sala
+	private int finishedUsers = 0;						// Usuarios que acabaron la partida
+	public static final int MAX_USERS = 4;				// Número máximo de usuarios permitidos en la sala
+	private int readyPlayers = 0;						// Jugadores listos en el lobby
+	private int[] ids = {0, 1, 2, 3};					// IDs asignables a los clientes (jugadores)
+	private String[] assignedIds = {"", "", "", ""};	// IDs asignados a clientes
+	private String[] tokens = new String[MAX_USERS];	// Token de reanudación de cada hueco
+	private boolean[] held = new boolean[MAX_USERS];	// ¿Hueco reservado a un cliente desconectado?
+	private Map<String, ObjectNode>
+		playerInfos = new ConcurrentHashMap<>();	// Mapa de información de jugadores conectados
+	// Partida //
+	private boolean matchStarted = false;	// ¿La partida ha comenzado?
+	private long matchGeneration = 0;		// Número de la última partida iniciada en la sala
+	// Plazo para estar listo //
+	private TimingWheel timeouts;						// Rueda de plazos compartida
+	private long readyTimeoutMs;						// Plazo para que los demás estén listos (0 = sin plazo)
+	private TimingWheel.Timeout readyTimeout;			// Plazo en curso (null si no hay nadie esperando)
+	private ReadyTimeoutListener kickListener;			// Aviso al registro de los huecos liberados
+
+	//******************* Constructor ************************//
+	public GroundRoom(int roomId, ObjectMapper mapper, TimingWheel timeouts, long readyTimeoutMs, ReadyTimeoutListener kickListener) {
+		this.roomId = roomId;
+		this.mapper = mapper;
+		this.timeouts = timeouts;
+		this.readyTimeoutMs = readyTimeoutMs;
+		this.kickListener = kickListener;
+	}
+
+	//******************* Métodos ************************//
+	// Métodos de ciclo de vida //
+	/**
+	 * Método para intentar insertar un cliente en la sala
+	 * @param session -> Sesión del cliente
+	 * @return Verdadero si el cliente entró en la sala
+	 * @throws IOException
+	 */
+	public synchronized boolean join(WebSocketSession session) throws IOException {
+		// Si la sala no está disponible, está llena o la partida ha comenzado
+		if(!isOpen()) {
+			return false;
+		}
+
+		// Actualización del número de usuarios e inserción de la sesión en el mapa de sesiones
+		connectedUsers++;
+		sessions.put(session.getId(), session);
+		// Notificación de acceso a la conexión
+		notifyAccess(session);
+		// El jugador nuevo dispone del plazo completo para estar listo
+		cancelReadyTimeout();
+		checkReadyTimeout();
+
+		log.debug("Usuarios conectados a la sala de tierra {}: {}", roomId, connectedUsers);
+		return true;
+	}
+
+	/**
+	 * Método para sacar a un cliente de la sala
+	 * @param session -> Sesión del cliente cerrado
+	 * @return Verdadero si la sala quedó vacía y se desactivó para reciclarla
+	 * @throws IOException
+	 */
+	public synchronized boolean leave(WebSocketSession session) throws IOException {
+		// Si la sesión no pertenece a la sala
+		if(sessions.get(session.getId()) == null) {
+			return false;
+		}
+		boolean empty = release(session.getId());
+		checkReadyTimeout();
+		return empty;
+	}
+
+	/**
+	 * Método para reservar el hueco de un cliente desconectado mientras la sala está en el lobby
+	 * (con la partida en curso el hueco se reserva en la partida, no en la sala)
+	 * @param session -> Sesión del cliente cerrado
+	 * @return Token con el que se puede reanudar, o null si no se reservó
+	 */
+	public synchronized String suspend(WebSocketSession session) {
+		int idx = indexOf(session.getId());
+		if(idx == -1 || matchStarted || !active || sessions.remove(session.getId()) == null) {
+			return null;
+		}
+		held[idx] = true;
+		return tokens[idx];
+	}
+
+	/**
+	 * Método para liberar el hueco de un cliente que no volvió a tiempo
+	 * @param token -> Token de reanudación del hueco
+	 * @return Verdadero si la sala quedó vacía y se desactivó para reciclarla
+	 * @throws IOException
+	 */
+	public synchronized boolean expire(String token) throws IOException {
+		int idx = slotOf(token);
+		if(idx == -1 || !held[idx]) {
+			return false;
+		}
+		boolean empty = release(assignedIds[idx]);
+		checkReadyTimeout();
+		return empty;
+	}
+
+	/**
+	 * Método para reanudar el hueco reservado con una sesión nueva. El cliente recibe su nuevo
+	 * token y la información de los jugadores de la sala. Si el hueco sigue asignado a la sesión
+	 * anterior (conexión medio abierta), la sesión nueva la sustituye y la anterior se cierra
+	 * @param token -> Token de reanudación
+	 * @param session -> Sesión nueva del cliente
+	 * @return Verdadero si se reanudó el hueco
+	 * @throws IOException
+	 */
+	public synchronized boolean resume(String token, WebSocketSession session) throws IOException {
+		int idx = slotOf(token);
+		if(idx == -1 || !active) {
+			return false;
+		}
+
+		// Sesión anterior del hueco (null si estaba reservado)
+		String oldId = assignedIds[idx];
+		WebSocketSession stale = held[idx] ? null : sessions.remove(oldId);
+		if(!held[idx] && stale == null) {
+			return false;
+		}
+
+		// Traspaso del hueco y de la información del jugador a la sesión nueva
+		held[idx] = false;
+		assignedIds[idx] = session.getId();
+		sessions.put(session.getId(), session);
+		ObjectNode info = playerInfos.remove(oldId);
+		if(info != null) {
+			playerInfos.put(session.getId(), info);
+		}
+
+		// Renovación del token (cada token sirve una sola vez) y envío del estado de la sala
+		tokens[idx] = ResumeToken.next();
+		ObjectNode newNode = mapper.createObjectNode();
+		newNode.put("code", "OK_ROOMRESUMED");
+		newNode.put("userID", ids[idx]);
+		newNode.put("roomId", roomId);
+		newNode.put("resumeToken", tokens[idx]);
+		session.sendMessage(new TextMessage(newNode.toString()));
+		getPlayerInfos(session);
+		ResumeToken.closeReplaced(stale);
+		return true;
+	}
+
+	/**
+	 * Método para sacar definitivamente a un cliente (conectado o con el hueco reservado)
+	 * @param id -> ID de la sesión asignada al hueco
+	 * @return Verdadero si la sala quedó vacía y se desactivó para reciclarla
+	 * @throws IOException
+	 */
+	private boolean release(String id) throws IOException {
+		// Actualización del número de usuarios y jugadores listos
+		connectedUsers--;
+		ObjectNode info = playerInfos.get(id);
+		if(info != null && info.get("playerReady").asBoolean())
+			// Actualización del número de jugadores (si estaba listo)
+			readyPlayers--;
+
+		// Notificación al resto de usuarios de que el actual ha abandonado la partida
+		notifyRemovePlayer(id);
+
+		// Eliminación de la información del jugador en el mapa de jugadores
+		removePlayerInfo(id);
+
+		// Muestra de información
+		log.debug("Usuarios conectados a la sala de tierra {}: {}", roomId, connectedUsers);
+		log.debug("Usuarios listos para jugar: {}", readyPlayers);
+
+		// Si la sala queda vacía y no hay partida en curso, se desactiva para reciclarla
+		if(connectedUsers == 0 && !matchStarted) {
+			active = false;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Método para reutilizar la sala con un nuevo ID tras haber quedado vacía
+	 * @param newRoomId -> Nuevo ID de la sala
+	 */
+	synchronized void recycle(int newRoomId) {
+		roomId = newRoomId;
+		connectedUsers = 0;
+		finishedUsers = 0;
+		readyPlayers = 0;
+		matchStarted = false;
+		cancelReadyTimeout();
+		for (int i = 0; i < assignedIds.length; i++) {
+			assignedIds[i] = "";
+			tokens[i] = null;
+			held[i] = false;
+		}
+		sessions.clear();
+		playerInfos.clear();
+		active = true;
+	}
+
+	/**
+	 * Método invocado cuando un jugador indica que ha acabado la partida
+	 */
+	public synchronized void playerFinished() {
+		// Actualización valor de los jugadores acabados
+		finishedUsers++;
+
+		// Si el número coincide con los jugadores conectados
+		if(finishedUsers >= connectedUsers) {
+			endMatch();
+		}
+	}
+
+	/**
+	 * Método para dar por finalizada una partida concreta de la sala
+	 * (no hace nada si la sala ya empezó otra partida después)
+	 * @param generation -> Número de la partida
+	 */
+	public synchronized void endMatch(long generation) {
+		if(generation == matchGeneration) {
+			endMatch();
+		}
+	}
+
+	/**
+	 * Método para dar por finalizada la partida de la sala
+	 */
+	public synchronized void endMatch() {
+		// Si la partida ya no estaba en curso
+		if(!matchStarted) {
+			return;
+		}
+
+		// Actualización de valor de variable controladora de inicio de partida
+		matchStarted = false;
+		log.info("Partida en sala de tierra {} finalizada", roomId);
+
+		// Limpieza variable contadora
+		finishedUsers = 0;
+	}
+
+	// Métodos del plazo para estar listo //
+	/**
+	 * Método para arrancar o detener el plazo para estar listo según el estado del lobby:
+	 * corre mientras haya algún jugador listo esperando a otros que no lo están
+	 */
+	private void checkReadyTimeout() {
+		boolean waiting = active && !matchStarted && readyPlayers > 0 && readyPlayers < connectedUsers;
+		if(!waiting) {
+			cancelReadyTimeout();
+		} else if(readyTimeout == null && readyTimeoutMs > 0) {
+			readyTimeout = timeouts.newTimeout(this::readyExpired, readyTimeoutMs);
+		}
+	}
+
+	private void cancelReadyTimeout() {
+		if(readyTimeout != null) {
+			readyTimeout.cancel();
+			readyTimeout = null;
+		}
+	}
+
+	/**
+	 * Vencimiento del plazo para estar listo (en el hilo de la rueda): se expulsa a los jugadores
+	 * que no están listos y, si quedan al menos dos, comienza la partida
+	 */
+	private synchronized void readyExpired() {
+		// Si el plazo se canceló o se sustituyó mientras esperaba el cerrojo
+		if(readyTimeout == null || !readyTimeout.isExpired()) {
+			return;
+		}
+		readyTimeout = null;
+
+		List<String> kicked = new ArrayList<>();
+		boolean empty = false;
+		try {
+			for (int i = 0; i < assignedIds.length; i++) {
+				String id = assignedIds[i];
+				ObjectNode info = playerInfos.get(id);
+				if(id.isEmpty() || (info != null && info.get("playerReady").asBoolean())) {
+					continue;
+				}
+
+				// Liberación del hueco y aviso al cliente (si sigue conectado) antes de cerrarlo
+				WebSocketSession session = sessions.get(id);
+				if(tokens[i] != null) {
+					kicked.add(tokens[i]);
+				}
+				empty = release(id);
+				if(session != null) {
+					notifyReadyTimeout(session);
+				}
+			}
+			log.info("Plazo para estar listo vencido en la sala de tierra {}: quedan {} jugadores", roomId, connectedUsers);
+
+			// Si los que quedan bastan para jugar, comienza la partida
+			if(readyPlayers >= 2 && readyPlayers == connectedUsers) {
+				notifyStartMatch();
+			}
+		} catch(IOException e) {
+			log.warn("Error al vencer el plazo para estar listo de la sala {}: {}", roomId, e.getMessage());
+		} finally {
+			// El registro retira los tokens liberados y recicla (o vuelve a ofrecer) la sala
+			if(!kicked.isEmpty() && kickListener != null) {
+				kickListener.onKicked(this, kicked, empty);
+			}
+		}
+	}
+
+	// Métodos de actualización //
+	/**
+	 * Método para eliminar la información del jugador en el servidor
+	 * @param id -> ID de la sesión del cliente cerrado
+	 */
+	private void removePlayerInfo(String id) {
+		// Cambio del valor de asignación
+		int idx = indexOf(id);
+		if(idx != -1) {
+			assignedIds[idx] = "";
+			tokens[idx] = null;
+			held[idx] = false;
+		}
+		sessions.remove(id);
+		playerInfos.remove(id);
+	}
+
+	// Métodos de notificación //
+	/**
+	 * Notifica al cliente que ha podido establecer la conexión con la sala
+	 * @param session -> Sesión del cliente
+	 * @throws IOException
+	 */
+	private void notifyAccess(WebSocketSession session) throws IOException {
+		// Generación del mensaje a enviar a un cliente específico
+		ObjectNode newNode = mapper.createObjectNode();
+		int userId = getId(session);
+		newNode.put("code", "OK_ROOMCONN");				// Código del mensaje
+		newNode.put("userID", userId);					// ID a asignar al cliente conectado
+		newNode.put("roomId", roomId);					// ID de la sala asignada
+		if(userId != -1) {
+			// Token para recuperar el hueco si se cae la conexión
+			tokens[userId] = ResumeToken.next();
+			newNode.put("resumeToken", tokens[userId]);
+		}
+
+		// Envío del mensaje
+		session.sendMessage(new TextMessage(newNode.toString()));
+	}
+
+	/**
+	 * Método para notificar a todos los jugadores de que un nuevo jugador a entrado al lobby
+	 * @param session -> Sesión actual del jugador
+	 * @param msg -> Información del jugador a mapear para mandarlo a los usuarios
+	 * @throws IOException
+	 */
+	public synchronized void notifyNewPlayer(WebSocketSession session, PlayerState msg) throws IOException {
+		// Generación del mensaje a enviar a un cliente específico
+		ObjectNode newNode = mapper.createObjectNode();
+		newNode.put("code", "OK_PLAYERJOIN");								// Código del mensaje
+		newNode.put("playerId", msg.playerId);				// ID a asignar al cliente conectado
+		newNode.put("playerType", msg.playerType);			// Tipo del jugador (elemento)
+		newNode.put("playerName", msg.playerName);			// Nombre del jugador
+		newNode.put("playerReady", msg.playerReady);	// ¿Está listo del jugador?
+
+		// Inserción en mapa de jugadores
+		playerInfos.put(session.getId(), newNode);
+
+		// Envío del mensaje (serializado una vez) al resto de sesiones de la sala
+		Broadcaster.broadcast(sessions.values(), newNode, session);
+	}
+
+	/**
+	 * Método para notificar a todos los jugadores de que uno abandonó la partida
+	 * @param id -> ID de la sesión del jugador
+	 * @throws IOException
+	 */
+	private void notifyRemovePlayer(String id) throws IOException {
+		// Si la sesión no tenía ID de jugador asignada
+		int idx = indexOf(id);
+		if(idx == -1) {
+			return;
+		}
+
+		// Generación del mensaje a enviar a un cliente específico
+		ObjectNode newNode = mapper.createObjectNode();
+		newNode.put("code", "OK_PLAYERDISC");								// Código del mensaje
+		newNode.put("playerId", ids[idx]);									// ID a asignar al cliente conectado
+
+		// Envío del mensaje (serializado una vez) al resto de sesiones de la sala
+		Broadcaster.broadcast(sessions.values(), newNode, sessions.get(id));
+	}
+
+	/**
+	 * Método para notificar a todos los jugadores de que uno indicó que está listo para jugar
+	 * @param session -> Sesión actual del jugador
+	 * @param msg -> Información del jugador a mapear para mandarlo a los usuarios
+	 * @throws IOException
+	 */
+	public synchronized void notifyPlayerReady(WebSocketSession session, PlayerState msg) throws IOException {
+		// Generación del mensaje a enviar a los clientes
+		ObjectNode newNode = mapper.createObjectNode();
+		newNode.put("code", msg.code);
+		newNode.put("playerId", msg.playerId);
+		newNode.put("playerType", msg.playerType);			// Tipo del jugador (elemento)
+		newNode.put("playerName", msg.playerName);
+		newNode.put("playerReady", msg.playerReady);
+
+		// Reemplazo de la información en el mapa de jugadores
+		ObjectNode oldInfo = playerInfos.put(session.getId(), newNode);
+		boolean wasReady = oldInfo != null && oldInfo.get("playerReady").asBoolean();
+
+		// Envío del objeto de información al resto de participantes en la sala
+		Broadcaster.broadcast(sessions.values(), newNode, session);
+
+		// Actualización del valor de jugadores listos (solo si cambió el estado)
+		boolean playerStatus = msg.playerReady;
+		if(playerStatus && !wasReady) {
+			readyPlayers++;
+		} else if(!playerStatus && wasReady) {
+			readyPlayers--;
+		}
+		log.debug("Usuarios listos en la sala {}: {}", roomId, readyPlayers);
+
+		// Comprobación del número de jugadores listos (si están todos)
+		if(readyPlayers >= 2 && readyPlayers == connectedUsers && !matchStarted) {
+			// Notificación del inicio de partida
+			notifyStartMatch();
+		}
+		checkReadyTimeout();
+	}
+
+	/**
+	 * Método para notificar a los usuarios de la partida que esta va a comenzar
+	 * @throws IOException
+	 */
+	private void notifyStartMatch() throws IOException {
+		// Actualización de variable de control de inicio de partida
+		matchStarted = true;
+		matchGeneration++;
+		cancelReadyTimeout();
+
+		// Generación del mensaje a enviar a todos los clientes
+		ObjectNode newNode = mapper.createObjectNode();
+		newNode.put("code", "OK_STARTMATCH");
+		newNode.put("players", connectedUsers);
+		newNode.put("roomId", roomId);
+
+		// Envío del objeto de información a cada uno de los participantes en la sala
+		Broadcaster.broadcast(sessions.values(), newNode);
+	}
+
+	/**
+	 * Método para avisar a un jugador de que se le expulsa por no estar listo a tiempo y cerrar su sesión
+	 * @param session -> Sesión del jugador
+	 * @throws IOException
+	 */
+	private void notifyReadyTimeout(WebSocketSession session) throws IOException {
+		ObjectNode newNode = mapper.createObjectNode();
+		newNode.put("code", "Error_READYTIMEOUT");
+		newNode.put("roomId", roomId);
+
+		// Envío del mensaje y cierre de la conexión
+		session.sendMessage(new TextMessage(newNode.toString()));
+		session.close();
+	}
+
+	// Otros //
+	/**
+	 * Método para mandar un mensaje por cada jugador en el mapa de jugadores
+	 * @param session -> Sesión actual del jugador
+	 * @throws IOException
+	 */
+	public synchronized void getPlayerInfos(WebSocketSession session) throws IOException {
+		// Para cada objeto de información en el mapa de jugadores
+		for(ObjectNode info : playerInfos.values()) {
+			// Generación del mensaje a enviar al cliente en cuestión
+			ObjectNode infoToSend = mapper.createObjectNode();
+			infoToSend.put("code", "OK_GETPLAYERS");
+			infoToSend.put("playerId", info.findValue("playerId").asInt());
+			infoToSend.put("playerType", info.findValue("playerType").asInt());
+			infoToSend.put("playerName", info.findValue("playerName").asText());
+			infoToSend.put("playerReady", info.findValue("playerReady").asBoolean());
+
+			// Envío del mensaje
+			session.sendMessage(new TextMessage(infoToSend.toString()));
+		}
+	}
+
+	/**
+	 * Método para obtener una ID del array de ids para el cliente conectado
+	 * @return Devuelve el primer id disponible
+	 */
+	private int getId(WebSocketSession session) {
+		// Inicialización del ID
+		int newId = -1;
+
+		// Búsqueda por el primer ID disponible
+		for (int i = 0; i < ids.length; i++) {
+			// Si en el array de asignados está vacío
+			if(assignedIds[i].isEmpty()) {
+				// Actualización de la ID
+				newId = ids[i];
+				// Actualización en array de asignados
+				assignedIds[i] = session.getId();
+				// Rotura del flujo del for
+				break;
+			}
+		}
+
+		// Retorno del nuevo ID
+		return newId;
+	}
+
+	/**
+	 * Método para buscar el hueco de un token de reanudación
+	 * @param token -> Token de reanudación
+	 * @return Índice del hueco o -1 si no existe
+	 */
+	private int slotOf(String token) {
+		for (int i = 0; i < tokens.length; i++) {
+			if(token.equals(tokens[i])) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Método para obtener el token de reanudación vigente de una sesión
+	 * @param session -> Sesión del cliente
+	 * @return Token o null si la sesión no tiene hueco en la sala
+	 */
+	public synchronized String tokenOf(WebSocketSession session) {
+		int idx = indexOf(session.getId());
+		return idx != -1 ? tokens[idx] : null;
+	}
+
+	/**
+	 * Método para buscar el índice de una sesión en el array de índices de partida asignados
+	 * @param element -> ID de la sesión a buscar en el array
+	 * @return
+	 */
+	private int indexOf(String element) {
+		// Inicialización del índice
+		int idx = -1;
+
+		// Búsqueda del índice de la sesión en el array de índices de partida asignados
+		for (int i = 0; i < assignedIds.length; i++) {
+			// Si coincide el ID proporcionado con el del array
+			if(element.equals(assignedIds[i])) {
+				// Asignación al índice auxiliar al encontrado
+				idx = i;
+				// Rotura del flujo de ejecución del bucle
+				break;
+			}
+		}
+
+		// Devolución del índice encontrado
+		return idx;
+	}
+
+	// Getters //
+	/**
+	 * Método para obtener el ID de la sala
+	 * @return ID de la sala
+	 */
+	public synchronized int getRoomId() {
+		return roomId;
+	}
+
+	/**
+	 * Método para saber si la partida de la sala está en curso
+	 * @return ¿La partida ha comenzado?
+	 */
+	public synchronized boolean isMatchStarted() {
+		return matchStarted;
+	}
+
+	/**
+	 * Método para obtener el número de la partida en curso: identifica la partida de /groundM que
+	 * le corresponde, de forma que una partida anterior de la misma sala nunca se reutiliza
+	 * @return Número de la partida o 0 si no hay partida en curso
+	 */
+	public synchronized long getMatchGeneration() {
+		return matchStarted ? matchGeneration : 0;
+	}
+
+	/**
+	 * Método para saber si la sala admite nuevos jugadores
+	 * @return Verdadero si está activa, no está llena y la partida no ha comenzado
+	 */
+	public synchronized boolean isOpen() {
+		return active && !matchStarted && connectedUsers < MAX_USERS;
+	}
+}
@@ -0,0 +1,305 @@
+package es.armoonys.origins.rooms.ground;
+
+import java.io.IOException;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import es.armoonys.origins.metrics.Metrics;
+import es.armoonys.origins.sched.TimingWheel;
+
+/**
+ * Registro de salas de tierra. Crea salas bajo demanda, asigna cada sesión a una sala
+ * con huecos libres y recicla las salas que quedan vacías.
+ * Cada sala se sincroniza por separado, por lo que dos salas nunca compiten por el mismo cerrojo.
+ * Si una sesión del lobby se cae, su hueco se reserva durante el periodo de gracia bajo un token
+ * de reanudación (/groundR?resume=TOKEN).
+ */
+public class GroundRoomRegistry {
+	//******************* Variables genéricas ************************//
+	private static final Logger log = LoggerFactory.getLogger(GroundRoomRegistry.class);
+	// Objeto para el envío de mensajes (compartido por todas las salas)
+	private ObjectMapper mapper = new ObjectMapper();
+
+	//******************* Variables específicas ************************//
+	// Salas activas por ID
+	private Map<Integer, GroundRoom> rooms = new ConcurrentHashMap<>();
+	// Sala de cada sesión conectada
+	private Map<String, GroundRoom> sessionRooms = new ConcurrentHashMap<>();
+	// Sala de cada token de reanudación vigente
+	private Map<String, GroundRoom> resumable = new ConcurrentHashMap<>();
+	// Salas con huecos libres y sin partida en curso
+	private Queue<GroundRoom> openRooms = new ConcurrentLinkedQueue<>();
+	// Salas vacías listas para reutilizarse
+	private Deque<GroundRoom> freeRooms = new ConcurrentLinkedDeque<>();
+	private AtomicInteger freeCount = new AtomicInteger();
+	// Generador de IDs de sala
+	private AtomicInteger nextRoomId = new AtomicInteger();
+	// Límites //
+	@Value("${origins.ground.max-rooms:10000}")
+	private int maxRooms = 10000;				// Número máximo de salas simultáneas
+	@Value("${origins.ground.free-rooms:1024}")
+	private int maxFreeRooms = 1024;			// Número máximo de salas vacías guardadas para reciclar
+	@Value("${origins.ground.reconnect-grace-ms:15000}")
+	private long graceMs = 15000;				// Tiempo que se reserva el hueco (0 = sin reserva)
+	@Value("${origins.ground.ready-timeout-ms:60000}")
+	private long readyTimeoutMs = 60000;		// Plazo para estar listo cuando otro ya lo está (0 = sin plazo)
+	// Rueda de los plazos de los huecos reservados y de las salas
+	private TimingWheel timeouts;
+	// Métricas //
+	private LongAdder resumed = Metrics.counter("origins_resumes_total", 
+			"Reanudaciones de sesión por resultado", "endpoint", "/groundR", "result", "ok");
+	private LongAdder resumeFailed = Metrics.counter("origins_resumes_total", 
+			"Reanudaciones de sesión por resultado", "endpoint", "/groundR", "result", "failed");
+	private LongAdder expired = Metrics.counter("origins_slots_expired_total", 
+			"Huecos liberados por no reanudarse a tiempo", "endpoint", "/groundR");
+
+	//******************* Constructor ************************//
+	public GroundRoomRegistry(TimingWheel timeouts) {
+		this.timeouts = timeouts;
+	}
+
+	//******************* Métodos ************************//
+	/**
+	 * Método para asignar una sesión a la primera sala con huecos (o a una nueva)
+	 * @param session -> Sesión del cliente
+	 * @return Sala asignada o null si se alcanzó el máximo de salas
+	 * @throws IOException
+	 */
+	public GroundRoom assign(WebSocketSession session) throws IOException {
+		// Búsqueda en la cola de salas abiertas
+		GroundRoom room;
+		while((room = openRooms.poll()) != null) {
+			room.queued.set(false);
+
+			// Si la sala sigue admitiendo jugadores, se inserta la sesión
+			if(room.join(session)) {
+				bind(session, room);
+				return room;
+			}
+		}
+
+		// Ninguna sala abierta: creación (o reciclaje) de una nueva
+		room = createRoom();
+		if(room == null || !room.join(session)) {
+			return null;
+		}
+		bind(session, room);
+		return room;
+	}
+
+	/**
+	 * Método para reanudar el hueco reservado de una sesión caída con una sesión nueva
+	 * @param session -> Sesión nueva del cliente
+	 * @param token -> Token de reanudación indicado por el cliente
+	 * @return Sala reanudada o null si el token no es válido o ya caducó
+	 * @throws IOException
+	 */
+	public GroundRoom resume(WebSocketSession session, String token) throws IOException {
+		// El token sigue vigente hasta que la reanudación tiene éxito (si no, su plazo lo libera)
+		GroundRoom room = resumable.get(token);
+		if(room == null || !room.resume(token, session)) {
+			resumeFailed.increment();
+			return null;
+		}
+
+		resumable.remove(token, room);
+		sessionRooms.put(session.getId(), room);
+		resumable.put(room.tokenOf(session), room);
+		resumed.increment();
+		return room;
+	}
+
+	/**
+	 * Método para sacar una sesión de su sala y reciclar la sala si quedó vacía.
+	 * Si hay periodo de gracia y la sala sigue en el lobby, el hueco se reserva hasta que venza
+	 * @param session -> Sesión del cliente cerrado
+	 * @throws IOException
+	 */
+	public void release(WebSocketSession session) throws IOException {
+		// Obtención de la sala de la sesión
+		GroundRoom room = sessionRooms.remove(session.getId());
+		if(room == null) {
+			return;
+		}
+
+		// Reserva del hueco hasta que venza el periodo de gracia
+		String token = room.tokenOf(session);
+		if(graceMs > 0 && room.suspend(session) != null) {
+			timeouts.newTimeout(() -> expire(room, token), graceMs);
+			return;
+		}
+		if(token != null) {
+			resumable.remove(token);
+		}
+
+		// Si la sala quedó vacía se recicla, si no, vuelve a ofrecerse
+		if(room.leave(session)) {
+			recycle(room);
+		} else {
+			offerIfOpen(room);
+		}
+	}
+
+	/**
+	 * Método para liberar un hueco reservado que no se reanudó a tiempo
+	 * @param room -> Sala del hueco
+	 * @param token -> Token de reanudación del hueco
+	 */
+	private void expire(GroundRoom room, String token) {
+		// Si ya se reanudó, el token dejó de estar vigente
+		if(!resumable.remove(token, room)) {
+			return;
+		}
+
+		try {
+			expired.increment();
+			if(room.expire(token)) {
+				recycle(room);
+			} else {
+				offerIfOpen(room);
+			}
+		} catch(IOException e) {
+			log.warn("Error al liberar un hueco reservado de la sala {}: {}", room.getRoomId(), e.getMessage());
+		}
+	}
+
+	/**
+	 * Método invocado por una sala (en el hilo de la rueda) al expulsar a los jugadores que no
+	 * estaban listos a tiempo: sus tokens dejan de ser válidos y la sala se recicla si quedó vacía
+	 * @param room -> Sala
+	 * @param tokens -> Tokens de reanudación de los huecos liberados
+	 * @param empty -> ¿La sala quedó vacía?
+	 */
+	private void kicked(GroundRoom room, List<String> tokens, boolean empty) {
+		for(String token : tokens) {
+			resumable.remove(token, room);
+		}
+		if(empty) {
+			recycle(room);
+		} else {
+			offerIfOpen(room);
+		}
+	}
+
+	/**
+	 * Método para finalizar la partida de una sala y volver a abrirla a nuevos jugadores
+	 * @param roomId -> ID de la sala
+	 * @param generation -> Número de la partida (si la sala ya está en otra, no se finaliza)
+	 */
+	public void endMatch(int roomId, long generation) {
+		GroundRoom room = rooms.get(roomId);
+		if(room == null) {
+			return;
+		}
+		room.endMatch(generation);
+		offerIfOpen(room);
+	}
+
+	/**
+	 * Método para volver a poner en la cola de salas abiertas una sala que admite jugadores
+	 * @param room -> Sala a ofrecer
+	 */
+	public void offerIfOpen(GroundRoom room) {
+		if(room.isOpen() && room.queued.compareAndSet(false, true)) {
+			openRooms.offer(room);
+		}
+	}
+
+	// Getters //
+	/**
+	 * Método para obtener una sala por su ID
+	 * @param roomId -> ID de la sala
+	 * @return Sala o null si no existe
+	 */
+	public GroundRoom getRoom(int roomId) {
+		return rooms.get(roomId);
+	}
+
+	/**
+	 * Método para obtener la sala a la que pertenece una sesión
+	 * @param session -> Sesión del cliente
+	 * @return Sala o null si la sesión no está en ninguna
+	 */
+	public GroundRoom getRoomOf(WebSocketSession session) {
+		return sessionRooms.get(session.getId());
+	}
+
+	/**
+	 * Método para obtener el número de salas activas
+	 * @return Número de salas activas
+	 */
+	public int getActiveRooms() {
+		return rooms.size();
+	}
+
+	/**
+	 * Método para obtener el número de sesiones asignadas a alguna sala
+	 * @return Número de sesiones
+	 */
+	public int getSessionCount() {
+		return sessionRooms.size();
+	}
+
+	// Otros //
+	/**
+	 * Método para asociar una sesión a su sala y ofrecer la sala si aún tiene huecos
+	 */
+	private void bind(WebSocketSession session, GroundRoom room) {
+		sessionRooms.put(session.getId(), room);
+		String token = room.tokenOf(session);
+		if(token != null) {
+			resumable.put(token, room);
+		}
+		offerIfOpen(room);
+	}
+
+	/**
+	 * Método para obtener una sala nueva, reutilizando una vacía si la hay
+	 * @return Sala nueva o null si se alcanzó el máximo de salas
+	 */
+	private GroundRoom createRoom() {
+		// Si se alcanzó el máximo de salas
+		if(rooms.size() >= maxRooms) {
+			return null;
+		}
+
+		int roomId = nextRoomId.incrementAndGet();
+		GroundRoom room = freeRooms.poll();
+		if(room != null) {
+			freeCount.decrementAndGet();
+			room.recycle(roomId);
+		} else {
+			room = new GroundRoom(roomId, mapper, timeouts, readyTimeoutMs, this::kicked);
+		}
+
+		rooms.put(roomId, room);
+		return room;
+	}
+
+	/**
+	 * Método para retirar una sala vacía y guardarla para reutilizarla
+	 * @param room -> Sala vacía (ya desactivada)
+	 */
+	private void recycle(GroundRoom room) {
+		rooms.remove(room.getRoomId());
+		if(freeCount.incrementAndGet() <= maxFreeRooms) {
+			freeRooms.push(room);
+		} else {
+			freeCount.decrementAndGet();
+		}
+	}
+}
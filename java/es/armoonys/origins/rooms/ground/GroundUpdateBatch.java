@@ -0,0 +1,147 @@
+package es.armoonys.origins.rooms.ground;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+/**
+ * Agregador de las actualizaciones de una partida dentro de una ventana de tick.
+ * Las actualizaciones de estado puro (p. ej. la puntuación, que es absoluta) consecutivas de un
+ * mismo jugador se sustituyen por la última; el resto son eventos (p. ej. las transiciones de
+ * tecla o la materia oscura cogida), que se conservan en el orden de llegada y hacen de barrera
+ * para las sustituciones. No es seguro para varios hilos:
+ * la partida lo usa siempre con su cerrojo.
+ */
+class GroundUpdateBatch {
+	//******************* Tipos ************************//
+	// Actualización pendiente de enviar
+	private static class Update {
+		String senderId;	// ID de la sesión que la mandó
+		String code;		// Código del mensaje
+		boolean state;		// ¿Es una actualización de estado (sustituible)?
+		GroundFrame frame;	// Trama de la actualización
+	}
+	
+	//******************* Variables específicas ************************//
+	// Código de los mensajes agrupados
+	static final String BATCH_CODE = "OK_BATCH";
+	// Actualizaciones pendientes en orden de llegada
+	private List<Update> pending = new ArrayList<>();
+	// Índice de la última actualización pendiente de cada sesión
+	private Map<String, Integer> lastOfSender = new HashMap<>();
+	// Índice a partir del cual se pueden sustituir actualizaciones (tras el último evento)
+	private int barrier = 0;
+	
+	//******************* Métodos ************************//
+	/**
+	 * Método para añadir una actualización de estado. Sustituye a la anterior del mismo jugador
+	 * si es su última actualización pendiente, tiene el mismo código y no hay eventos después
+	 * @param senderId -> ID de la sesión que la mandó
+	 * @param code -> Código del mensaje
+	 * @param frame -> Trama de la actualización
+	 */
+	void addState(String senderId, String code, GroundFrame frame) {
+		Integer last = lastOfSender.get(senderId);
+		if(last != null && last >= barrier) {
+			Update previous = pending.get(last);
+			if(previous.state && previous.code.equals(code)) {
+				// Sustitución en el mismo sitio: no cambia el orden respecto al resto
+				previous.frame = frame;
+				return;
+			}
+		}
+		append(senderId, code, true, frame);
+	}
+	
+	/**
+	 * Método para añadir un evento (nunca se sustituye ni se reordena)
+	 * @param senderId -> ID de la sesión que lo mandó
+	 * @param code -> Código del mensaje
+	 * @param frame -> Trama del evento
+	 */
+	void addEvent(String senderId, String code, GroundFrame frame) {
+		append(senderId, code, false, frame);
+		barrier = pending.size();
+	}
+	
+	/**
+	 * Método para generar la trama de un destinatario (todas las actualizaciones salvo las suyas)
+	 * @param recipientId -> ID de la sesión destinataria, o null para incluirlas todas
+	 * @param binary -> ¿El destinatario usa la codificación binaria?
+	 * @return Trama a enviar o null si no hay nada para el destinatario
+	 */
+	WebSocketMessage<?> frameFor(String recipientId, boolean binary) {
+		// Selección de las actualizaciones que no mandó el destinatario
+		List<GroundFrame> parts = new ArrayList<>(pending.size());
+		for(Update update : pending) {
+			if(!update.senderId.equals(recipientId)) {
+				parts.add(update.frame);
+			}
+		}
+		
+		// Si solo hay una actualización se envía tal cual
+		if(parts.isEmpty()) {
+			return null;
+		} else if(parts.size() == 1) {
+			return binary ? new BinaryMessage(parts.get(0).binary()) : parts.get(0).text();
+		}
+		
+		// Unión de las tramas ya codificadas en una única trama
+		if(binary) {
+			byte[][] frames = new byte[parts.size()][];
+			for(int i = 0; i < frames.length; i++) {
+				frames[i] = parts.get(i).binary();
+			}
+			return new BinaryMessage(GroundBinaryCodec.batch(frames, frames.length));
+		}
+		
+		StringBuilder frame = new StringBuilder(32 + parts.size() * 64);
+		frame.append("{\"code\":\"").append(BATCH_CODE).append("\",\"messages\":[");
+		for(int i = 0; i < parts.size(); i++) {
+			if(i > 0) {
+				frame.append(',');
+			}
+			frame.append(parts.get(i).text().getPayload());
+		}
+		return new TextMessage(frame.append("]}").toString());
+	}
+	
+	/**
+	 * Método para saber si una sesión tiene actualizaciones propias en la ventana
+	 * @param sessionId -> ID de la sesión
+	 * @return Verdadero si la sesión mandó alguna actualización
+	 */
+	boolean hasSender(String sessionId) {
+		return lastOfSender.containsKey(sessionId);
+	}
+	
+	boolean isEmpty() {
+		return pending.isEmpty();
+	}
+	
+	/**
+	 * Método para vaciar la ventana tras enviarla
+	 */
+	void clear() {
+		pending.clear();
+		lastOfSender.clear();
+		barrier = 0;
+	}
+	
+	// Otros //
+	private void append(String senderId, String code, boolean state, GroundFrame frame) {
+		Update update = new Update();
+		update.senderId = senderId;
+		update.code = code;
+		update.state = state;
+		update.frame = frame;
+		
+		lastOfSender.put(senderId, pending.size());
+		pending.add(update);
+	}
+}
@@ -0,0 +1,52 @@
+package es.armoonys.origins.rooms.ground;
+
+import java.io.IOException;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+
+/**
+ * Generador de tokens de reanudación. El token identifica el hueco reservado a un jugador
+ * desconectado y se renueva en cada reanudación, así que solo sirve una vez.
+ * Un token vigente también sirve para quitarle el hueco a una sesión anterior que el servidor
+ * aún cree abierta (el cliente reconectó antes de que se detectara el cierre de la conexión).
+ */
+final class ResumeToken {
+	//******************* Variables genéricas ************************//
+	// Estado de cierre de la sesión sustituida por una reanudación
+	static final CloseStatus REPLACED = CloseStatus.NORMAL.withReason("resumed");
+	private static final SecureRandom RANDOM = new SecureRandom();
+	private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+	//******************* Constructor ************************//
+	private ResumeToken() {
+	}
+
+	//******************* Métodos ************************//
+	/**
+	 * Método para generar un token nuevo (128 bits aleatorios, apto para una URL)
+	 * @return Token
+	 */
+	static String next() {
+		byte[] bytes = new byte[16];
+		RANDOM.nextBytes(bytes);
+		return ENCODER.encodeToString(bytes);
+	}
+
+	/**
+	 * Método para cerrar la sesión anterior de un hueco reanudado por otra sesión
+	 * @param stale -> Sesión sustituida, o null si el hueco estaba reservado sin sesión
+	 */
+	static void closeReplaced(WebSocketSession stale) {
+		if(stale == null) {
+			return;
+		}
+		try {
+			stale.close(REPLACED);
+		} catch(IOException | IllegalStateException e) {
+			// La conexión ya estaba cerrada
+		}
+	}
+}
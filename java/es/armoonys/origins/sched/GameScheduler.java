@@ -0,0 +1,137 @@
+package es.armoonys.origins.sched;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+
+import es.armoonys.origins.metrics.Histogram;
+import es.armoonys.origins.metrics.Metrics;
+
+/**
+ * Planificador compartido del servidor. Un único grupo pequeño de hilos ejecuta los ticks
+ * de todas las partidas y el resto de tareas periódicas, en lugar de un hilo por partida.
+ */
+public class GameScheduler implements InitializingBean, DisposableBean {
+	//******************* Variables genéricas ************************//
+	private static final Logger log = LoggerFactory.getLogger(GameScheduler.class);
+	
+	//******************* Variables específicas ************************//
+	// Número de hilos del planificador (por defecto, uno por núcleo)
+	@Value("${origins.scheduler.threads:0}")
+	private int threads = 0;
+	// Ejecutor de tareas planificadas
+	private ScheduledThreadPoolExecutor executor;
+	// Estadísticas de ticks //
+	private AtomicLong ticks = new AtomicLong();			// Ticks ejecutados
+	private AtomicLong tickOverruns = new AtomicLong();		// Ticks que duraron más que su periodo
+	private AtomicLong maxTickNanos = new AtomicLong();		// Duración máxima de un tick
+	private Histogram tickTime = Metrics.timer("origins_tick_seconds", "Duración de los ticks de simulación");
+	
+	//******************* Métodos ************************//
+	// Métodos de ciclo de vida //
+	/**
+	 * Método de creación del ejecutor una vez inyectada la configuración
+	 */
+	@Override
+	public void afterPropertiesSet() {
+		int size = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+		AtomicInteger count = new AtomicInteger();
+		
+		executor = new ScheduledThreadPoolExecutor(size, r -> {
+			Thread t = new Thread(r, "origins-sched-" + count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+		// Las tareas canceladas se eliminan de la cola en lugar de esperar a su vencimiento
+		executor.setRemoveOnCancelPolicy(true);
+	}
+	
+	/**
+	 * Método de parada del ejecutor al cerrar la aplicación
+	 */
+	@Override
+	public void destroy() {
+		executor.shutdownNow();
+	}
+	
+	// Métodos de planificación //
+	/**
+	 * Método para ejecutar un tick a ritmo fijo, midiendo su duración y registrando los excesos
+	 * @param tick -> Tarea a ejecutar en cada tick
+	 * @param periodMs -> Periodo del tick en milisegundos
+	 * @param name -> Nombre del tick (para los avisos)
+	 * @return Tarea planificada (para cancelarla)
+	 */
+	public ScheduledFuture<?> scheduleTick(Runnable tick, long periodMs, String name) {
+		long periodNanos = TimeUnit.MILLISECONDS.toNanos(periodMs);
+		
+		return executor.scheduleAtFixedRate(() -> {
+			long start = System.nanoTime();
+			try {
+				tick.run();
+			} catch(RuntimeException e) {
+				// Una excepción cancelaría el resto de ticks: se informa y se continúa
+				log.error("Error en el tick de {}", name, e);
+			}
+			recordTick(System.nanoTime() - start, periodNanos, name);
+		}, periodMs, periodMs, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * Método para ejecutar una tarea a ritmo fijo
+	 * @param task -> Tarea a ejecutar
+	 * @param periodMs -> Periodo en milisegundos
+	 * @return Tarea planificada (para cancelarla)
+	 */
+	public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long periodMs) {
+		return executor.scheduleAtFixedRate(task, periodMs, periodMs, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * Método para ejecutar una tarea una sola vez tras un retardo
+	 * @param task -> Tarea a ejecutar
+	 * @param delayMs -> Retardo en milisegundos
+	 * @return Tarea planificada (para cancelarla)
+	 */
+	public ScheduledFuture<?> schedule(Runnable task, long delayMs) {
+		return executor.schedule(task, delayMs, TimeUnit.MILLISECONDS);
+	}
+	
+	// Métodos de estadísticas //
+	/**
+	 * Método para registrar la duración de un tick
+	 */
+	private void recordTick(long nanos, long periodNanos, String name) {
+		ticks.incrementAndGet();
+		maxTickNanos.accumulateAndGet(nanos, Math::max);
+		tickTime.recordNanos(nanos);
+		
+		// Si el tick duró más que su periodo, el siguiente llegará tarde
+		if(nanos > periodNanos) {
+			long overruns = tickOverruns.incrementAndGet();
+			log.warn("Tick de {} excedido: {} ms (total excesos: {})", 
+					name, TimeUnit.NANOSECONDS.toMillis(nanos), overruns);
+		}
+	}
+	
+	// Getters //
+	public long getTicks() {
+		return ticks.get();
+	}
+	
+	public long getTickOverruns() {
+		return tickOverruns.get();
+	}
+	
+	public long getMaxTickNanos() {
+		return maxTickNanos.get();
+	}
+}
@@ -0,0 +1,292 @@
+package es.armoonys.origins.sched;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+
+/**
+ * Rueda de temporización (hashed timing wheel) compartida para los plazos del servidor: reservas
+ * de huecos, comprobación de jugadores listos, fin de ronda y sesiones inactivas.
+ * Planificar y cancelar un plazo es O(1) y no toma ningún cerrojo compartido: el plazo se apunta
+ * en una cola sin bloqueo y el hilo de la rueda lo coloca en su casilla en el siguiente tick.
+ * La precisión es la de un tick (origins.timeouts.tick-ms), suficiente para plazos de segundos.
+ * Las tareas vencidas se ejecutan en el hilo de la rueda, así que deben ser breves (las sesiones
+ * envían a través de su cola de salida, por lo que notificar o cerrar una sesión no bloquea).
+ */
+public class TimingWheel implements InitializingBean, DisposableBean {
+	//******************* Variables genéricas ************************//
+	private static final Logger log = LoggerFactory.getLogger(TimingWheel.class);
+	// Plazos que se colocan como máximo en cada tick (el resto espera al siguiente)
+	private static final int MAX_ADDS_PER_TICK = 100000;
+
+	//******************* Tipos ************************//
+	/**
+	 * Plazo planificado en la rueda. Solo lo enlaza y desenlaza el hilo de la rueda
+	 */
+	public static final class Timeout {
+		private static final int INIT = 0;
+		private static final int CANCELLED = 1;
+		private static final int EXPIRED = 2;
+		private static final AtomicIntegerFieldUpdater<Timeout> STATE =
+				AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+		private final TimingWheel wheel;
+		private final Runnable task;
+		private final long deadline;		// Instante de vencimiento relativo al arranque de la rueda
+		private volatile int state = INIT;
+		// Posición en la rueda (solo la usa el hilo de la rueda) //
+		private long rounds;				// Vueltas que faltan antes de vencer
+		private Bucket bucket;
+		private Timeout next;
+		private Timeout prev;
+
+		private Timeout(TimingWheel wheel, Runnable task, long deadline) {
+			this.wheel = wheel;
+			this.task = task;
+			this.deadline = deadline;
+		}
+
+		/**
+		 * Método para cancelar el plazo (la tarea ya no se ejecutará)
+		 * @return Falso si ya había vencido o estaba cancelado
+		 */
+		public boolean cancel() {
+			if(!STATE.compareAndSet(this, INIT, CANCELLED)) {
+				return false;
+			}
+			// El hilo de la rueda lo desenlaza de su casilla en el siguiente tick
+			wheel.cancelled.add(this);
+			wheel.pending.decrementAndGet();
+			return true;
+		}
+
+		public boolean isCancelled() {
+			return state == CANCELLED;
+		}
+
+		public boolean isExpired() {
+			return state == EXPIRED;
+		}
+
+		private void expire() {
+			if(!STATE.compareAndSet(this, INIT, EXPIRED)) {
+				return;
+			}
+			wheel.pending.decrementAndGet();
+			wheel.expired.increment();
+			try {
+				task.run();
+			} catch(RuntimeException e) {
+				log.error("Error al ejecutar un plazo vencido", e);
+			}
+		}
+	}
+
+	// Casilla de la rueda: lista doblemente enlazada de plazos
+	private static final class Bucket {
+		private Timeout head;
+		private Timeout tail;
+
+		void add(Timeout timeout) {
+			timeout.bucket = this;
+			if(head == null) {
+				head = tail = timeout;
+			} else {
+				tail.next = timeout;
+				timeout.prev = tail;
+				tail = timeout;
+			}
+		}
+
+		Timeout remove(Timeout timeout) {
+			Timeout next = timeout.next;
+			if(timeout.prev != null) {
+				timeout.prev.next = next;
+			}
+			if(timeout.next != null) {
+				timeout.next.prev = timeout.prev;
+			}
+			if(timeout == head) {
+				head = next;
+			}
+			if(timeout == tail) {
+				tail = timeout.prev;
+			}
+			timeout.prev = null;
+			timeout.next = null;
+			timeout.bucket = null;
+			return next;
+		}
+
+		/**
+		 * Método para vencer los plazos de la casilla que están en su última vuelta
+		 * @param now -> Instante actual relativo al arranque de la rueda
+		 */
+		void expire(long now) {
+			Timeout timeout = head;
+			while(timeout != null) {
+				if(timeout.rounds <= 0 && timeout.deadline <= now) {
+					Timeout next = remove(timeout);
+					timeout.expire();
+					timeout = next;
+				} else if(timeout.isCancelled()) {
+					timeout = remove(timeout);
+				} else {
+					timeout.rounds--;
+					timeout = timeout.next;
+				}
+			}
+		}
+	}
+
+	//******************* Variables específicas ************************//
+	// Configuración //
+	@Value("${origins.timeouts.tick-ms:100}")
+	private long tickMs = 100;						// Duración de un tick
+	@Value("${origins.timeouts.wheel-size:512}")
+	private int wheelSize = 512;					// Casillas de la rueda (se redondea a potencia de 2)
+	// Rueda //
+	private Bucket[] wheel;
+	private int mask;
+	private long tickNanos;
+	private long startTime;
+	private long tick = 0;							// Ticks procesados (solo lo usa el hilo de la rueda)
+	// Plazos pendientes de colocar y cancelados pendientes de desenlazar
+	private Queue<Timeout> additions = new ConcurrentLinkedQueue<>();
+	private Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+	// Hilo de la rueda
+	private Thread worker;
+	private volatile boolean running = true;
+	// Estadísticas //
+	private AtomicLong pending = new AtomicLong();	// Plazos planificados sin vencer ni cancelar
+	private LongAdder expired = new LongAdder();	// Plazos vencidos
+
+	//******************* Métodos ************************//
+	// Métodos de ciclo de vida //
+	/**
+	 * Método de creación de la rueda y arranque de su hilo una vez inyectada la configuración
+	 */
+	@Override
+	public void afterPropertiesSet() {
+		int size = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+		wheel = new Bucket[size];
+		for(int i = 0; i < size; i++) {
+			wheel[i] = new Bucket();
+		}
+		mask = size - 1;
+		tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, tickMs));
+		startTime = System.nanoTime();
+
+		worker = new Thread(this::run, "origins-timeouts");
+		worker.setDaemon(true);
+		worker.start();
+	}
+
+	/**
+	 * Método de parada del hilo al cerrar la aplicación (los plazos pendientes se descartan)
+	 */
+	@Override
+	public void destroy() {
+		running = false;
+		worker.interrupt();
+	}
+
+	// Métodos de planificación //
+	/**
+	 * Método para planificar una tarea tras un plazo
+	 * @param task -> Tarea a ejecutar al vencer el plazo (en el hilo de la rueda)
+	 * @param delayMs -> Plazo en milisegundos
+	 * @return Plazo planificado (para cancelarlo)
+	 */
+	public Timeout newTimeout(Runnable task, long delayMs) {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMs)) - startTime;
+		Timeout timeout = new Timeout(this, task, deadline);
+		pending.incrementAndGet();
+		additions.add(timeout);
+		return timeout;
+	}
+
+	// Métodos del hilo de la rueda //
+	/**
+	 * Bucle del hilo de la rueda: espera al siguiente tick, coloca los plazos nuevos,
+	 * desenlaza los cancelados y vence los de la casilla actual
+	 */
+	private void run() {
+		while(running) {
+			long now = waitForNextTick();
+			if(now < 0) {
+				break;
+			}
+			removeCancelled();
+			transferAdditions();
+			wheel[(int) (tick & mask)].expire(now);
+			tick++;
+		}
+	}
+
+	/**
+	 * Método para dormir hasta el siguiente tick
+	 * @return Instante actual relativo al arranque, o -1 si se detuvo la rueda
+	 */
+	private long waitForNextTick() {
+		long deadline = tickNanos * (tick + 1);
+		while(true) {
+			long now = System.nanoTime() - startTime;
+			long sleepNanos = deadline - now;
+			if(sleepNanos <= 0) {
+				return now;
+			}
+			try {
+				TimeUnit.NANOSECONDS.sleep(sleepNanos);
+			} catch(InterruptedException e) {
+				if(!running) {
+					return -1;
+				}
+			}
+		}
+	}
+
+	private void transferAdditions() {
+		Timeout timeout;
+		for(int i = 0; i < MAX_ADDS_PER_TICK && (timeout = additions.poll()) != null; i++) {
+			// Cancelado antes de colocarse
+			if(timeout.isCancelled()) {
+				continue;
+			}
+
+			// Casilla del tick de vencimiento y vueltas completas que faltan hasta él
+			long calculated = timeout.deadline / tickNanos;
+			timeout.rounds = (calculated - tick) / wheel.length;
+			long ticks = Math.max(calculated, tick);
+			wheel[(int) (ticks & mask)].add(timeout);
+		}
+	}
+
+	private void removeCancelled() {
+		Timeout timeout;
+		while((timeout = cancelled.poll()) != null) {
+			Bucket bucket = timeout.bucket;
+			if(bucket != null) {
+				bucket.remove(timeout);
+			}
+		}
+	}
+
+	// Getters //
+	public long getPending() {
+		return pending.get();
+	}
+
+	public long getExpired() {
+		return expired.sum();
+	}
+}
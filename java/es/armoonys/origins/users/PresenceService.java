@@ -0,0 +1,166 @@
+package es.armoonys.origins.users;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+
+import es.armoonys.origins.persistence.UserRepository;
+import es.armoonys.origins.sched.GameScheduler;
+
+/**
+ * Registro de presencia de los usuarios. La memoria es la fuente de verdad del estado en línea:
+ * cada cambio solo marca al usuario como pendiente y una tarea periódica guarda en la BD el
+ * último estado de todos los pendientes en un único lote. Al arrancar, los estados "en línea"
+ * que quedaron de una ejecución anterior se reinician con una sola sentencia.
+ */
+public class PresenceService implements InitializingBean, DisposableBean {
+	//******************* Variables genéricas ************************//
+	private static final Logger log = LoggerFactory.getLogger(PresenceService.class);
+	// Almacén de usuarios
+	@Autowired
+	private UserRepository users;
+	// Planificador de la tarea de guardado
+	private GameScheduler scheduler;
+	
+	//******************* Variables específicas ************************//
+	// Periodo de guardado del estado en la BD
+	@Value("${origins.presence.flush-ms:1000}")
+	private long flushMs = 1000;
+	// Número de sesiones abiertas en el socket de usuarios
+	private AtomicInteger connectedSessions = new AtomicInteger();
+	// Usuarios en línea
+	private Set<String> online = ConcurrentHashMap.newKeySet();
+	// Último estado pendiente de guardar de cada usuario
+	private Map<String, Boolean> dirty = new ConcurrentHashMap<>();
+	// Estadísticas //
+	private AtomicLong changes = new AtomicLong();		// Cambios de estado recibidos
+	private AtomicLong written = new AtomicLong();		// Estados guardados en la BD
+	
+	//******************* Constructor ************************//
+	/**
+	 * Constructor del registro de presencia
+	 * @param scheduler -> Planificador compartido
+	 */
+	public PresenceService(GameScheduler scheduler) {
+		this.scheduler = scheduler;
+	}
+	
+	//******************* Métodos ************************//
+	// Métodos de ciclo de vida //
+	/**
+	 * Método de arranque: reinicio de los estados obsoletos y planificación del guardado
+	 */
+	@Override
+	public void afterPropertiesSet() {
+		int stale = users.resetStatuses();
+		log.info("Usuarios marcados como desconectados al arrancar: {}", stale);
+		
+		scheduler.scheduleAtFixedRate(this::flush, flushMs);
+	}
+	
+	/**
+	 * Método de parada: se guardan los cambios pendientes
+	 */
+	@Override
+	public void destroy() {
+		flush();
+	}
+	
+	// Métodos de sesiones //
+	/**
+	 * Método para registrar la apertura de una sesión
+	 * @return Número de sesiones abiertas
+	 */
+	public int sessionOpened() {
+		return connectedSessions.incrementAndGet();
+	}
+	
+	/**
+	 * Método para registrar el cierre de una sesión
+	 * @return Número de sesiones abiertas
+	 */
+	public int sessionClosed() {
+		return connectedSessions.decrementAndGet();
+	}
+	
+	// Métodos de estado //
+	/**
+	 * Método para cambiar el estado de un usuario (se guardará en el próximo lote)
+	 * @param username -> Nombre del usuario
+	 * @param status -> ¿Está conectado?
+	 */
+	public void setOnline(String username, boolean status) {
+		if(status) {
+			online.add(username);
+		} else {
+			online.remove(username);
+		}
+		dirty.put(username, status);
+		changes.incrementAndGet();
+	}
+	
+	/**
+	 * Método para saber si un usuario está en línea
+	 * @param username -> Nombre del usuario
+	 * @return ¿Está conectado?
+	 */
+	public boolean isOnline(String username) {
+		return username != null && online.contains(username);
+	}
+	
+	/**
+	 * Método para guardar en la BD el último estado de los usuarios pendientes
+	 */
+	public void flush() {
+		if(dirty.isEmpty()) {
+			return;
+		}
+		
+		// Se retira cada pendiente con su último valor (los cambios posteriores quedan para el siguiente lote)
+		Map<String, Boolean> batch = new HashMap<>();
+		for(String username : dirty.keySet()) {
+			Boolean status = dirty.remove(username);
+			if(status != null) {
+				batch.put(username, status);
+			}
+		}
+		
+		try {
+			users.updateStatuses(batch);
+			written.addAndGet(batch.size());
+		} catch(RuntimeException e) {
+			// Se vuelven a marcar como pendientes salvo que ya haya un estado más reciente
+			for(Map.Entry<String, Boolean> row : batch.entrySet()) {
+				dirty.putIfAbsent(row.getKey(), row.getValue());
+			}
+			log.warn("Error al guardar el estado de {} usuarios: {}", batch.size(), e.getMessage());
+		}
+	}
+	
+	// Getters //
+	public int getConnectedSessions() {
+		return connectedSessions.get();
+	}
+	
+	public int getOnlineUsers() {
+		return online.size();
+	}
+	
+	public long getChanges() {
+		return changes.get();
+	}
+	
+	public long getWritten() {
+		return written.get();
+	}
+}
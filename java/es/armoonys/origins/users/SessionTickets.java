@@ -0,0 +1,64 @@
+package es.armoonys.origins.users;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Value;
+
+import es.armoonys.origins.sched.TimingWheel;
+
+/**
+ * Tickets de sesión: prueban en otros puntos de conexión (p. ej. /chat?ticket=TICKET) que el
+ * cliente inició sesión en /user como un usuario concreto. Cada ticket sirve una sola vez y
+ * caduca si no se usa en origins.users.ticket-ttl-ms.
+ */
+public class SessionTickets {
+	//******************* Variables genéricas ************************//
+	private static final SecureRandom RANDOM = new SecureRandom();
+	private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+	//******************* Variables específicas ************************//
+	@Value("${origins.users.ticket-ttl-ms:60000}")
+	private long ttlMs = 60000;						// Tiempo que un ticket sigue siendo válido
+	// Usuario de cada ticket pendiente de usar
+	private Map<String, String> tickets = new ConcurrentHashMap<>();
+	// Rueda de los plazos de caducidad
+	private TimingWheel timeouts;
+
+	//******************* Constructor ************************//
+	public SessionTickets(TimingWheel timeouts) {
+		this.timeouts = timeouts;
+	}
+
+	//******************* Métodos ************************//
+	/**
+	 * Método para emitir un ticket para un usuario autenticado
+	 * @param username -> Nombre del usuario
+	 * @return Ticket (128 bits aleatorios, apto para una URL)
+	 */
+	public String issue(String username) {
+		byte[] bytes = new byte[16];
+		RANDOM.nextBytes(bytes);
+		String ticket = ENCODER.encodeToString(bytes);
+
+		tickets.put(ticket, username);
+		timeouts.newTimeout(() -> tickets.remove(ticket), ttlMs);
+		return ticket;
+	}
+
+	/**
+	 * Método para usar un ticket (deja de ser válido)
+	 * @param ticket -> Ticket indicado por el cliente, o null
+	 * @return Usuario del ticket o null si no es válido o caducó
+	 */
+	public String redeem(String ticket) {
+		return ticket != null ? tickets.remove(ticket) : null;
+	}
+
+	// Getters //
+	public int getPending() {
+		return tickets.size();
+	}
+}
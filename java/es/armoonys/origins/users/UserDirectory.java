@@ -0,0 +1,157 @@
+package es.armoonys.origins.users;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+
+import es.armoonys.origins.persistence.UserRepository;
+
+/**
+ * Directorio de usuarios en memoria. Guarda los usuarios consultados por nombre con tamaño
+ * acotado (se expulsa el menos usado) y caducidad, y escribe en la BD a la vez que en memoria
+ * al registrar, de forma que la mayoría de inicios de sesión y búsquedas
+ * no llegan a la BD. También recuerda los nombres que no existen (útil para los registros).
+ */
+public class UserDirectory {
+	//******************* Tipos ************************//
+	// Entrada del directorio: usuario (o null si no existe) y su caducidad
+	private static class Entry {
+		final UserRecord user;
+		final long expiresAt;
+		
+		Entry(UserRecord user, long expiresAt) {
+			this.user = user;
+			this.expiresAt = expiresAt;
+		}
+	}
+	
+	//******************* Variables genéricas ************************//
+	// Almacén de usuarios
+	@Autowired
+	private UserRepository users;
+	
+	//******************* Variables específicas ************************//
+	// Configuración //
+	@Value("${origins.users.cache-size:10000}")
+	private int maxEntries = 10000;				// Número máximo de usuarios en memoria
+	@Value("${origins.users.cache-ttl-ms:600000}")
+	private long ttlMs = 600000;				// Tiempo de vida de una entrada
+	// Usuarios por nombre en orden de acceso (el primero es el menos usado)
+	private Map<String, Entry> entries = new LinkedHashMap<String, Entry>(256, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+		
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+			if(size() > maxEntries) {
+				evictions.incrementAndGet();
+				return true;
+			}
+			return false;
+		}
+	};
+	// Cerrojo de los registros (comprobación del nombre y alta)
+	private final Object registrations = new Object();
+	// Estadísticas //
+	private AtomicLong hits = new AtomicLong();			// Búsquedas resueltas en memoria
+	private AtomicLong misses = new AtomicLong();		// Búsquedas que consultaron la BD
+	private AtomicLong evictions = new AtomicLong();	// Entradas expulsadas por tamaño
+	
+	//******************* Métodos ************************//
+	/**
+	 * Método para buscar un usuario por su nombre
+	 * @param username -> Nombre del usuario
+	 * @return Usuario o null si no existe
+	 */
+	public UserRecord find(String username) {
+		if(username == null) {
+			return null;
+		}
+		
+		// Búsqueda en memoria
+		synchronized(entries) {
+			Entry entry = entries.get(username);
+			if(entry != null && entry.expiresAt - System.nanoTime() > 0) {
+				hits.incrementAndGet();
+				return entry.user;
+			}
+		}
+		
+		// Consulta a la BD (fuera del cerrojo) y guardado del resultado, exista o no
+		misses.incrementAndGet();
+		return putLookup(username, users.findByUsername(username));
+	}
+	
+	/**
+	 * Método para registrar un usuario nuevo en la BD y en memoria si el nombre está libre.
+	 * La comprobación y el alta se hacen bajo el mismo cerrojo, así que dos registros del mismo
+	 * nombre nunca crean dos cuentas ni sustituyen a la existente
+	 * @param id -> ID del usuario
+	 * @param user -> Usuario a registrar
+	 * @return Falso si el nombre ya existía (no se toca ni la BD ni la memoria)
+	 */
+	public boolean register(long id, UserRecord user) {
+		synchronized(registrations) {
+			if(find(user.getUsername()) != null) {
+				return false;
+			}
+			users.insert(id, user);
+			put(user.getUsername(), user);
+			return true;
+		}
+	}
+	
+	/**
+	 * Método para guardar un usuario en memoria
+	 * @param username -> Nombre del usuario
+	 * @param user -> Usuario (o null si no existe)
+	 */
+	private void put(String username, UserRecord user) {
+		long expiresAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ttlMs);
+		synchronized(entries) {
+			entries.put(username, new Entry(user, expiresAt));
+		}
+	}
+	
+	/**
+	 * Método para guardar el resultado de una consulta a la BD. Si mientras tanto se guardó el
+	 * usuario (p. ej. un registro concurrente), la consulta ya está obsoleta: un "no existe" nunca
+	 * sustituye a una entrada vigente con el usuario
+	 * @param username -> Nombre del usuario
+	 * @param user -> Usuario leído de la BD (o null si no existía)
+	 * @return Usuario que queda en memoria
+	 */
+	private UserRecord putLookup(String username, UserRecord user) {
+		long now = System.nanoTime();
+		synchronized(entries) {
+			Entry entry = entries.get(username);
+			if(user == null && entry != null && entry.user != null && entry.expiresAt - now > 0) {
+				return entry.user;
+			}
+			entries.put(username, new Entry(user, now + TimeUnit.MILLISECONDS.toNanos(ttlMs)));
+			return user;
+		}
+	}
+	
+	// Getters //
+	public int getSize() {
+		synchronized(entries) {
+			return entries.size();
+		}
+	}
+	
+	public long getHits() {
+		return hits.get();
+	}
+	
+	public long getMisses() {
+		return misses.get();
+	}
+	
+	public long getEvictions() {
+		return evictions.get();
+	}
+}
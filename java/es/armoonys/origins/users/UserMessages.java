@@ -0,0 +1,20 @@
+package es.armoonys.origins.users;
+
+import es.armoonys.origins.codec.Message;
+
+/**
+ * Tipos de los mensajes que recibe el servicio de usuarios
+ */
+public final class UserMessages {
+	
+	private UserMessages() {
+	}
+	
+	// OK_CHECKREGISTER, OK_CHECKLOG, OK_CONNECTEDNEWUSER, OK_CONNECTEDUSER,
+	// OK_GETLISTUSERS, OK_SENDUSERDISCONNECTION -> Información de un usuario
+	public static class UserInfo extends Message {
+		public String username;		// Nombre del usuario
+		public String password;		// Contraseña del usuario
+		public boolean status;		// ¿Está conectado?
+	}
+}
@@ -0,0 +1,31 @@
+package es.armoonys.origins.users;
+
+/**
+ * Usuario guardado (inmutable)
+ */
+public class UserRecord {
+	//******************* Variables ************************//
+	private final String username;		// Nombre del usuario
+	private final String password;		// Contraseña del usuario
+	private final boolean status;		// ¿Estaba conectado al leerse? (el estado actual lo lleva PresenceService)
+	
+	//******************* Constructor ************************//
+	public UserRecord(String username, String password, boolean status) {
+		this.username = username;
+		this.password = password;
+		this.status = status;
+	}
+	
+	//******************* Getters ************************//
+	public String getUsername() {
+		return username;
+	}
+	
+	public String getPassword() {
+		return password;
+	}
+	
+	public boolean getStatus() {
+		return status;
+	}
+}
@@ -1,43 +1,116 @@
 package es.armoonys.origins.users;
 
 import java.io.IOException;
-import java.sql.ResultSet;
-import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.core.RowMapper;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
 
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
-public class UserService extends TextWebSocketHandler{
+import es.armoonys.origins.codec.MessageCodec;
+import es.armoonys.origins.codec.MessageDispatcher;
+import es.armoonys.origins.net.Broadcaster;
+import es.armoonys.origins.net.SupersedableMessage;
+import es.armoonys.origins.persistence.DbExecutor;
+import es.armoonys.origins.persistence.IdAllocator;
+import es.armoonys.origins.persistence.UserRepository;
+import es.armoonys.origins.sched.GameScheduler;
+import es.armoonys.origins.users.UserMessages.UserInfo;
+
+public class UserService extends TextWebSocketHandler implements InitializingBean{
 	//******************* Variables genéricas ************************//
+	private static final Logger log = LoggerFactory.getLogger(UserService.class);
 	// Sesiones del socket
 	private Map<String, WebSocketSession> sessions = new ConcurrentHashMap<>();	
-	// Objeto para mapear los nodos JSON recibidos
-	private ObjectMapper mapper = new ObjectMapper();
-	// Plantilla de la BD
+	// Objeto para generar los nodos JSON enviados
+	private ObjectMapper mapper = MessageCodec.MAPPER;
+	// Tabla de despacho de mensajes por código
+	private MessageDispatcher dispatcher = new MessageDispatcher("/user")
+		// Caso: OK_CHECKREGISTER -> Comprobación de la existencia del usuario en la BD
+		.on("OK_CHECKREGISTER", UserInfo.class, this::checkRegister)
+		// Caso: OK_CHECKLOG -> Comprobación de la existencia del usuario en la BD
+		.on("OK_CHECKLOG", UserInfo.class, this::checkLogIn)
+		// Caso: OK_CONNECTEDNEWUSER -> Envío a la BD y al resto de usuarios el nuevo usuario conectado
+		.on("OK_CONNECTEDNEWUSER", UserInfo.class, this::notifyNewUserConnected)
+		// Caso: OK_CONNECTEDUSER -> Actualización en la BD y envío al resto de usuarios del usuario conectado
+		.on("OK_CONNECTEDUSER", UserInfo.class, this::notifyUserConnect)
+		// Caso: OK_GETLISTUSERS -> Envío al usuario de todos los usuarios conectados de la BD
+		.on("OK_GETLISTUSERS", UserInfo.class, this::getConnectedUsersFromDB)
+		// Caso: OK_SENDUSERDISCONNECTION -> Envío al usuario de la desconexión de un usuario en específico
+		.on("OK_SENDUSERDISCONNECTION", UserInfo.class, this::notifyUserDisconnect)
+		// Caso: OK_CHATTICKET -> Envío al usuario autenticado de un ticket nuevo para el chat
+		.on("OK_CHATTICKET", UserInfo.class, this::requestTicket);
+	// Almacén de usuarios
 	@Autowired
-	private JdbcTemplate templateOriginsDB;
-	// ID próximo mensaje
-	AtomicLong nextId;	
+	private UserRepository users;
+	// Generador de IDs de usuario
+	private IdAllocator userIds;
+	// Directorio de usuarios en memoria
+	private UserDirectory directory;
+	// Registro de presencia (sesiones abiertas y usuarios en línea)
+	private PresenceService presence;
+	// Planificador del envío agrupado del número de usuarios
+	private GameScheduler scheduler;
+	// Ejecutor de los mensajes (todos consultan la BD o dependen de consultas anteriores)
+	private DbExecutor db;
+	// Tickets para identificar al usuario en otros puntos de conexión
+	private SessionTickets tickets;
+	// Usuario autenticado (con contraseña o al registrarse) de cada sesión
+	private Map<String, String> authenticated = new ConcurrentHashMap<>();
 	//******************* Variables específicas ************************//
-	// Número de usuarios conectados al socket
-	private int connectedUsers = 0;
+	// Envío del número de usuarios conectados //
+	@Value("${origins.presence.count-debounce-ms:250}")
+	private long countDebounceMs = 250;										// Ventana de agrupación de cambios
+	private AtomicBoolean countScheduled = new AtomicBoolean();				// ¿Hay un envío pendiente?
+	private volatile int lastSentCount = -1;								// Último número enviado
+	private Queue<WebSocketSession> awaitingCount = new ConcurrentLinkedQueue<>();	// Sesiones nuevas sin el número
 	// Mapa de información de jugadores conectados
 	private Map<String, ObjectNode> userInfos = new ConcurrentHashMap<>();	
 	
+	//******************* Constructor ************************//
+	/**
+	 * Constructor del servicio de usuarios
+	 * @param directory -> Directorio de usuarios en memoria
+	 * @param presence -> Registro de presencia
+	 * @param scheduler -> Planificador compartido
+	 * @param db -> Ejecutor de tareas de BD
+	 * @param tickets -> Tickets de sesión para el resto de puntos de conexión
+	 */
+	public UserService(UserDirectory directory, PresenceService presence, GameScheduler scheduler, DbExecutor db,
+			SessionTickets tickets) {
+		this.directory = directory;
+		this.presence = presence;
+		this.scheduler = scheduler;
+		this.db = db;
+		this.tickets = tickets;
+	}
+	
 	//******************* Métodos ************************//
+	// Métodos de ciclo de vida //
+	/**
+	 * Método de siembra del generador de IDs al arrancar (una única consulta a la BD)
+	 */
+	@Override
+	public void afterPropertiesSet() {
+		userIds = new IdAllocator("users");
+		userIds.seed(users.maxId());
+	}
+	
 	// Métodos sobrecargados //
 	/**
 	 * Método invocado cuando un cliente establece conexión con el socket
@@ -47,11 +120,12 @@ public class UserService extends TextWebSocketHandler{
 	@Override
 	public void afterConnectionEstablished(WebSocketSession session) throws Exception {
 		// Actualización del número de usuarios e inserción del usuario al mapa de sesiones
-		connectedUsers++;
+		int connectedUsers = presence.sessionOpened();
 		sessions.put(session.getId(), session);
+		awaitingCount.offer(session);
 		
 		// Muestra de información y comunicación al resto de clientes
-		System.out.println("[SERVER] Usuarios conectados al servidor: " + connectedUsers);		
+		log.debug("Usuarios conectados al servidor: {}", connectedUsers);
 		notifyConnectedUsers();
 	}
 	
@@ -64,12 +138,16 @@ public class UserService extends TextWebSocketHandler{
 	@Override
 	public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
 		// Actualización del número de usuarios y eliminación del usuario del mapa de sesiones
-		connectedUsers--;
+		int connectedUsers = presence.sessionClosed();
+		sessions.remove(session.getId());
+		authenticated.remove(session.getId());
 		
-		removeUserInfo(session);
+		// Se ejecuta tras los mensajes pendientes de la sesión, que aún pueden guardar su información
+		db.execute(session, () -> removeUserInfo(session));
+		db.release(session);
 		
 		// Muestra de información y comunicación al resto de clientes
-		System.out.println("[SERVER] Usuarios conectados al servidor: " + connectedUsers);
+		log.debug("Usuarios conectados al servidor: {}", connectedUsers);
 		notifyConnectedUsers();
 	}
 	 
@@ -81,107 +159,41 @@ public class UserService extends TextWebSocketHandler{
 	 */
 	@Override
 	protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
-		// Creación de nodo de JSON del mensaje
-		JsonNode node = mapper.readTree(message.getPayload());
-				
-		// Obtención del código del mensaje
-		String codeMessage = node.get("code").asText();
-		
-		// Ejecución de código en función del código obtenido
-		switch(codeMessage) {
-			// Caso: OK_CHECKREGISTER -> Comprobación de la existencia del usuario en la BD
-			case "OK_CHECKREGISTER":
-				// Método de comprobación de registro
-				checkRegister(session, node);
-				break;
-			// Caso: OK_CHECKLOG -> Comprobación de la existencia del usuario en la BD
-			case "OK_CHECKLOG":
-				// Método de comprobación de inicio de sesión
-				checkLogIn(session, node);
-				break;
-			// Caso: OK_CONNECTEDNEWUSER -> Envío a la BD y al resto de usuarios el nuevo usuario conectado
-			case "OK_CONNECTEDNEWUSER":
-				// Método de obtención de usuarios conectados de la BD
-				notifyNewUserConnected(session, node);
-				break;
-			// Caso: OK_CONNECTEDNEWUSER -> Envío a la BD y al resto de usuarios el nuevo usuario conectado
-			case "OK_CONNECTEDUSER":
-				// Método de obtención de usuarios conectados de la BD
-				notifyUserConnect(session, node);
-				break;
-			// Caso: OK_GETLISTUSERS -> Envío al usuario de todos los usuarios conectados de la BD
-			case "OK_GETLISTUSERS":
-				getConnectedUsersFromDB(session, node);
-				break;
-			// Caso: OK_GETLISTUSERS -> Envío al usuario de la desconexión de un usuario en específico
-			case "OK_SENDUSERDISCONNECTION":
-				notifyUserDisconnect(session, node);
-				break;
-		}	
+		// Ejecución del manejador registrado para el código del mensaje fuera del hilo de WebSocket
+		String payload = message.getPayload();
+		db.execute(session, () -> dispatcher.dispatch(session, payload));
 	}
 
 	// Métodos de obtención de información //
 	/**
-	 * Método para obtener todos los usuarios de la BD
-	 * @param session
-	 * @param node
-	 * @throws IOException
+	 * Método para la petición de la lista de usuarios. Como en el protocolo original no tiene
+	 * respuesta (su consulta solo servía para calcular la siguiente ID, que ahora da IdAllocator),
+	 * así que no consulta la BD
+	 * @param session -> Cliente que envió el mensaje
+	 * @param msg -> Mensaje enviado por el cliente
 	 */
-	private void getConnectedUsersFromDB(WebSocketSession session, JsonNode node) throws IOException {
-		// Obtención de todos los mensajes de la base de datos
-        List<ObjectNode> listOfConnectedUsers = templateOriginsDB.query("SELECT * FROM users", new RowMapper<ObjectNode>() {
-            // Obtención del contenido de fila del mapa (en la base de datos, cada fila es un mensaje)
-        	@Override
-            public ObjectNode mapRow(ResultSet rs, int rowNum) throws SQLException {
-        		// Generación e inserción de la información en el objeto para enviar
-        		ObjectNode newNode = mapper.createObjectNode();
-        		newNode.put("code", node.get("code").asText());
-        		newNode.put("username", rs.getString("Username"));
-        		newNode.put("status", rs.getBoolean("Status"));
-        		
-        		return newNode;
-            }
-
-        });
-        
-        // Asignación de la nueva ID para los mensajes
-        nextId = new AtomicLong(listOfConnectedUsers.size());
+	private void getConnectedUsersFromDB(WebSocketSession session, UserInfo msg) {
 	}
 	
 	/**
 	 * Método para comprobar si el usuario puede completar el registro
 	 * @param session
-	 * @param node
+	 * @param msg
 	 * @throws IOException
 	 */
-	private void checkRegister(WebSocketSession session, JsonNode node) throws IOException {
+	private void checkRegister(WebSocketSession session, UserInfo msg) throws IOException {
 		// Obtención de datos del nodo de mensaje
-		String username = node.get("username").asText();
-				
-		// Obtención de todos los mensajes de la base de datos
-        List<ObjectNode> userFromBD = templateOriginsDB.query("SELECT * FROM users WHERE Username = '" + username + "'", new RowMapper<ObjectNode>() {
-            // Obtención del contenido de fila del mapa (en la base de datos, cada fila es un mensaje)
-        	@Override
-            public ObjectNode mapRow(ResultSet rs, int rowNum) throws SQLException {
-        		// Generación e inserción de la información en el objeto para enviar
-        		ObjectNode newNode = mapper.createObjectNode();
-        		newNode.put("code", node.get("code").asText());
-        		newNode.put("username", node.get("username").asText());
-        		
-        		return newNode;
-            }
-
-        });
+		String username = msg.username;
         
         // Generación e inserción de la información en el objeto para enviar
 		ObjectNode newNode = mapper.createObjectNode();
-		newNode.put("code", node.get("code").asText());
+		newNode.put("code", msg.code);
         
         // Si no se encontró el usuario proporcionado
-        if(userFromBD.size() == 0) {
+        if(directory.find(username) == null) {
         	// Se puede completar el registro
         	newNode.put("status", 2);
-        	System.out.println("[SERVER] Se registró el usuario " + username);
+        	log.info("Se registró el usuario {}", username);
         } else {
         	// No se puede completar el registro
         	newNode.put("status", 0);
@@ -193,47 +205,33 @@ public class UserService extends TextWebSocketHandler{
 	/**
 	 * Método para comprobar si el usuario puede completar el inicio de sesión
 	 * @param session
-	 * @param node
+	 * @param msg
 	 * @throws IOException
 	 */
-	private void checkLogIn(WebSocketSession session, JsonNode node) throws IOException {
+	private void checkLogIn(WebSocketSession session, UserInfo msg) throws IOException {
 		// Obtención de datos del nodo de mensaje
-		String username = node.get("username").asText();
-		String password = node.get("password").asText();
+		String username = msg.username;
+		String password = msg.password;
 				
-		// Obtención de todos los mensajes de la base de datos
-        List<ObjectNode> userFromBD = templateOriginsDB.query("SELECT * FROM users WHERE Username = '" + username + "'", new RowMapper<ObjectNode>() {
-            // Obtención del contenido de fila del mapa (en la base de datos, cada fila es un mensaje)
-        	@Override
-            public ObjectNode mapRow(ResultSet rs, int rowNum) throws SQLException {
-        		// Generación e inserción de la información en el objeto para enviar
-        		if(rs.getString("Password").equals(password)) {
-        			ObjectNode newNode = mapper.createObjectNode();
-            		newNode.put("code", node.get("code").asText());
-            		newNode.put("username", node.get("username").asText());
-            		newNode.put("status", rs.getBoolean("Status"));
-            		
-            		System.out.println("[SERVER] Usuario encontrado.");
-            		
-            		return newNode;
-        		} else {
-        			return null;
-        		}        		
-            }
-        });
+		// Búsqueda del usuario en el directorio
+		UserRecord user = directory.find(username);
+		boolean loggedIn = false;
         
         // Generación e inserción de la información en el objeto para enviar
 		ObjectNode newNode = mapper.createObjectNode();
-		newNode.put("code", node.get("code").asText());
+		newNode.put("code", msg.code);
         
-        // Si no se encontró el usuario proporcionado
-        if(userFromBD.size() != 0) {
-        	if(!userFromBD.get(0).get("status").asBoolean()) {
+        // Si se encontró el usuario proporcionado y la contraseña coincide
+        if(user != null && user.getPassword().equals(password)) {
+        	log.debug("Usuario {} encontrado", username);
+        	if(!presence.isOnline(username)) {
         		// Se puede completar el inicio de sesión
             	newNode.put("status", 2);
-            	System.out.println("[SERVER] El usuario " + username + " inició sesión");
+            	authenticated.put(session.getId(), username);
+            	loggedIn = true;
+            	log.info("El usuario {} inició sesión", username);
         	} else {
-        		// Se puede completar el inicio de sesión
+        		// El usuario ya tiene la sesión iniciada
             	newNode.put("status", 1);
         	}
         } else {
@@ -241,8 +239,32 @@ public class UserService extends TextWebSocketHandler{
         	newNode.put("status", 0);
         }
         
-        // Envío del acceso al cliente
+        // Envío del acceso al cliente (y del ticket para el chat si se autenticó)
         session.sendMessage(new TextMessage(newNode.toString()));
+        if(loggedIn) {
+        	notifyTicket(session, username);
+        }
+	}
+	
+	/**
+	 * Método para enviar un ticket nuevo al usuario autenticado en la sesión (los tickets son
+	 * de un solo uso, así que el cliente pide otro para cada conexión nueva al chat)
+	 * @param session -> Cliente que envió el mensaje
+	 * @param msg -> Mensaje enviado por el cliente
+	 * @throws IOException
+	 */
+	private void requestTicket(WebSocketSession session, UserInfo msg) throws IOException {
+		String username = authenticated.get(session.getId());
+		if(username != null) {
+			notifyTicket(session, username);
+			return;
+		}
+		
+		// La sesión no ha iniciado sesión
+		ObjectNode newNode = mapper.createObjectNode();
+		newNode.put("code", msg.code);
+		newNode.put("status", 0);
+		session.sendMessage(new TextMessage(newNode.toString()));
 	}
 	
 	// Métodos de actualización //
@@ -260,63 +282,92 @@ public class UserService extends TextWebSocketHandler{
 		
 		// Obtención de variables
 		String username = userInfos.get(id).get("username").asText();
-		String password = userInfos.get(id).get("password").asText();
-		boolean status = false;
 		
-		System.out.println("[SERVER] El usuario " + username + " cerró la conexión");
+		log.info("El usuario {} cerró la conexión", username);
 		
-		// Envío del usuario a la BD
-		templateOriginsDB.update("UPDATE users SET Username = '" + username + "', Password = '" + 
-				password + "', Status = '" + status + "' WHERE Username = '" + username + "'");
+		// Actualización del estado (se guarda en la BD en el próximo lote)
+		presence.setOnline(username, false);
 			
-		// Eliminación de mapas
-		sessions.remove(id);
+		// Eliminación del mapa
 		userInfos.remove(id);
 	}
 	
 	// Métodos de notificación //
 	/**
-	 * Método para enviar el número de usuarios a todos los clientes
-	 * @throws IOException
+	 * Método para programar el envío del número de usuarios. Todos los cambios dentro de la
+	 * ventana de agrupación se resuelven con un único envío
 	 */
-	private void notifyConnectedUsers() throws IOException {
+	private void notifyConnectedUsers() {
+		if(countDebounceMs <= 0) {
+			flushConnectedUsers();
+		} else if(countScheduled.compareAndSet(false, true)) {
+			scheduler.schedule(this::flushConnectedUsers, countDebounceMs);
+		}
+	}
+	
+	/**
+	 * Método para enviar el número de usuarios: a todos los clientes si cambió desde el último
+	 * envío o, si no, solo a las sesiones nuevas que aún no lo recibieron
+	 */
+	private void flushConnectedUsers() {
+		// Se libera el envío antes de leer el número para que los cambios posteriores programen otro
+		countScheduled.set(false);
+		int count = presence.getConnectedSessions();
+		
+		List<WebSocketSession> joined = new ArrayList<>();
+		WebSocketSession session;
+		while((session = awaitingCount.poll()) != null) {
+			joined.add(session);
+		}
+		
 		// Generación e inserción de la información en el objeto para enviar
 		ObjectNode newNode = mapper.createObjectNode();
 		newNode.put("code", "OK_ALLUSERSCONNECTED");
-		newNode.put("connectedUsers", connectedUsers);
+		newNode.put("connectedUsers", count);
+		
+		// El número es estado puro: la cola de salida puede descartarlo si ya lleva uno más reciente
+		SupersedableMessage frame = new SupersedableMessage("OK_ALLUSERSCONNECTED", newNode.toString());
 		
 		// Envío del objeto de información a cada uno de los participantes en la sesión
-		for(WebSocketSession participant : sessions.values()) {
-			// Si no es el mismo que mandó el mensaje
-			if(participant.isOpen()) {
-				// Envío de un mensaje con la información del jugador
-				participant.sendMessage(new TextMessage(newNode.toString()));
-			}
+		if(count != lastSentCount) {
+			lastSentCount = count;
+			Broadcaster.broadcast(sessions.values(), frame, null);
+		} else if(!joined.isEmpty()) {
+			Broadcaster.broadcast(joined, frame, null);
 		}
 	}
 	
 	/**
 	 * Método para insertar al usuario en la BD y notificación al resto de usuarios
 	 * @param session
-	 * @param node
+	 * @param msg
 	 * @throws IOException
 	 */
-	private void notifyNewUserConnected(WebSocketSession session, JsonNode node) throws IOException {
+	private void notifyNewUserConnected(WebSocketSession session, UserInfo msg) throws IOException {
 		// Obtención de la ID
-		long id = nextId.incrementAndGet();
+		long id = userIds.next();
 		
 		// Obtención de datos del nodo de mensaje
-		String username = node.get("username").asText();
-		String password = node.get("password").asText();
-		boolean status = node.get("status").asBoolean();
+		String username = msg.username;
+		String password = msg.password;
+		boolean status = msg.status;
 		
-		// Envío del usuario a la BD
-		templateOriginsDB.update("INSERT INTO users(ID,Username,Password,Status) VALUES('" + 
-				id + "','" + username + "','" + password + "','" + status + "')");
+		// Envío del usuario a la BD (y al directorio) solo si el nombre sigue libre
+		if(!directory.register(id, new UserRecord(username, password, status))) {
+			ObjectNode newNode = mapper.createObjectNode();
+			newNode.put("code", msg.code);
+			newNode.put("status", 0);
+			session.sendMessage(new TextMessage(newNode.toString()));
+			return;
+		}
+		
+		// Actualización de su estado (quien crea la cuenta queda autenticado con ella)
+		presence.setOnline(username, status);
+		authenticated.put(session.getId(), username);
 		
 		// Generación e inserción de la información en el objeto para enviar
 		ObjectNode newNode = mapper.createObjectNode();
-		newNode.put("code", node.get("code").asText());
+		newNode.put("code", msg.code);
 		newNode.put("username", username);
 		newNode.put("password", password);
 		newNode.put("status", status);
@@ -325,41 +376,43 @@ public class UserService extends TextWebSocketHandler{
 		userInfos.put(session.getId(), newNode);
 		
 		// Envío del objeto de información a cada uno de los participantes en la sesión
-		for(WebSocketSession participant : sessions.values()) {
-			participant.sendMessage(new TextMessage(newNode.toString()));
-		}
+		Broadcaster.broadcast(sessions.values(), newNode);
+		notifyTicket(session, username);
+	}
+	
+	/**
+	 * Método para enviar al cliente un ticket con el que identificarse en el chat (/chat?ticket=TICKET)
+	 * @param session -> Sesión del cliente autenticado
+	 * @param username -> Nombre del usuario
+	 * @throws IOException
+	 */
+	private void notifyTicket(WebSocketSession session, String username) throws IOException {
+		ObjectNode newNode = mapper.createObjectNode();
+		newNode.put("code", "OK_CHATTICKET");
+		newNode.put("status", 2);
+		newNode.put("username", username);
+		newNode.put("ticket", tickets.issue(username));
+		session.sendMessage(new TextMessage(newNode.toString()));
 	}
 	
 	/**
 	 * Método para actualizar al usuario en la BD y notificación al resto de usuarios
 	 * @param session -> Cliente que envió el mensaje
-	 * @param node -> Nodo de información enviado por el cliente
+	 * @param msg -> Mensaje enviado por el cliente
 	 * @throws IOException
 	 */
-	private void notifyUserConnect(WebSocketSession session, JsonNode node) throws IOException {
+	private void notifyUserConnect(WebSocketSession session, UserInfo msg) throws IOException {
 		// Obtención de datos del nodo de mensaje
-		String username = node.get("username").asText();
-		String password = node.get("password").asText();
-		boolean status = node.get("status").asBoolean();
+		String username = msg.username;
+		String password = msg.password;
+		boolean status = msg.status;
 				
-		// Obtención de la ID del usuario a desconectar
-		List<ObjectNode> userToConnect = templateOriginsDB.query("SELECT * FROM users WHERE Username = '" + username + "'", new RowMapper<ObjectNode>() {
-            // Obtención del contenido de fila del mapa (en la base de datos, cada fila es un mensaje)
-        	@Override
-            public ObjectNode mapRow(ResultSet rs, int rowNum) throws SQLException {
-        		// Generación e inserción de la información en el objeto para enviar
-        		ObjectNode newNode = mapper.createObjectNode();
-        		newNode.put("code", node.get("code").asText());
-        		newNode.put("username", rs.getString("Username"));
-        		
-        		return newNode;
-            }
-
-        });
+		// Búsqueda del usuario a conectar
+		UserRecord userToConnect = directory.find(username);
 		
 		// Generación e inserción de la información en el objeto para enviar
 		ObjectNode newNode = mapper.createObjectNode();
-		newNode.put("code", node.get("code").asText());
+		newNode.put("code", msg.code);
 		newNode.put("username", username);
 		newNode.put("password", password);
 		newNode.put("status", status);
@@ -367,56 +420,51 @@ public class UserService extends TextWebSocketHandler{
 		// Almacenamiento en mapa de informaciones de usuario
 		userInfos.put(session.getId(), newNode);
 		
-		// Actualización de la información en la BD
-		if(userToConnect.size() > 0) {
-			templateOriginsDB.update("UPDATE users SET Username = '" + username + "', Password = '" + 
-			password + "', Status = '" + status + "' WHERE Username = '" + username + "'");
-		}
-
-		// Obtención de cada una de las sesiones en el socket
-		for(WebSocketSession participant : sessions.values()) {
-			// Si no es el mismo que mandó el mensaje
-			if(!participant.getId().equals(session.getId())) {
-				// Envío de un mensaje con la información del jugador
-				participant.sendMessage(new TextMessage(userToConnect.get(0).toString()));
-			}
+		if(userToConnect != null) {
+			// Actualización del estado (se guarda en la BD en el próximo lote)
+			presence.setOnline(username, status);
+			
+			// Envío de la información del jugador al resto de sesiones en el socket
+			Broadcaster.broadcast(sessions.values(), userNode(msg.code, userToConnect), session);
 		}
 	}
 	
 	/**
 	 * Método para actualizar la desconexión del usuario en la BD y notificación al resto de usuarios
 	 * @param session -> Cliente que envió el mensaje
-	 * @param node -> Nodo de información enviado por el cliente
+	 * @param msg -> Mensaje enviado por el cliente
 	 * @throws IOException
 	 */
-	private void notifyUserDisconnect(WebSocketSession session, JsonNode node) throws IOException {
-		// Obtención de datos del nodo de mensaje
-		String username = node.get("username").asText();
-		String password = node.get("password").asText();
-		boolean status = node.get("status").asBoolean();
-				
-		// Obtención de la ID del usuario a desconectar
-		List<ObjectNode> userToDisconnect = templateOriginsDB.query("SELECT * FROM users WHERE Username = '" + username + "'", new RowMapper<ObjectNode>() {
-            // Obtención del contenido de fila del mapa (en la base de datos, cada fila es un mensaje)
-        	@Override
-            public ObjectNode mapRow(ResultSet rs, int rowNum) throws SQLException {
-        		// Generación e inserción de la información en el objeto para enviar
-        		ObjectNode newNode = mapper.createObjectNode();
-        		newNode.put("code", node.get("code").asText());
-        		newNode.put("username", rs.getString("Username"));
-        		
-        		return newNode;
-            }
+	private void notifyUserDisconnect(WebSocketSession session, UserInfo msg) throws IOException {
+		// Búsqueda del usuario a desconectar
+		UserRecord userToDisconnect = directory.find(msg.username);
 
-        });
-
-		// Obtención de cada una de las sesiones en el socket
-		for(WebSocketSession participant : sessions.values()) {
-			// Si no es el mismo que mandó el mensaje
-			if(!participant.getId().equals(session.getId())) {
-				// Envío de un mensaje con la información del jugador
-				participant.sendMessage(new TextMessage(userToDisconnect.get(0).toString()));
-			}
+		// Envío de la información del jugador al resto de sesiones en el socket
+		if(userToDisconnect != null) {
+			Broadcaster.broadcast(sessions.values(), userNode(msg.code, userToDisconnect), session);
 		}
 	}
+	
+	// Getters //
+	/**
+	 * Método para obtener el número de sesiones conectadas al socket
+	 * @return Número de sesiones
+	 */
+	public int getSessionCount() {
+		return sessions.size();
+	}
+	
+	// Otros //
+	/**
+	 * Método para generar el nodo JSON con el nombre de un usuario
+	 * @param code -> Código del mensaje
+	 * @param user -> Usuario
+	 * @return Nodo a enviar
+	 */
+	private ObjectNode userNode(String code, UserRecord user) {
+		ObjectNode newNode = mapper.createObjectNode();
+		newNode.put("code", code);
+		newNode.put("username", user.getUsername());
+		return newNode;
+	}
 }
@@ -0,0 +1,23 @@
+package es.armoonys.origins.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Lanzador de todos los benchmarks con el perfilador de GC activado (equivale a -prof gc),
+ * de forma que cada resultado incluye la tasa de asignación (gc.alloc.rate.norm = bytes por operación).
+ * Se puede filtrar por nombre: BenchmarkRunner Broadcast
+ */
+public class BenchmarkRunner {
+	
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder()
+				.include(args.length > 0 ? args[0] : BenchmarkRunner.class.getPackage().getName() + ".*")
+				.addProfiler(GCProfiler.class)
+				.build();
+		new Runner(options).run();
+	}
+}
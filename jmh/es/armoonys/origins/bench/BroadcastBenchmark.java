@@ -0,0 +1,77 @@
+package es.armoonys.origins.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import es.armoonys.origins.codec.MessageCodec;
+import es.armoonys.origins.net.Broadcaster;
+
+/**
+ * Coste de reenviar un mensaje a todos los participantes de una sala, de 4 a 1000 sesiones.
+ * Se compara la difusión actual (se serializa una vez y se comparte la trama) con la forma
+ * antigua (se serializa el nodo para cada destinatario)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BroadcastBenchmark {
+	//******************* Variables específicas ************************//
+	// Número de sesiones de la sala
+	@Param({ "4", "16", "64", "256", "1000" })
+	public int roomSize;
+	// Sesiones de la sala y mensaje a difundir
+	private List<WebSocketSession> sessions;
+	private WebSocketSession sender;
+	private ObjectNode node;
+	
+	//******************* Métodos ************************//
+	@Setup
+	public void setup() {
+		sessions = new ArrayList<>(roomSize);
+		for(int i = 0; i < roomSize; i++) {
+			sessions.add(new StubSession("s" + i));
+		}
+		sender = sessions.get(0);
+		
+		node = MessageCodec.MAPPER.createObjectNode();
+		node.put("code", "OK_SENDMESSAGE");
+		node.put("id", 123456);
+		node.put("name", "bot_0042");
+		node.put("message", "hola a todos, ¿quién juega?");
+	}
+	
+	@Benchmark
+	public void broadcastShared() {
+		Broadcaster.broadcast(sessions, node, sender);
+	}
+	
+	@Benchmark
+	public void broadcastPerRecipient() throws Exception {
+		for(WebSocketSession participant : sessions) {
+			if(participant != sender && participant.isOpen()) {
+				participant.sendMessage(new TextMessage(node.toString()));
+			}
+		}
+	}
+}
@@ -0,0 +1,71 @@
+package es.armoonys.origins.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.springframework.web.socket.TextMessage;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import es.armoonys.origins.chat.ChatEntry;
+import es.armoonys.origins.chat.ChatHistory;
+import es.armoonys.origins.codec.MessageCodec;
+
+/**
+ * Coste de servir el historial del chat a un usuario que entra: lectura de una página del
+ * historial en memoria y serialización de cada mensaje tal y como lo envía el servicio
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChatHistoryBenchmark {
+	//******************* Variables específicas ************************//
+	// Tamaño de la página pedida
+	@Param({ "50", "500" })
+	public int pageSize;
+	// Historial lleno con mensajes de prueba
+	private ChatHistory history;
+	private StubSession session = new StubSession("bench");
+	
+	//******************* Métodos ************************//
+	@Setup
+	public void setup() {
+		history = new ChatHistory(500);
+		for(int i = 1; i <= 2000; i++) {
+			history.append(new ChatEntry(i, "bot_" + (i % 100), "mensaje de prueba número " + i));
+		}
+	}
+	
+	@Benchmark
+	public List<ChatEntry> readPage() {
+		return history.olderThan(1900, pageSize);
+	}
+	
+	@Benchmark
+	public long readAndSerializePage() throws Exception {
+		for(ChatEntry entry : history.recent(pageSize)) {
+			ObjectNode node = MessageCodec.MAPPER.createObjectNode();
+			node.put("code", "OK_GETMESSAGES");
+			node.put("id", entry.getId());
+			node.put("name", entry.getName());
+			node.put("message", entry.getBody());
+			session.sendMessage(new TextMessage(node.toString()));
+		}
+		return session.sent;
+	}
+}
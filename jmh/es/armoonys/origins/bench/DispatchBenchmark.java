@@ -0,0 +1,108 @@
+package es.armoonys.origins.bench;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import es.armoonys.origins.chat.ChatMessages.GetMessages;
+import es.armoonys.origins.chat.ChatMessages.SendMessage;
+import es.armoonys.origins.codec.MessageDispatcher;
+import es.armoonys.origins.rooms.ground.GroundMessages.MatchEnded;
+import es.armoonys.origins.rooms.ground.GroundMessages.PlayerInfo;
+import es.armoonys.origins.rooms.ground.GroundMessages.PlayerState;
+import es.armoonys.origins.rooms.ground.GroundMessages.PointsInfo;
+import es.armoonys.origins.rooms.ground.GroundMessages.RoundState;
+import es.armoonys.origins.rooms.ground.GroundMessages.TakeDM;
+import es.armoonys.origins.users.UserMessages.UserInfo;
+
+/**
+ * Coste de recibir un mensaje: lectura del código, conversión del JSON a su tipo y llamada
+ * al manejador, para cada código de los cuatro servicios. El manejador solo consume el mensaje,
+ * de forma que se mide lo que hace handleTextMessage antes de llegar a la lógica del servicio
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchBenchmark {
+	//******************* Variables específicas ************************//
+	// Código del mensaje a medir
+	@Param({ "OK_CHECKLOG", "OK_CHECKREGISTER", "OK_CONNECTEDNEWUSER", "OK_CONNECTEDUSER", "OK_GETLISTUSERS",
+		"OK_SENDUSERDISCONNECTION", "OK_GETMESSAGES", "OK_SENDMESSAGE", "OK_PLAYERJOIN", "OK_PLAYERREADY",
+		"OK_MATCHENDED", "OK_PLAYERINFO", "OK_POINTSINFO", "OK_TAKEDM", "OK_ROUNDSTATE" })
+	public String code;
+	// Mensaje recibido y tabla de despacho
+	private String payload;
+	private MessageDispatcher dispatcher;
+	private StubSession session = new StubSession("bench");
+	
+	//******************* Métodos ************************//
+	/**
+	 * Preparación de la tabla de despacho (con los mismos tipos que los servicios) y del mensaje
+	 * @param bh -> Sumidero de JMH
+	 */
+	@Setup
+	public void setup(Blackhole bh) {
+		dispatcher = new MessageDispatcher("bench")
+			.on("OK_CHECKLOG", UserInfo.class, (s, m) -> bh.consume(m))
+			.on("OK_CHECKREGISTER", UserInfo.class, (s, m) -> bh.consume(m))
+			.on("OK_CONNECTEDNEWUSER", UserInfo.class, (s, m) -> bh.consume(m))
+			.on("OK_CONNECTEDUSER", UserInfo.class, (s, m) -> bh.consume(m))
+			.on("OK_GETLISTUSERS", UserInfo.class, (s, m) -> bh.consume(m))
+			.on("OK_SENDUSERDISCONNECTION", UserInfo.class, (s, m) -> bh.consume(m))
+			.on("OK_GETMESSAGES", GetMessages.class, (s, m) -> bh.consume(m))
+			.on("OK_SENDMESSAGE", SendMessage.class, (s, m) -> bh.consume(m))
+			.on("OK_PLAYERJOIN", PlayerState.class, (s, m) -> bh.consume(m))
+			.on("OK_PLAYERREADY", PlayerState.class, (s, m) -> bh.consume(m))
+			.on("OK_MATCHENDED", MatchEnded.class, (s, m) -> bh.consume(m))
+			.on("OK_PLAYERINFO", PlayerInfo.class, (s, m) -> bh.consume(m))
+			.on("OK_POINTSINFO", PointsInfo.class, (s, m) -> bh.consume(m))
+			.on("OK_TAKEDM", TakeDM.class, (s, m) -> bh.consume(m))
+			.on("OK_ROUNDSTATE", RoundState.class, (s, m) -> bh.consume(m));
+		
+		payload = payloads().get(code);
+	}
+	
+	@Benchmark
+	public boolean parseAndDispatch() throws Exception {
+		return dispatcher.dispatch(session, payload);
+	}
+	
+	/**
+	 * Método con un mensaje representativo de cada código (como los manda el cliente)
+	 * @return Mensaje por código
+	 */
+	static Map<String, String> payloads() {
+		Map<String, String> payloads = new HashMap<>();
+		String user = "\",\"username\":\"bot_0042\",\"password\":\"secreto\",\"status\":false}";
+		for(String code : new String[] { "OK_CHECKLOG", "OK_CHECKREGISTER", "OK_CONNECTEDNEWUSER", 
+				"OK_CONNECTEDUSER", "OK_GETLISTUSERS", "OK_SENDUSERDISCONNECTION" }) {
+			payloads.put(code, "{\"code\":\"" + code + user);
+		}
+		payloads.put("OK_GETMESSAGES", "{\"code\":\"OK_GETMESSAGES\",\"before\":0,\"limit\":50}");
+		payloads.put("OK_SENDMESSAGE", "{\"code\":\"OK_SENDMESSAGE\",\"name\":\"bot_0042\",\"message\":\"hola a todos, ¿quién juega?\"}");
+		payloads.put("OK_PLAYERJOIN", "{\"code\":\"OK_PLAYERJOIN\",\"playerId\":2,\"playerType\":1,\"playerName\":\"bot_0042\",\"playerReady\":false}");
+		payloads.put("OK_PLAYERREADY", "{\"code\":\"OK_PLAYERREADY\",\"playerId\":2,\"playerType\":1,\"playerName\":\"bot_0042\",\"playerReady\":true}");
+		payloads.put("OK_MATCHENDED", "{\"code\":\"OK_MATCHENDED\"}");
+		payloads.put("OK_PLAYERINFO", "{\"code\":\"OK_PLAYERINFO\",\"userID\":2,\"userVictim\":-1,\"updateKey\":\"W\"}");
+		payloads.put("OK_POINTSINFO", "{\"code\":\"OK_POINTSINFO\",\"userID\":2,\"updatedPoints\":1250}");
+		payloads.put("OK_TAKEDM", "{\"code\":\"OK_TAKEDM\",\"userTaken\":2}");
+		payloads.put("OK_ROUNDSTATE", "{\"code\":\"OK_ROUNDSTATE\"}");
+		return payloads;
+	}
+}
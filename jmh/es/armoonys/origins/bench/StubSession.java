@@ -0,0 +1,120 @@
+package es.armoonys.origins.bench;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.security.Principal;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+/**
+ * Sesión de WebSocket falsa para los benchmarks: no hay red, solo cuenta los mensajes y
+ * guarda el último para que el JIT no pueda eliminar el envío
+ */
+public class StubSession implements WebSocketSession {
+	//******************* Variables específicas ************************//
+	private final String id;								// ID de la sesión
+	private final Map<String, Object> attributes = new HashMap<>();
+	private volatile boolean open = true;					// ¿Está abierta?
+	// Mensajes enviados //
+	public long sent = 0;									// Número de mensajes
+	public WebSocketMessage<?> last;						// Último mensaje
+	
+	//******************* Constructor ************************//
+	public StubSession(String id) {
+		this.id = id;
+	}
+	
+	//******************* Métodos ************************//
+	@Override
+	public void sendMessage(WebSocketMessage<?> message) {
+		sent++;
+		last = message;
+	}
+	
+	@Override
+	public boolean isOpen() {
+		return open;
+	}
+	
+	@Override
+	public void close() {
+		open = false;
+	}
+	
+	@Override
+	public void close(CloseStatus status) {
+		open = false;
+	}
+	
+	// Getters //
+	@Override
+	public String getId() {
+		return id;
+	}
+	
+	@Override
+	public URI getUri() {
+		return null;
+	}
+	
+	@Override
+	public HttpHeaders getHandshakeHeaders() {
+		return new HttpHeaders();
+	}
+	
+	@Override
+	public Map<String, Object> getAttributes() {
+		return attributes;
+	}
+	
+	@Override
+	public Principal getPrincipal() {
+		return null;
+	}
+	
+	@Override
+	public InetSocketAddress getLocalAddress() {
+		return null;
+	}
+	
+	@Override
+	public InetSocketAddress getRemoteAddress() {
+		return null;
+	}
+	
+	@Override
+	public String getAcceptedProtocol() {
+		return null;
+	}
+	
+	@Override
+	public void setTextMessageSizeLimit(int messageSizeLimit) {
+	}
+	
+	@Override
+	public int getTextMessageSizeLimit() {
+		return 0;
+	}
+	
+	@Override
+	public void setBinaryMessageSizeLimit(int messageSizeLimit) {
+	}
+	
+	@Override
+	public int getBinaryMessageSizeLimit() {
+		return 0;
+	}
+	
+	@Override
+	public List<WebSocketExtension> getExtensions() {
+		return Collections.emptyList();
+	}
+}
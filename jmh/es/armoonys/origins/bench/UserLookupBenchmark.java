@@ -0,0 +1,74 @@
+package es.armoonys.origins.bench;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import es.armoonys.origins.persistence.MemoryUserRepository;
+import es.armoonys.origins.users.UserDirectory;
+import es.armoonys.origins.users.UserRecord;
+
+/**
+ * Coste de buscar un usuario al iniciar sesión: acierto en el directorio en memoria,
+ * nombre inexistente ya recordado y consulta directa al almacén (en memoria, sin BD)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserLookupBenchmark {
+	//******************* Variables específicas ************************//
+	private MemoryUserRepository users;
+	private UserDirectory directory;
+	private int next = 0;
+	
+	//******************* Métodos ************************//
+	@Setup
+	public void setup() throws Exception {
+		users = new MemoryUserRepository();
+		for(int i = 0; i < 10000; i++) {
+			users.insert(i + 1, new UserRecord("bot_" + i, "secreto", false));
+		}
+		
+		// El directorio recibe el almacén por inyección; aquí se asigna a mano
+		directory = new UserDirectory();
+		Field field = UserDirectory.class.getDeclaredField("users");
+		field.setAccessible(true);
+		field.set(directory, users);
+		
+		// Precarga para que las búsquedas siguientes sean aciertos
+		for(int i = 0; i < 1000; i++) {
+			directory.find("bot_" + i);
+		}
+		directory.find("nadie");
+	}
+	
+	@Benchmark
+	public UserRecord directoryHit() {
+		next = (next + 1) % 1000;
+		return directory.find("bot_" + next);
+	}
+	
+	@Benchmark
+	public UserRecord directoryKnownMissing() {
+		return directory.find("nadie");
+	}
+	
+	@Benchmark
+	public UserRecord repositoryLookup() {
+		next = (next + 1) % 1000;
+		return users.findByUsername("bot_" + next);
+	}
+}
@@ -0,0 +1,283 @@
+package es.armoonys.origins.loadtest;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Jugador simulado. Sigue el mismo protocolo que el cliente del juego:
+ *  1. /user -> OK_CHECKREGISTER y OK_CONNECTEDNEWUSER (primera vez) o OK_CHECKLOG y OK_CONNECTEDUSER
+ *  2. /chat -> OK_GETMESSAGES al entrar y OK_SENDMESSAGE periódicos
+ *  3. /groundR -> OK_PLAYERJOIN y OK_PLAYERREADY al recibir OK_ROOMCONN
+ *  4. /groundM?roomId=N -> OK_PLAYERINFO y OK_POINTSINFO periódicos al recibir OK_STARTMATCH
+ */
+class Bot {
+	//******************* Variables específicas ************************//
+	private final String username;						// Nombre del bot
+	private final LoadOptions options;					// Opciones de la prueba
+	private final HttpClient client;					// Cliente HTTP compartido
+	private final ScheduledExecutorService timers;		// Temporizadores compartidos
+	private final LoadMetrics metrics;					// Métricas de la prueba
+	// Conexiones //
+	private BotSocket user;
+	private BotSocket chat;
+	private BotSocket room;
+	private BotSocket match;
+	// Estado de la partida //
+	private volatile int userId = -1;					// ID del jugador en la sala
+	private volatile int roomId = -1;					// ID de la sala
+	// Tareas periódicas //
+	private ScheduledFuture<?> chatTask;
+	private ScheduledFuture<?> updateTask;
+	private ScheduledFuture<?> pointsTask;
+	
+	//******************* Constructor ************************//
+	Bot(String username, LoadOptions options, HttpClient client, ScheduledExecutorService timers, LoadMetrics metrics) {
+		this.username = username;
+		this.options = options;
+		this.client = client;
+		this.timers = timers;
+		this.metrics = metrics;
+	}
+	
+	//******************* Métodos ************************//
+	// Ciclo de vida //
+	/**
+	 * Método para arrancar el bot (inicio de sesión)
+	 */
+	void start() {
+		user = new BotSocket("/user", metrics, this::onUserMessage, () -> { });
+		user.connect(client, uri("/user")).thenAccept(s -> {
+			ObjectNode msg = userInfo("OK_CHECKREGISTER", false);
+			s.send(msg, username);
+		}).exceptionally(this::failed);
+	}
+	
+	/**
+	 * Método para parar el bot y cerrar sus conexiones
+	 */
+	void stop() {
+		cancel(chatTask);
+		cancel(updateTask);
+		cancel(pointsTask);
+		for(BotSocket socket : new BotSocket[] { match, room, chat, user }) {
+			if(socket != null) {
+				socket.close();
+			}
+		}
+	}
+	
+	// Usuarios //
+	private void onUserMessage(JsonNode msg) {
+		String code = msg.path("code").asText();
+		switch(code) {
+		// Respuesta al registro: si el nombre está libre se registra; si no, se inicia sesión
+		case "OK_CHECKREGISTER":
+			metrics.received(code, username);
+			if(msg.path("status").asInt() == 2) {
+				user.send(userInfo("OK_CONNECTEDNEWUSER", true), username);
+			} else {
+				user.send(userInfo("OK_CHECKLOG", false), username);
+			}
+			break;
+		// Respuesta al inicio de sesión
+		case "OK_CHECKLOG":
+			metrics.received(code, username);
+			if(msg.path("status").asInt() == 0) {
+				metrics.errors.incrementAndGet();
+			}
+			user.send(userInfo("OK_CONNECTEDUSER", true), username);
+			loggedIn();
+			break;
+		// Alta de un usuario (la recibe también el propio bot)
+		case "OK_CONNECTEDNEWUSER":
+			String name = msg.path("username").asText();
+			metrics.received(code, name);
+			if(username.equals(name)) {
+				loggedIn();
+			}
+			break;
+		// Conexión de otro usuario
+		case "OK_CONNECTEDUSER":
+		case "OK_SENDUSERDISCONNECTION":
+			metrics.received(code, msg.path("username").asText());
+			break;
+		default:
+			metrics.received(code, null);
+		}
+	}
+	
+	/**
+	 * Método para pasar al chat y a la sala una vez iniciada la sesión
+	 */
+	private void loggedIn() {
+		chat = new BotSocket("/chat", metrics, this::onChatMessage, () -> cancel(chatTask));
+		chat.connect(client, uri("/chat")).thenAccept(s -> {
+			ObjectNode msg = BotSocket.MAPPER.createObjectNode();
+			msg.put("code", "OK_GETMESSAGES");
+			msg.put("limit", 50);
+			s.send(msg, username);
+			
+			if(options.chatRate > 0) {
+				long periodMs = (long) (1000 / options.chatRate);
+				chatTask = timers.scheduleAtFixedRate(this::sendChat, jitter(periodMs), periodMs, TimeUnit.MILLISECONDS);
+			}
+		}).exceptionally(this::failed);
+		
+		if(options.match) {
+			room = new BotSocket("/groundR", metrics, this::onRoomMessage, () -> { });
+			room.connect(client, uri("/groundR")).exceptionally(this::failed);
+		}
+	}
+	
+	// Chat //
+	private void sendChat() {
+		// El instante de envío va en el propio mensaje para medir la latencia en todos los receptores
+		ObjectNode msg = BotSocket.MAPPER.createObjectNode();
+		msg.put("code", "OK_SENDMESSAGE");
+		msg.put("name", username);
+		msg.put("message", System.nanoTime() + "|hola desde " + username);
+		chat.send(msg, null);
+	}
+	
+	private void onChatMessage(JsonNode msg) {
+		String code = msg.path("code").asText();
+		if("OK_SENDMESSAGE".equals(code)) {
+			String body = msg.path("message").asText();
+			int bar = body.indexOf('|');
+			try {
+				metrics.receivedAt(code, Long.parseLong(body.substring(0, bar)));
+				return;
+			} catch(RuntimeException e) {
+				// Mensaje que no es de un bot
+			}
+		}
+		metrics.received(code, username);
+	}
+	
+	// Sala //
+	private void onRoomMessage(JsonNode msg) {
+		String code = msg.path("code").asText();
+		switch(code) {
+		// Asignación de sala: el bot entra al lobby y al poco indica que está listo
+		case "OK_ROOMCONN":
+			metrics.received(code, null);
+			userId = msg.path("userID").asInt();
+			roomId = msg.path("roomId").asInt();
+			room.send(playerState("OK_PLAYERJOIN", false), username);
+			timers.schedule(() -> room.send(playerState("OK_PLAYERREADY", true), username), 
+					jitter(options.readyDelayMs), TimeUnit.MILLISECONDS);
+			break;
+		// Otro jugador entra o está listo
+		case "OK_PLAYERJOIN":
+		case "OK_PLAYERREADY":
+			metrics.received(code, msg.path("playerName").asText());
+			break;
+		// Inicio de la partida
+		case "OK_STARTMATCH":
+			metrics.received(code, null);
+			joinMatch(msg.path("roomId").asInt(roomId));
+			break;
+		case "Error_MAXUSERS":
+			metrics.received(code, null);
+			metrics.errors.incrementAndGet();
+			break;
+		default:
+			metrics.received(code, null);
+		}
+	}
+	
+	// Partida //
+	private void joinMatch(int matchRoomId) {
+		match = new BotSocket("/groundM", metrics, this::onMatchMessage, () -> {
+			cancel(updateTask);
+			cancel(pointsTask);
+		});
+		match.connect(client, uri("/groundM?roomId=" + matchRoomId)).thenAccept(s -> {
+			long updateMs = (long) (1000 / options.updateRate);
+			updateTask = timers.scheduleAtFixedRate(this::sendUpdate, jitter(updateMs), updateMs, TimeUnit.MILLISECONDS);
+			pointsTask = timers.scheduleAtFixedRate(this::sendPoints, jitter(1000), 1000, TimeUnit.MILLISECONDS);
+		}).exceptionally(this::failed);
+	}
+	
+	private void sendUpdate() {
+		String[] keys = { "W", "A", "S", "D" };
+		ObjectNode msg = BotSocket.MAPPER.createObjectNode();
+		msg.put("code", "OK_PLAYERINFO");
+		msg.put("userID", userId);
+		msg.put("userVictim", -1);
+		msg.put("updateKey", keys[ThreadLocalRandom.current().nextInt(keys.length)]);
+		match.send(msg, roomId + ":" + userId);
+	}
+	
+	private void sendPoints() {
+		ObjectNode msg = BotSocket.MAPPER.createObjectNode();
+		msg.put("code", "OK_POINTSINFO");
+		msg.put("userID", userId);
+		msg.put("updatedPoints", ThreadLocalRandom.current().nextInt(10000));
+		match.send(msg, roomId + ":" + userId);
+	}
+	
+	private void onMatchMessage(JsonNode msg) {
+		String code = msg.path("code").asText();
+		switch(code) {
+		// Actualizaciones de otros jugadores (latencia desde su último envío)
+		case "OK_PLAYERINFO":
+		case "OK_POINTSINFO":
+			metrics.received(code, roomId + ":" + msg.path("userId").asInt());
+			break;
+		case "Error_NOMATCH":
+			metrics.received(code, null);
+			metrics.errors.incrementAndGet();
+			break;
+		default:
+			metrics.received(code, null);
+		}
+	}
+	
+	// Otros //
+	private ObjectNode userInfo(String code, boolean status) {
+		ObjectNode msg = BotSocket.MAPPER.createObjectNode();
+		msg.put("code", code);
+		msg.put("username", username);
+		msg.put("password", options.password);
+		msg.put("status", status);
+		return msg;
+	}
+	
+	private ObjectNode playerState(String code, boolean ready) {
+		ObjectNode msg = BotSocket.MAPPER.createObjectNode();
+		msg.put("code", code);
+		msg.put("playerId", userId);
+		msg.put("playerType", Math.floorMod(username.hashCode(), 4));
+		msg.put("playerName", username);
+		msg.put("playerReady", ready);
+		return msg;
+	}
+	
+	private URI uri(String path) {
+		return URI.create(options.url + path);
+	}
+	
+	private static long jitter(long ms) {
+		return ms <= 0 ? 0 : ThreadLocalRandom.current().nextLong(ms);
+	}
+	
+	private static void cancel(ScheduledFuture<?> task) {
+		if(task != null) {
+			task.cancel(false);
+		}
+	}
+	
+	private <T> T failed(Throwable error) {
+		metrics.errors.incrementAndGet();
+		System.out.println("[LOADTEST] " + username + ": " + error);
+		return null;
+	}
+}
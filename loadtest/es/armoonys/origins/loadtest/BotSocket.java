@@ -0,0 +1,134 @@
+package es.armoonys.origins.loadtest;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Consumer;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Conexión de un bot a uno de los endpoints. Junta los fragmentos de cada mensaje de texto,
+ * lo convierte a JSON y lo entrega al bot; desenvuelve los mensajes agrupados (OK_BATCH).
+ * Los envíos se encadenan porque el cliente de java.net.http no admite dos envíos a la vez
+ */
+class BotSocket implements WebSocket.Listener {
+	//******************* Variables genéricas ************************//
+	static final ObjectMapper MAPPER = new ObjectMapper();
+	
+	//******************* Variables específicas ************************//
+	private final String name;						// Endpoint (para los errores)
+	private final LoadMetrics metrics;				// Métricas de la prueba
+	private final Consumer<JsonNode> onMessage;		// Manejador de los mensajes recibidos
+	private final Runnable onClose;					// Acción al cerrarse la conexión
+	private WebSocket socket;
+	private CompletableFuture<WebSocket> tail;		// Último envío encadenado
+	private StringBuilder partial = new StringBuilder();
+	private volatile boolean open = false;
+	
+	//******************* Constructor ************************//
+	BotSocket(String name, LoadMetrics metrics, Consumer<JsonNode> onMessage, Runnable onClose) {
+		this.name = name;
+		this.metrics = metrics;
+		this.onMessage = onMessage;
+		this.onClose = onClose;
+	}
+	
+	//******************* Métodos ************************//
+	/**
+	 * Método para abrir la conexión
+	 * @param client -> Cliente HTTP compartido
+	 * @param uri -> Dirección del endpoint
+	 * @return Conexión abierta
+	 */
+	CompletableFuture<BotSocket> connect(HttpClient client, URI uri) {
+		return client.newWebSocketBuilder().buildAsync(uri, this).thenApply(ws -> {
+			synchronized(this) {
+				socket = ws;
+				tail = CompletableFuture.completedFuture(ws);
+				open = true;
+			}
+			metrics.connected.incrementAndGet();
+			return this;
+		});
+	}
+	
+	/**
+	 * Método para enviar un mensaje (tras los anteriores)
+	 * @param node -> Mensaje a enviar
+	 * @param key -> Clave para medir la latencia del mensaje resultante (o null)
+	 */
+	synchronized void send(ObjectNode node, String key) {
+		if(!open) {
+			return;
+		}
+		String text = node.toString();
+		metrics.sent(node.get("code").asText(), key);
+		tail = tail.thenCompose(ws -> ws.sendText(text, true)).exceptionally(e -> {
+			metrics.errors.incrementAndGet();
+			return socket;
+		});
+	}
+	
+	/**
+	 * Método para cerrar la conexión
+	 */
+	synchronized void close() {
+		if(open) {
+			open = false;
+			tail.thenCompose(ws -> ws.sendClose(WebSocket.NORMAL_CLOSURE, "fin"));
+		}
+	}
+	
+	boolean isOpen() {
+		return open;
+	}
+	
+	// Métodos de WebSocket.Listener //
+	@Override
+	public CompletionStage<?> onText(WebSocket ws, CharSequence data, boolean last) {
+		partial.append(data);
+		if(last) {
+			String text = partial.toString();
+			partial.setLength(0);
+			try {
+				JsonNode node = MAPPER.readTree(text);
+				// Los mensajes agrupados se entregan uno a uno
+				if("OK_BATCH".equals(node.path("code").asText())) {
+					for(JsonNode inner : node.path("messages")) {
+						onMessage.accept(inner);
+					}
+				} else {
+					onMessage.accept(node);
+				}
+			} catch(Exception e) {
+				metrics.errors.incrementAndGet();
+			}
+		}
+		ws.request(1);
+		return null;
+	}
+	
+	@Override
+	public CompletionStage<?> onClose(WebSocket ws, int statusCode, String reason) {
+		open = false;
+		metrics.connected.decrementAndGet();
+		onClose.run();
+		return null;
+	}
+	
+	@Override
+	public void onError(WebSocket ws, Throwable error) {
+		if(open) {
+			open = false;
+			metrics.connected.decrementAndGet();
+		}
+		metrics.errors.incrementAndGet();
+		System.out.println("[LOADTEST] Error en " + name + ": " + error);
+		onClose.run();
+	}
+}
@@ -0,0 +1,89 @@
+package es.armoonys.origins.loadtest;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histograma de latencias en microsegundos con error relativo acotado (~1,6%): los valores
+ * menores que 128 tienen un cubo cada uno y, por encima, cada potencia de dos se reparte en
+ * 64 cubos. Se puede registrar desde varios hilos sin cerrojos
+ */
+class LatencyHistogram {
+	//******************* Variables genéricas ************************//
+	private static final int LINEAR = 128;		// Cubos exactos iniciales
+	private static final int SUB = 64;			// Cubos por potencia de dos
+	private static final int BUCKETS = LINEAR + 57 * SUB;
+	
+	//******************* Variables específicas ************************//
+	private AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private AtomicLong total = new AtomicLong();
+	private AtomicLong max = new AtomicLong();
+	
+	//******************* Métodos ************************//
+	/**
+	 * Método para registrar una latencia
+	 * @param nanos -> Latencia en nanosegundos
+	 */
+	void record(long nanos) {
+		long micros = Math.max(0, nanos / 1000);
+		counts.incrementAndGet(index(micros));
+		total.incrementAndGet();
+		max.accumulateAndGet(micros, Math::max);
+	}
+	
+	/**
+	 * Método para obtener un percentil
+	 * @param p -> Percentil (de 0 a 1)
+	 * @return Latencia en microsegundos (límite superior del cubo)
+	 */
+	long percentile(double p) {
+		long n = total.get();
+		if(n == 0) {
+			return 0;
+		}
+		
+		long target = Math.max(1, (long) Math.ceil(p * n));
+		long seen = 0;
+		for(int i = 0; i < BUCKETS; i++) {
+			seen += counts.get(i);
+			if(seen >= target) {
+				return Math.min(upperBound(i), max.get());
+			}
+		}
+		return max.get();
+	}
+	
+	// Getters //
+	long getCount() {
+		return total.get();
+	}
+	
+	long getMax() {
+		return max.get();
+	}
+	
+	// Otros //
+	/**
+	 * Método para obtener el cubo de un valor
+	 */
+	private static int index(long v) {
+		if(v < LINEAR) {
+			return (int) v;
+		}
+		// Desplazamiento que deja el valor entre 64 y 127
+		int shift = 63 - Long.numberOfLeadingZeros(v) - 6;
+		return LINEAR + (shift - 1) * SUB + (int) ((v >>> shift) - SUB);
+	}
+	
+	/**
+	 * Método para obtener el mayor valor de un cubo
+	 */
+	private static long upperBound(int index) {
+		if(index < LINEAR) {
+			return index;
+		}
+		int shift = (index - LINEAR) / SUB + 1;
+		long base = (index - LINEAR) % SUB + SUB;
+		return ((base + 1) << shift) - 1;
+	}
+}
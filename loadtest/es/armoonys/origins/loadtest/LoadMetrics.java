@@ -0,0 +1,106 @@
+package es.armoonys.origins.loadtest;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Métricas de la prueba de carga: mensajes enviados y recibidos por código y latencia extremo
+ * a extremo. La latencia se mide desde que un bot envía un mensaje hasta que otro bot (o él mismo,
+ * en las respuestas) recibe el mensaje resultante, usando el mismo reloj porque todos los bots
+ * corren en el mismo proceso
+ */
+class LoadMetrics {
+	//******************* Variables específicas ************************//
+	// Latencias por código
+	private Map<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+	// Contadores por código //
+	private Map<String, AtomicLong> sent = new ConcurrentHashMap<>();
+	private Map<String, AtomicLong> received = new ConcurrentHashMap<>();
+	// Instante de envío del último mensaje de cada código y clave (nombre del bot, jugador...)
+	private Map<String, Long> pending = new ConcurrentHashMap<>();
+	// Totales //
+	AtomicLong totalSent = new AtomicLong();
+	AtomicLong totalReceived = new AtomicLong();
+	AtomicLong errors = new AtomicLong();
+	AtomicLong connected = new AtomicLong();
+	
+	//******************* Métodos ************************//
+	/**
+	 * Método para registrar un envío
+	 * @param code -> Código del mensaje
+	 * @param key -> Clave con la que se reconocerá el mensaje resultante (o null si no se mide)
+	 */
+	void sent(String code, String key) {
+		counter(sent, code).incrementAndGet();
+		totalSent.incrementAndGet();
+		if(key != null) {
+			pending.put(code + '|' + key, System.nanoTime());
+		}
+	}
+	
+	/**
+	 * Método para registrar una recepción cuya latencia se calcula con el último envío de la misma clave
+	 * @param code -> Código del mensaje
+	 * @param key -> Clave del envío (o null si no se mide)
+	 */
+	void received(String code, String key) {
+		long now = System.nanoTime();
+		counter(received, code).incrementAndGet();
+		totalReceived.incrementAndGet();
+		if(key != null) {
+			Long start = pending.get(code + '|' + key);
+			if(start != null) {
+				latency(code).record(now - start);
+			}
+		}
+	}
+	
+	/**
+	 * Método para registrar una recepción con el instante de envío incluido en el propio mensaje
+	 * @param code -> Código del mensaje
+	 * @param sentAt -> Instante de envío (System.nanoTime del emisor)
+	 */
+	void receivedAt(String code, long sentAt) {
+		long now = System.nanoTime();
+		counter(received, code).incrementAndGet();
+		totalReceived.incrementAndGet();
+		latency(code).record(now - sentAt);
+	}
+	
+	/**
+	 * Método para escribir el informe final
+	 * @param seconds -> Duración de la prueba en segundos
+	 */
+	void report(double seconds) {
+		System.out.printf("%n%-26s %10s %10s %10s %9s %9s %9s %9s%n", 
+				"code", "sent", "received", "recv/s", "p50 ms", "p99 ms", "p999 ms", "max ms");
+		Map<String, Boolean> codes = new TreeMap<>();
+		sent.keySet().forEach(c -> codes.put(c, true));
+		received.keySet().forEach(c -> codes.put(c, true));
+		
+		for(String code : codes.keySet()) {
+			long s = sent.containsKey(code) ? sent.get(code).get() : 0;
+			long r = received.containsKey(code) ? received.get(code).get() : 0;
+			LatencyHistogram h = latencies.get(code);
+			if(h == null || h.getCount() == 0) {
+				System.out.printf("%-26s %10d %10d %10.1f %9s %9s %9s %9s%n", code, s, r, r / seconds, "-", "-", "-", "-");
+			} else {
+				System.out.printf("%-26s %10d %10d %10.1f %9.2f %9.2f %9.2f %9.2f%n", code, s, r, r / seconds, 
+						h.percentile(0.50) / 1000.0, h.percentile(0.99) / 1000.0, h.percentile(0.999) / 1000.0, h.getMax() / 1000.0);
+			}
+		}
+		System.out.printf("%ntotal: %d enviados (%.1f/s), %d recibidos (%.1f/s), %d errores%n", 
+				totalSent.get(), totalSent.get() / seconds, totalReceived.get(), totalReceived.get() / seconds, errors.get());
+	}
+	
+	// Otros //
+	private LatencyHistogram latency(String code) {
+		return latencies.computeIfAbsent(code, c -> new LatencyHistogram());
+	}
+	
+	private static AtomicLong counter(Map<String, AtomicLong> counters, String code) {
+		return counters.computeIfAbsent(code, c -> new AtomicLong());
+	}
+}
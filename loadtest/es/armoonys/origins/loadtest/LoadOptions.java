@@ -0,0 +1,52 @@
+package es.armoonys.origins.loadtest;
+
+/**
+ * Opciones de la prueba de carga (--nombre=valor en la línea de órdenes)
+ */
+class LoadOptions {
+	//******************* Variables ************************//
+	String url = "ws://localhost:80";		// Dirección del servidor
+	int bots = 1000;						// Número de bots
+	int durationS = 60;						// Duración de la prueba (tras el arranque de todos)
+	int rampUpS = 10;						// Tiempo de arranque de todos los bots
+	double chatRate = 0.2;					// Mensajes de chat por segundo y bot
+	double updateRate = 10;					// Actualizaciones de partida por segundo y bot
+	long readyDelayMs = 2000;				// Espera máxima antes de indicar que está listo
+	boolean match = true;					// ¿Entran los bots a salas y partidas?
+	String prefix = "bot";					// Prefijo del nombre de los bots
+	String password = "loadtest";			// Contraseña de los bots
+	int threads = 4;						// Hilos de los temporizadores
+	
+	//******************* Métodos ************************//
+	/**
+	 * Método para leer las opciones de la línea de órdenes
+	 * @param args -> Argumentos (--nombre=valor)
+	 * @return Opciones
+	 */
+	static LoadOptions parse(String[] args) {
+		LoadOptions o = new LoadOptions();
+		for(String arg : args) {
+			int eq = arg.indexOf('=');
+			if(!arg.startsWith("--") || eq < 0) {
+				throw new IllegalArgumentException("Opción no válida: " + arg);
+			}
+			String name = arg.substring(2, eq);
+			String value = arg.substring(eq + 1);
+			switch(name) {
+			case "url": o.url = value; break;
+			case "bots": o.bots = Integer.parseInt(value); break;
+			case "duration": o.durationS = Integer.parseInt(value); break;
+			case "ramp-up": o.rampUpS = Integer.parseInt(value); break;
+			case "chat-rate": o.chatRate = Double.parseDouble(value); break;
+			case "update-rate": o.updateRate = Double.parseDouble(value); break;
+			case "ready-delay-ms": o.readyDelayMs = Long.parseLong(value); break;
+			case "match": o.match = Boolean.parseBoolean(value); break;
+			case "prefix": o.prefix = value; break;
+			case "password": o.password = value; break;
+			case "threads": o.threads = Integer.parseInt(value); break;
+			default: throw new IllegalArgumentException("Opción desconocida: " + name);
+			}
+		}
+		return o;
+	}
+}
@@ -0,0 +1,73 @@
+package es.armoonys.origins.loadtest;
+
+import java.net.http.HttpClient;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generador de carga: lanza miles de bots contra un servidor arrancado en local que siguen el
+ * protocolo real en los cuatro endpoints (/user, /chat, /groundR y /groundM) y, al terminar,
+ * muestra el rendimiento y los percentiles p50/p99/p999 de latencia por código de mensaje.
+ * 
+ * Ejemplo: LoadTest --url=ws://localhost:80 --bots=2000 --ramp-up=20 --duration=120 --chat-rate=0.5
+ */
+public class LoadTest {
+	
+	public static void main(String[] args) throws Exception {
+		LoadOptions options = LoadOptions.parse(args);
+		LoadMetrics metrics = new LoadMetrics();
+		
+		// Hilos compartidos por todos los bots
+		AtomicInteger count = new AtomicInteger();
+		ScheduledExecutorService timers = Executors.newScheduledThreadPool(options.threads, r -> {
+			Thread t = new Thread(r, "loadtest-" + count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+		HttpClient client = HttpClient.newBuilder().executor(Executors.newFixedThreadPool(options.threads * 2, r -> {
+			Thread t = new Thread(r, "loadtest-io-" + count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		})).build();
+		
+		System.out.println("[LOADTEST] " + options.bots + " bots contra " + options.url + " (arranque " 
+				+ options.rampUpS + " s, prueba " + options.durationS + " s)");
+		
+		// Arranque escalonado de los bots
+		List<Bot> bots = new ArrayList<>(options.bots);
+		long rampNanos = TimeUnit.SECONDS.toNanos(options.rampUpS);
+		for(int i = 0; i < options.bots; i++) {
+			Bot bot = new Bot(options.prefix + "_" + i, options, client, timers, metrics);
+			bots.add(bot);
+			timers.schedule(bot::start, rampNanos * i / Math.max(1, options.bots), TimeUnit.NANOSECONDS);
+		}
+		
+		// Informe periódico mientras dura la prueba
+		long start = System.nanoTime();
+		long[] last = { 0, 0 };
+		timers.scheduleAtFixedRate(() -> {
+			long s = metrics.totalSent.get();
+			long r = metrics.totalReceived.get();
+			System.out.printf("[LOADTEST] t=%3ds conexiones=%d enviados/s=%d recibidos/s=%d errores=%d%n", 
+					TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start), metrics.connected.get(), 
+					(s - last[0]) / 5, (r - last[1]) / 5, metrics.errors.get());
+			last[0] = s;
+			last[1] = r;
+		}, 5, 5, TimeUnit.SECONDS);
+		
+		Thread.sleep(TimeUnit.SECONDS.toMillis(options.rampUpS + options.durationS));
+		double seconds = (System.nanoTime() - start) / 1e9;
+		
+		// Parada de los bots e informe final
+		for(Bot bot : bots) {
+			bot.stop();
+		}
+		metrics.report(seconds);
+		Thread.sleep(1000);
+		System.exit(0);
+	}
+}